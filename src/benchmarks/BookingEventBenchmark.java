@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+
+import models.CrewMember;
+import models.Flight;
+import services.events.BookingEvent;
+import services.events.BookingEventStream;
+import shared.metrics.LatencyHistogram;
+import shared.structures.BPlusTree;
+import shared.structures.Graph;
+
+/**
+ * Measures the latency that the booking event stream adds to
+ * {@code Flight.addCrewMember}, with no stream and with zero, one and several
+ * subscribers.
+ * Usage: {@code java benchmarks.BookingEventBenchmark [bookings]}.
+ */
+public class BookingEventBenchmark {
+  private static final int FLIGHTS = 100;
+
+  public static void main(String[] args) throws InterruptedException {
+    int bookings = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+    System.out.printf("%-16s %10s %10s %10s %10s %12s%n", "setup", "mean ns", "p50 ns", "p99 ns", "p99.9 ns",
+        "delivered");
+    run("no stream", bookings, -1);
+    for (int subscribers : new int[] { 0, 1, 4 }) {
+      run(subscribers + " subscribers", bookings, subscribers);
+    }
+  }
+
+  private static void run(String name, int bookings, int subscribers) throws InterruptedException {
+    Graph<Flight> graph = new Graph<>();
+    Flight[] flights = new Flight[FLIGHTS];
+    for (int i = 0; i < FLIGHTS; i++) {
+      flights[i] = new Flight("Origin " + i, "Destination " + i, 1000, Integer.MAX_VALUE, new BPlusTree<>());
+      graph.addVertex(flights[i]);
+    }
+
+    LongAdder delivered = new LongAdder();
+    BookingEventStream stream = null;
+    if (subscribers >= 0) {
+      stream = new BookingEventStream();
+      stream.attach(graph);
+      for (int i = 0; i < subscribers; i++) {
+        stream.subscribe(new CountingSubscriber(delivered));
+      }
+    }
+
+    LatencyHistogram latency = new LatencyHistogram();
+    for (int i = 0; i < bookings; i++) {
+      Flight flight = flights[i % FLIGHTS];
+      CrewMember crewMember = new CrewMember("Crew " + i, i);
+      long start = System.nanoTime();
+      flight.addCrewMember(crewMember);
+      latency.recordSince(start);
+    }
+
+    if (stream != null) {
+      stream.close();
+      Thread.sleep(200);
+    }
+    System.out.printf("%-16s %10.1f %10d %10d %10d %12d%n", name, latency.getMean(), latency.getPercentile(50),
+        latency.getPercentile(99), latency.getPercentile(99.9), delivered.sum());
+  }
+
+  private static class CountingSubscriber implements Flow.Subscriber<List<BookingEvent>> {
+    private final LongAdder delivered;
+
+    CountingSubscriber(LongAdder delivered) {
+      this.delivered = delivered;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<BookingEvent> batch) {
+      delivered.add(batch.size());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      throwable.printStackTrace();
+    }
+
+    @Override
+    public void onComplete() {
+    }
+  }
+}
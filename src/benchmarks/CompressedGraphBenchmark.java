@@ -0,0 +1,133 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import shared.structures.CompactGraph;
+import shared.structures.CompressedGraph;
+import shared.structures.Graph;
+
+/**
+ * Compares the memory per edge and the neighbor iteration rate of a
+ * {@link Graph}, a {@link CompactGraph} and a {@link CompressedGraph} built
+ * from the same edges, on a flight-shaped network, where every flight
+ * connects to all the flights leaving its destination, and on a graph with
+ * random edges.
+ * Usage: {@code java benchmarks.CompressedGraphBenchmark [cities]}. A million
+ * cities, 64 million edges, need about 8 GB of heap for the Graph.
+ */
+public class CompressedGraphBenchmark {
+  private static final int FLIGHTS_PER_CITY = 8;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int cities = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+    run("flight network", cities, true);
+    run("random edges", cities, false);
+  }
+
+  private static void run(String name, int cities, boolean flightShaped) {
+    int n = cities * FLIGHTS_PER_CITY;
+    Random random = new Random(17);
+    Integer[] vertices = new Integer[n];
+    int[] prices = new int[n];
+    for (int v = 0; v < n; v++) {
+      vertices[v] = v;
+      prices[v] = 20_000 + random.nextInt(180_000);
+    }
+
+    long heapBefore = usedHeap();
+    Graph<Integer> graph = new Graph<>();
+    for (int v = 0; v < n; v++) {
+      graph.addVertex(vertices[v]);
+    }
+    for (int v = 0; v < n; v++) {
+      int destination = random.nextInt(cities);
+      for (int i = 0; i < FLIGHTS_PER_CITY; i++) {
+        int target = flightShaped ? destination * FLIGHTS_PER_CITY + i : random.nextInt(n);
+        graph.addEdge(vertices[v], vertices[target], prices[target]);
+      }
+    }
+    long graphBytes = usedHeap() - heapBefore;
+
+    CompactGraph<Integer> compact = CompactGraph.of(graph);
+    long start = System.nanoTime();
+    CompressedGraph<Integer> compressed = CompressedGraph.of(compact);
+    long buildMillis = (System.nanoTime() - start) / 1_000_000;
+    long edges = compact.edgeCount();
+    // Out offsets, targets and costs, in offsets and sources
+    long compactBytes = 8L * (compact.vertexCount() + 1) + 12L * edges;
+
+    System.out.printf("%s: %d vertices, %d edges, compressed in %d ms%n", name, n, edges, buildMillis);
+    System.out.printf("  %-12s %14s %18s%n", "graph", "bytes/edge", "M edges/s");
+    for (int round = 0; round < ROUNDS; round++) {
+      // Costs are summed to check the three agree, targets to keep them live
+      long costs = 0;
+      long targets = 0;
+      start = System.nanoTime();
+      for (Map<Integer, Integer> neighbors : graph.getVertices().values()) {
+        for (Map.Entry<Integer, Integer> edge : neighbors.entrySet()) {
+          targets += edge.getKey();
+          costs += edge.getValue();
+        }
+      }
+      long graphNanos = System.nanoTime() - start;
+
+      long compactCosts = 0;
+      start = System.nanoTime();
+      for (int v = 0; v < compact.vertexCount(); v++) {
+        for (int e = compact.firstEdge(v); e < compact.firstEdge(v + 1); e++) {
+          targets += compact.edgeTarget(e);
+          compactCosts += compact.edgeCost(e);
+        }
+      }
+      long compactNanos = System.nanoTime() - start;
+
+      long compressedCosts = 0;
+      start = System.nanoTime();
+      CompressedGraph<Integer>.Cursor cursor = compressed.cursor();
+      for (int v = 0; v < compressed.vertexCount(); v++) {
+        cursor.reset(v);
+        while (cursor.next()) {
+          targets += cursor.target();
+          compressedCosts += cursor.cost();
+        }
+      }
+      long compressedNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int v = 0; v < compressed.vertexCount(); v++) {
+        cursor.reset(v);
+        while (cursor.next()) {
+          targets += cursor.target();
+        }
+      }
+      long targetsNanos = System.nanoTime() - start;
+
+      if (costs != compactCosts || costs != compressedCosts) {
+        throw new IllegalStateException("Cost sums differ: " + costs + ", " + compactCosts + ", " + compressedCosts);
+      }
+      if (round == ROUNDS - 1) {
+        System.out.printf("  %-12s %14.1f %18.0f%n", "Graph", (double) graphBytes / edges, rate(edges, graphNanos));
+        System.out.printf("  %-12s %14.1f %18.0f%n", "Compact", (double) compactBytes / edges,
+            rate(edges, compactNanos));
+        System.out.printf("  %-12s %14.1f %18.0f%n", "Compressed", (double) compressed.sizeInBytes() / edges,
+            rate(edges, compressedNanos));
+        System.out.printf("  %-12s %14s %18.0f%n", "  no costs", "", rate(edges, targetsNanos));
+        System.out.printf("  (target checksum %d)%n", targets);
+      }
+    }
+  }
+
+  private static double rate(long edges, long nanos) {
+    return edges * 1_000.0 / nanos;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
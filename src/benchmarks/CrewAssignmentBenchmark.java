@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import models.Flight;
+import services.CrewAssignmentOptimizer;
+import services.CrewAssignmentOptimizer.Candidate;
+import services.CrewAssignmentOptimizer.Plan;
+import shared.structures.Graph;
+
+/**
+ * Measures how long the crew assignment optimizer takes to staff a network
+ * and how good its plans are, with the search running on one thread and on
+ * every core.
+ * Usage: {@code java benchmarks.CrewAssignmentBenchmark [cities] [crew] [seconds]}.
+ */
+public class CrewAssignmentBenchmark {
+  private static final int FLIGHTS_PER_CITY = 10;
+  private static final int CONNECTIONS_PER_FLIGHT = 4;
+  private static final int CREW_PER_FLIGHT = 3;
+  private static final int MAX_LEGS = 4;
+
+  public static void main(String[] args) {
+    int cities = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+    int crew = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    Random random = new Random(47);
+
+    Graph<Flight> graph = new Graph<>();
+    List<List<Flight>> departures = new ArrayList<>();
+    Set<Flight> unique = new HashSet<>();
+    for (int origin = 0; origin < cities; origin++) {
+      List<Flight> fromCity = new ArrayList<>();
+      while (fromCity.size() < FLIGHTS_PER_CITY) {
+        int destination = random.nextInt(cities);
+        Flight flight = new Flight("City " + origin, "City " + destination, 20_000 + random.nextInt(180_000),
+            4 + random.nextInt(8));
+        if (destination != origin && unique.add(flight)) {
+          fromCity.add(flight);
+          graph.addVertex(flight);
+        }
+      }
+      departures.add(fromCity);
+    }
+    for (List<Flight> fromCity : departures) {
+      for (Flight flight : fromCity) {
+        int destination = Integer.parseInt(flight.getDestination().substring("City ".length()));
+        List<Flight> onward = departures.get(destination);
+        for (int i = 0; i < CONNECTIONS_PER_FLIGHT; i++) {
+          graph.addEdge(flight, onward.get(random.nextInt(onward.size())), 0);
+        }
+      }
+    }
+    List<Candidate> candidates = new ArrayList<>();
+    for (int i = 0; i < crew; i++) {
+      candidates.add(new Candidate("Crew " + i, "City " + random.nextInt(cities)));
+    }
+    System.out.printf("%d flights, %d crew, %d crew per flight, up to %d legs%n", cities * FLIGHTS_PER_CITY, crew,
+        CREW_PER_FLIGHT, MAX_LEGS);
+
+    System.out.printf("%-12s %10s %12s %12s %10s %10s%n", "threads", "ms", "cost", "understaffed", "legs",
+        "home %");
+    run("greedy", new CrewAssignmentOptimizer(CREW_PER_FLIGHT, MAX_LEGS, new ForkJoinPool(1)), graph, candidates,
+        0);
+    run("1", new CrewAssignmentOptimizer(CREW_PER_FLIGHT, MAX_LEGS, new ForkJoinPool(1)), graph, candidates,
+        seconds * 1_000L);
+    int cores = Runtime.getRuntime().availableProcessors();
+    run(String.valueOf(cores), new CrewAssignmentOptimizer(CREW_PER_FLIGHT, MAX_LEGS, new ForkJoinPool(cores)),
+        graph, candidates, seconds * 1_000L);
+  }
+
+  private static void run(String label, CrewAssignmentOptimizer optimizer, Graph<Flight> graph,
+      List<Candidate> candidates, long timeLimitMillis) {
+    long start = System.nanoTime();
+    Plan plan = optimizer.optimize(graph, candidates, timeLimitMillis);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    System.out.printf("%-12s %10d %12d %12d %10d %10.1f%n", label, millis, plan.getCost(),
+        plan.getUnderstaffedFlights().size(), plan.getLegCount(),
+        100.0 * plan.getDutiesReturningHome() / Math.max(plan.getDuties().size(), 1));
+  }
+}
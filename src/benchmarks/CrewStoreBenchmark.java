@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import models.CrewMember;
+import models.Flight;
+import shared.structures.AVLTree;
+import shared.structures.OffHeapCrewStore;
+import shared.structures.OrderedIndex;
+
+/**
+ * Compares flights keeping their crew in AVL trees on the heap with flights
+ * keeping it in an off-heap crew store: the heap retained by the crew, the
+ * off-heap bytes, the time of a full collection, the collection time while
+ * the application churns through short-lived objects, and seat lookups.
+ * Usage: {@code java benchmarks.CrewStoreBenchmark [flights] [crewPerFlight]}.
+ * The defaults hold 10^7 crew members and need a few gigabytes of heap.
+ */
+public class CrewStoreBenchmark {
+  private static final int CHURN_OBJECTS = 200_000_000;
+  private static final int LOOKUPS = 10_000_000;
+
+  public static void main(String[] args) {
+    int flightCount = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int crewPerFlight = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+    System.out.printf("%d flights, %d crew members each%n", flightCount, crewPerFlight);
+    System.out.printf("%-9s %12s %12s %14s %14s %10s %14s%n", "store", "heap MB", "off-heap MB", "full GC ms",
+        "churn GC ms", "churn GCs", "lookup ns/op");
+    run("avl", flightCount, crewPerFlight, () -> AVLTree::new, null);
+    OffHeapCrewStore store = new OffHeapCrewStore();
+    run("off-heap", flightCount, crewPerFlight, () -> store::newIndex, store);
+  }
+
+  private static void run(String name, int flightCount, int crewPerFlight,
+      Supplier<Supplier<OrderedIndex<CrewMember>>> factory, OffHeapCrewStore store) {
+    long baseline = usedHeap();
+    Supplier<OrderedIndex<CrewMember>> indexes = factory.get();
+    List<Flight> flights = new ArrayList<>(flightCount);
+    for (int i = 0; i < flightCount; i++) {
+      Flight flight = new Flight("Origin " + i, "Destination " + i, 1_000, crewPerFlight, indexes.get());
+      for (int seat = 0; seat < crewPerFlight; seat++) {
+        // Crew names repeat across flights, as rostered crew do
+        flight.addCrewMember(new CrewMember("Crew " + (seat * 31 + i % 97), seat));
+      }
+      flights.add(flight);
+    }
+    long heap = usedHeap() - baseline;
+    long offHeap = store == null ? 0 : store.offHeapBytes();
+
+    long start = System.nanoTime();
+    System.gc();
+    long fullGcNanos = System.nanoTime() - start;
+
+    long gcMillis = gcMillis();
+    long gcCount = gcCount();
+    // Short-lived objects that escape into a small ring, so they are allocated
+    Object[] ring = new Object[1 << 12];
+    for (int i = 0; i < CHURN_OBJECTS; i++) {
+      ring[i & (ring.length - 1)] = new long[4];
+    }
+    gcMillis = gcMillis() - gcMillis;
+    gcCount = gcCount() - gcCount;
+
+    long sink = ring.length;
+    Random random = new Random(26);
+    start = System.nanoTime();
+    for (int i = 0; i < LOOKUPS; i++) {
+      CrewMember crewMember = flights.get(random.nextInt(flightCount)).getCrewTree()
+          .get(random.nextInt(crewPerFlight));
+      sink += crewMember.value;
+    }
+    long lookupNanos = System.nanoTime() - start;
+
+    System.out.printf("%-9s %12.1f %12.1f %14.1f %14d %10d %14.1f   (checksum %d)%n", name, heap / 1e6,
+        offHeap / 1e6, fullGcNanos / 1e6, gcMillis, gcCount, (double) lookupNanos / LOOKUPS, sink);
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += collector.getCollectionTime();
+    }
+    return millis;
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += collector.getCollectionCount();
+    }
+    return count;
+  }
+}
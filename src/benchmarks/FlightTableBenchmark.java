@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.util.Random;
+
+import models.Flight;
+import services.FlightTable;
+import shared.structures.BPlusTree;
+import shared.structures.Graph;
+
+/**
+ * Compares full-table aggregates over the columnar flight table with the same
+ * aggregates computed by visiting every Flight in the graph.
+ * Usage: {@code java benchmarks.FlightTableBenchmark [flights]}. Ten million
+ * flights need several gigabytes of heap.
+ */
+public class FlightTableBenchmark {
+  private static final int CITIES = 500;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+    Graph<Flight> graph = new Graph<>();
+    FlightTable table = new FlightTable();
+    table.attach(graph);
+    Random random = new Random(11);
+    for (int i = 0; i < n; i++) {
+      Flight flight = new Flight("City " + random.nextInt(CITIES), "Route " + i, 10_000 + random.nextInt(90_000),
+          100 + random.nextInt(200), random.nextInt(100), BPlusTree::new);
+      graph.addVertex(flight);
+    }
+
+    System.out.printf("%-26s %12s %12s%n", "aggregate", "objects ms", "columns ms");
+    for (int round = 0; round < ROUNDS; round++) {
+      boolean last = round == ROUNDS - 1;
+
+      long start = System.nanoTime();
+      long revenue = 0;
+      for (Flight flight : graph.getVertices().keySet()) {
+        revenue += (long) flight.calculatePrice() * flight.getOccupiedSeats();
+      }
+      long objectNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long columnRevenue = table.totalRevenue();
+      long columnNanos = System.nanoTime() - start;
+      report(last, "total revenue", objectNanos, columnNanos, revenue == columnRevenue);
+
+      start = System.nanoTime();
+      long cheapSeats = 0;
+      for (Flight flight : graph.getVertices().keySet()) {
+        int price = flight.calculatePrice();
+        if (price >= 20_000 && price <= 40_000) {
+          cheapSeats += flight.getCapacity();
+        }
+      }
+      objectNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      long columnCheapSeats = table.sumWhere(FlightTable.Column.CAPACITY, FlightTable.Column.PRICE, 20_000, 40_000);
+      columnNanos = System.nanoTime() - start;
+      report(last, "seats priced 20k-40k", objectNanos, columnNanos, cheapSeats == columnCheapSeats);
+
+      start = System.nanoTime();
+      table.occupancyByOrigin();
+      columnNanos = System.nanoTime() - start;
+      report(last, "occupancy by origin", -1, columnNanos, true);
+    }
+  }
+
+  private static void report(boolean print, String name, long objectNanos, long columnNanos, boolean matches) {
+    if (print) {
+      String objectMillis = objectNanos < 0 ? "-" : String.format("%.2f", objectNanos / 1e6);
+      System.out.printf("%-26s %12s %12.2f%s%n", name, objectMillis, columnNanos / 1e6,
+          matches ? "" : "   (MISMATCH)");
+    }
+  }
+}
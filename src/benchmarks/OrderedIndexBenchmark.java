@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import models.CrewMember;
+import shared.structures.AVLTree;
+import shared.structures.BPlusTree;
+import shared.structures.OrderedIndex;
+
+/**
+ * Compares the AVL tree with the B+ tree on random inserts, random lookups
+ * and full in-order scans, for index sizes from 10^3 up to a configurable
+ * maximum (10^7 by default).
+ * Usage: {@code java benchmarks.OrderedIndexBenchmark [maxExponent]}. Sizes
+ * near 10^7 need a few gigabytes of heap.
+ */
+public class OrderedIndexBenchmark {
+  private static final int ROUNDS = 3;
+
+  public static void main(String[] args) {
+    int maxExponent = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+
+    System.out.printf("%-10s %-8s %14s %14s %14s%n", "entries", "index", "insert ns/op", "lookup ns/op",
+        "scan ns/entry");
+    for (int exponent = 3; exponent <= maxExponent; exponent++) {
+      int n = (int) Math.pow(10, exponent);
+      CrewMember[] crew = randomCrew(n, exponent);
+      run("avl", n, crew, AVLTree::new);
+      run("b+tree", n, crew, BPlusTree::new);
+    }
+  }
+
+  private static void run(String name, int n, CrewMember[] crew, Supplier<OrderedIndex<CrewMember>> factory) {
+    long insertNanos = Long.MAX_VALUE;
+    long lookupNanos = Long.MAX_VALUE;
+    long scanNanos = Long.MAX_VALUE;
+    long checksum = 0;
+
+    // Keep the best of several rounds, so the first round doubles as warm-up
+    for (int round = 0; round < ROUNDS; round++) {
+      OrderedIndex<CrewMember> index = factory.get();
+
+      long start = System.nanoTime();
+      for (CrewMember crewMember : crew) {
+        index.insert(crewMember);
+      }
+      insertNanos = Math.min(insertNanos, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (int i = crew.length - 1; i >= 0; i--) {
+        checksum += index.get(crew[i].value).value;
+      }
+      lookupNanos = Math.min(lookupNanos, System.nanoTime() - start);
+
+      long[] sum = { 0 };
+      start = System.nanoTime();
+      index.forEach(crewMember -> sum[0] += crewMember.value);
+      scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+      checksum += sum[0];
+    }
+
+    System.out.printf("%-10d %-8s %14.1f %14.1f %14.2f   (checksum %d)%n", n, name, (double) insertNanos / n,
+        (double) lookupNanos / n, (double) scanNanos / n, checksum);
+  }
+
+  private static CrewMember[] randomCrew(int n, long seed) {
+    int[] seats = new int[n];
+    for (int i = 0; i < n; i++) {
+      seats[i] = i;
+    }
+    Random random = new Random(seed);
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = seats[i];
+      seats[i] = seats[j];
+      seats[j] = swap;
+    }
+
+    CrewMember[] crew = new CrewMember[n];
+    for (int i = 0; i < n; i++) {
+      crew[i] = new CrewMember("Crew " + seats[i], seats[i]);
+    }
+    return crew;
+  }
+}
@@ -0,0 +1,266 @@
+package benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import models.Flight;
+import services.ParetoRouteSearch;
+import shared.metrics.LatencyHistogram;
+import shared.structures.BPlusTree;
+import shared.structures.CompactGraph;
+import shared.structures.Graph;
+
+/**
+ * Compares the Pareto search against answering the same queries with three
+ * single-criterion searches on the same snapshot, all limited to the same
+ * number of connections: Bellman-Ford rounds for the cheapest itinerary,
+ * breadth-first search for the fewest connections and widest path rounds
+ * for the most available seats. Reports latencies, the size of
+ * the fronts and how often the front contains each single-criterion optimum.
+ * Usage: {@code java benchmarks.ParetoSearchBenchmark [cities] [queries]}.
+ */
+public class ParetoSearchBenchmark {
+  private static final int FLIGHTS_PER_CITY = 8;
+  private static final int MAX_CONNECTIONS = 3;
+
+  public static void main(String[] args) {
+    int cities = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+    int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+    Graph<Flight> graph = buildNetwork(cities, new Random(5));
+    ParetoRouteSearch search = new ParetoRouteSearch(graph);
+    CompactGraph<Flight> snapshot = search.getGraph();
+    Map<String, int[]> departures = departures(snapshot);
+    System.out.printf("%d flights, %d connections%n", snapshot.vertexCount(), snapshot.edgeCount());
+
+    Random random = new Random(9);
+    int[] origins = new int[queries];
+    int[] destinations = new int[queries];
+    for (int i = 0; i < queries; i++) {
+      origins[i] = random.nextInt(cities);
+      destinations[i] = (origins[i] + 1 + random.nextInt(cities - 1)) % cities;
+    }
+
+    // The first pass warms up the JIT
+    for (int pass = 0; pass < 2; pass++) {
+      LatencyHistogram paretoLatency = new LatencyHistogram();
+      LatencyHistogram singleLatency = new LatencyHistogram();
+      long frontSizes = 0;
+      int reachable = 0;
+      int cheapestFound = 0;
+      int fewestFound = 0;
+      int widestFound = 0;
+      for (int i = 0; i < queries; i++) {
+        String origin = "City " + origins[i];
+        String destination = "City " + destinations[i];
+
+        long start = System.nanoTime();
+        List<ParetoRouteSearch.Itinerary> front = search.search(origin, destination, MAX_CONNECTIONS, 1);
+        paretoLatency.recordSince(start);
+
+        start = System.nanoTime();
+        int[] starts = departures.getOrDefault(origin, new int[0]);
+        long cheapest = cheapest(snapshot, starts, destination, MAX_CONNECTIONS + 1);
+        int fewest = fewestFlights(snapshot, starts, destination, MAX_CONNECTIONS + 1);
+        int widest = widest(snapshot, starts, destination, MAX_CONNECTIONS + 1);
+        singleLatency.recordSince(start);
+
+        if (front.isEmpty()) {
+          continue;
+        }
+        reachable++;
+        frontSizes += front.size();
+        long frontCheapest = Long.MAX_VALUE;
+        int frontFewest = Integer.MAX_VALUE;
+        int frontWidest = 0;
+        for (ParetoRouteSearch.Itinerary itinerary : front) {
+          frontCheapest = Math.min(frontCheapest, itinerary.getPrice());
+          frontFewest = Math.min(frontFewest, itinerary.getFlights().size());
+          frontWidest = Math.max(frontWidest, itinerary.getAvailableSeats());
+        }
+        cheapestFound += frontCheapest <= cheapest ? 1 : 0;
+        fewestFound += frontFewest <= fewest ? 1 : 0;
+        widestFound += frontWidest >= widest ? 1 : 0;
+      }
+
+      if (pass == 1) {
+        System.out.printf("%-22s %10s %10s %10s%n", "search", "mean us", "p50 us", "p99 us");
+        report("pareto front", paretoLatency);
+        report("3 single-criterion", singleLatency);
+        System.out.printf("reachable pairs: %d, mean front size: %.2f%n", reachable,
+            reachable == 0 ? 0.0 : (double) frontSizes / reachable);
+        System.out.printf("front has the cheapest: %.3f, fewest flights: %.3f, most seats: %.3f%n",
+            ratio(cheapestFound, reachable), ratio(fewestFound, reachable), ratio(widestFound, reachable));
+      }
+    }
+  }
+
+  private static Graph<Flight> buildNetwork(int cities, Random random) {
+    Graph<Flight> graph = new Graph<>();
+    Flight[][] departures = new Flight[cities][FLIGHTS_PER_CITY];
+    for (int origin = 0; origin < cities; origin++) {
+      Set<Integer> destinations = new HashSet<>();
+      for (int i = 0; i < FLIGHTS_PER_CITY; i++) {
+        // Flights are equal by origin and destination, so draw distinct ones
+        int destination;
+        do {
+          destination = (origin + 1 + random.nextInt(cities - 1)) % cities;
+        } while (!destinations.add(destination));
+        int capacity = 100 + random.nextInt(200);
+        departures[origin][i] = new Flight("City " + origin, "City " + destination,
+            20_000 + random.nextInt(180_000), capacity, random.nextInt(capacity + 1), BPlusTree::new);
+        graph.addVertex(departures[origin][i]);
+      }
+    }
+    for (Flight[] flights : departures) {
+      for (Flight flight : flights) {
+        int destination = Integer.parseInt(flight.getDestination().substring(5));
+        for (Flight next : departures[destination]) {
+          graph.addEdge(flight, next, next.getDefaultPrice());
+        }
+      }
+    }
+    return graph;
+  }
+
+  private static Map<String, int[]> departures(CompactGraph<Flight> graph) {
+    Map<String, List<Integer>> ids = new HashMap<>();
+    for (int id = 0; id < graph.vertexCount(); id++) {
+      ids.computeIfAbsent(graph.vertexAt(id).getOrigin(), k -> new ArrayList<>()).add(id);
+    }
+    Map<String, int[]> departures = new HashMap<>();
+    ids.forEach((city, list) -> departures.put(city, list.stream().mapToInt(Integer::intValue).toArray()));
+    return departures;
+  }
+
+  /**
+   * Bellman-Ford in rounds, where round k only relaxes the flights improved
+   * in round k - 1, so no itinerary has more than the allowed flights.
+   */
+  private static long cheapest(CompactGraph<Flight> graph, int[] starts, String destination, int maxFlights) {
+    long[] previous = new long[graph.vertexCount()];
+    Arrays.fill(previous, Long.MAX_VALUE);
+    List<Integer> changed = new ArrayList<>();
+    for (int id : starts) {
+      Flight flight = graph.vertexAt(id);
+      if (flight.getAvailableSeats() > 0) {
+        previous[id] = flight.calculatePrice();
+        changed.add(id);
+      }
+    }
+    long best = Long.MAX_VALUE;
+    for (int round = 1; !changed.isEmpty(); round++) {
+      List<Integer> improved = new ArrayList<>();
+      long[] current = previous.clone();
+      for (int id : changed) {
+        if (graph.vertexAt(id).getDestination().equals(destination)) {
+          best = Math.min(best, previous[id]);
+          continue;
+        }
+        if (round == maxFlights) {
+          continue;
+        }
+        for (int edge = graph.firstEdge(id); edge < graph.firstEdge(id + 1); edge++) {
+          int next = graph.edgeTarget(edge);
+          Flight flight = graph.vertexAt(next);
+          long cost = previous[id] + flight.calculatePrice();
+          if (flight.getAvailableSeats() > 0 && cost < current[next]) {
+            if (current[next] == previous[next]) {
+              improved.add(next);
+            }
+            current[next] = cost;
+          }
+        }
+      }
+      previous = current;
+      changed = improved;
+    }
+    return best;
+  }
+
+  private static int fewestFlights(CompactGraph<Flight> graph, int[] starts, String destination, int maxFlights) {
+    int[] flights = new int[graph.vertexCount()];
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+    for (int id : starts) {
+      if (graph.vertexAt(id).getAvailableSeats() > 0) {
+        flights[id] = 1;
+        queue.add(id);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int id = queue.poll();
+      if (graph.vertexAt(id).getDestination().equals(destination)) {
+        return flights[id];
+      }
+      if (flights[id] == maxFlights) {
+        continue;
+      }
+      for (int edge = graph.firstEdge(id); edge < graph.firstEdge(id + 1); edge++) {
+        int next = graph.edgeTarget(edge);
+        if (flights[next] == 0 && graph.vertexAt(next).getAvailableSeats() > 0) {
+          flights[next] = flights[id] + 1;
+          queue.add(next);
+        }
+      }
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * The same rounds as {@link #cheapest}, maximizing the seats on the fullest
+   * flight instead of minimizing the price.
+   */
+  private static int widest(CompactGraph<Flight> graph, int[] starts, String destination, int maxFlights) {
+    int[] previous = new int[graph.vertexCount()];
+    List<Integer> changed = new ArrayList<>();
+    for (int id : starts) {
+      previous[id] = graph.vertexAt(id).getAvailableSeats();
+      if (previous[id] > 0) {
+        changed.add(id);
+      }
+    }
+    int best = 0;
+    for (int round = 1; !changed.isEmpty(); round++) {
+      List<Integer> improved = new ArrayList<>();
+      int[] current = previous.clone();
+      for (int id : changed) {
+        if (graph.vertexAt(id).getDestination().equals(destination)) {
+          best = Math.max(best, previous[id]);
+          continue;
+        }
+        if (round == maxFlights) {
+          continue;
+        }
+        for (int edge = graph.firstEdge(id); edge < graph.firstEdge(id + 1); edge++) {
+          int next = graph.edgeTarget(edge);
+          int width = Math.min(previous[id], graph.vertexAt(next).getAvailableSeats());
+          if (width > current[next]) {
+            if (current[next] == previous[next]) {
+              improved.add(next);
+            }
+            current[next] = width;
+          }
+        }
+      }
+      previous = current;
+      changed = improved;
+    }
+    return best;
+  }
+
+  private static void report(String name, LatencyHistogram latency) {
+    System.out.printf("%-22s %10.1f %10.1f %10.1f%n", name, latency.getMean() / 1_000,
+        latency.getPercentile(50) / 1_000.0, latency.getPercentile(99) / 1_000.0);
+  }
+
+  private static double ratio(int count, int total) {
+    return total == 0 ? 0.0 : (double) count / total;
+  }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import models.CrewMember;
+import models.Flight;
+import services.partition.ShardCoordinator;
+
+/**
+ * Measures booking throughput and cheapest-route latency of a flight network
+ * partitioned across 1, 2, 4 and 8 local worker processes. Bookings are
+ * issued by a fixed number of client threads through one coordinator.
+ * Usage: {@code java benchmarks.PartitionBenchmark [cities] [clients] [seconds]}.
+ * Throughput can only scale up to the number of cores of the machine.
+ */
+public class PartitionBenchmark {
+  private static final int FLIGHTS_PER_CITY = 10;
+  private static final int[] WORKERS = { 1, 2, 4, 8 };
+  private static final int ROUTE_QUERIES = 50;
+
+  public static void main(String[] args) throws Exception {
+    int cities = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    Random random = new Random(29);
+    List<Flight> flights = new ArrayList<>();
+    Set<Flight> unique = new HashSet<>();
+    for (int origin = 0; origin < cities; origin++) {
+      while (flights.size() < (origin + 1) * FLIGHTS_PER_CITY) {
+        int destination = random.nextInt(cities);
+        Flight flight = new Flight("City " + origin, "City " + destination, 20_000 + random.nextInt(180_000),
+            1_000_000);
+        if (destination != origin && unique.add(flight)) {
+          flights.add(flight);
+        }
+      }
+    }
+    System.out.printf("%d flights, %d cities, %d clients, %d s per run, %d cores%n", flights.size(), cities,
+        clients, seconds, Runtime.getRuntime().availableProcessors());
+    System.out.printf("%-8s %14s %16s %14s%n", "workers", "load ms", "bookings/s", "route ms");
+
+    for (int workers : WORKERS) {
+      try (ShardCoordinator coordinator = ShardCoordinator.launch(workers, "-Xmx512m")) {
+        long start = System.nanoTime();
+        coordinator.addFlights(flights);
+        long loadNanos = System.nanoTime() - start;
+
+        LongAdder bookings = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int client = 0; client < clients; client++) {
+          int id = client;
+          Thread thread = new Thread(() -> {
+            Random local = new Random(id);
+            int seat = id * 10_000_000;
+            while (System.nanoTime() < deadline) {
+              Flight flight = flights.get(local.nextInt(flights.size()));
+              if (coordinator.book(flight.getOrigin(), flight.getDestination(), new CrewMember("Crew", seat++))) {
+                bookings.increment();
+              }
+            }
+            done.countDown();
+          });
+          thread.start();
+        }
+        done.await();
+
+        start = System.nanoTime();
+        int hops = 0;
+        for (int i = 0; i < ROUTE_QUERIES; i++) {
+          hops += coordinator.findCheapestRoute("City " + random.nextInt(cities), "City " + random.nextInt(cities))
+              .size();
+        }
+        long routeNanos = System.nanoTime() - start;
+
+        System.out.printf("%-8d %14.0f %16.0f %14.1f   (%d legs found)%n", workers, loadNanos / 1e6,
+            bookings.sum() / (double) seconds, routeNanos / 1e6 / ROUTE_QUERIES, hops);
+      }
+    }
+  }
+}
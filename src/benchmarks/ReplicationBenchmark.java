@@ -0,0 +1,164 @@
+package benchmarks;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import models.CrewMember;
+import models.Flight;
+import services.CityGraph;
+import services.replication.ReplicaFollower;
+import services.replication.ReplicationLeader;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
+
+/**
+ * Measures how long a new follower takes to catch up with a populated
+ * leader through a batched snapshot, and the replication lag and route query
+ * throughput while bookings run on the leader at a fixed rate and queries run
+ * on the leader alone, then on one and two followers.
+ * Usage: {@code java benchmarks.ReplicationBenchmark [cities] [seconds] [bookings/s]}.
+ */
+public class ReplicationBenchmark {
+  private static final int FLIGHTS_PER_CITY = 10;
+  private static final int CREW_PER_FLIGHT = 10;
+  private static final int CONNECTIONS_PER_FLIGHT = 2;
+  private static final int QUERY_THREADS_PER_FOLLOWER = 2;
+
+  public static void main(String[] args) throws Exception {
+    int cities = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    int bookingRate = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+    Random random = new Random(31);
+
+    Graph<Flight> graph = new Graph<>();
+    List<Flight> flights = new ArrayList<>();
+    Set<Flight> unique = new HashSet<>();
+    for (int origin = 0; origin < cities; origin++) {
+      while (flights.size() < (origin + 1) * FLIGHTS_PER_CITY) {
+        int destination = random.nextInt(cities);
+        Flight flight = new Flight("City " + origin, "City " + destination, 20_000 + random.nextInt(180_000),
+            100_000);
+        if (destination != origin && unique.add(flight)) {
+          flights.add(flight);
+          graph.addVertex(flight);
+        }
+      }
+    }
+    int seat = 0;
+    for (Flight flight : flights) {
+      for (int i = 0; i < CREW_PER_FLIGHT; i++) {
+        flight.addCrewMember(new CrewMember("Crew " + seat, seat++));
+      }
+      for (int i = 0; i < CONNECTIONS_PER_FLIGHT; i++) {
+        graph.addEdge(flight, flights.get(random.nextInt(flights.size())), random.nextInt(1_000));
+      }
+    }
+    CityGraph cityGraph = new CityGraph();
+    cityGraph.attach(graph);
+
+    try (ReplicationLeader leader = new ReplicationLeader(0)) {
+      leader.attach(graph);
+      leader.start();
+      InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), leader.getPort());
+      System.out.printf("%d flights, %d crew members, %d records logged%n", flights.size(), seat,
+          leader.getSequence());
+
+      System.out.printf("%-10s %12s %12s %12s %12s%n", "followers", "bookings/s", "routes/s", "lag p50 ms",
+          "lag p99 ms");
+      int[] seatCounter = { seat };
+      run(leader, cityGraph, flights, new ReplicaFollower[0], seatCounter, cities, seconds, bookingRate);
+
+      long start = System.nanoTime();
+      ReplicaFollower first = new ReplicaFollower(address);
+      first.start();
+      first.awaitSequence(leader.getSequence(), 600_000);
+      long catchUpNanos = System.nanoTime() - start;
+      run(leader, cityGraph, flights, new ReplicaFollower[] { first }, seatCounter, cities, seconds, bookingRate);
+      try (ReplicaFollower second = new ReplicaFollower(address)) {
+        second.start();
+        second.awaitSequence(leader.getSequence(), 600_000);
+        run(leader, cityGraph, flights, new ReplicaFollower[] { first, second }, seatCounter, cities, seconds,
+            bookingRate);
+      }
+      System.out.printf("snapshot catch-up of a new follower: %.0f ms%n", catchUpNanos / 1e6);
+      first.close();
+    }
+  }
+
+  /**
+   * Books seats on the leader at a fixed rate from one thread and answers
+   * route queries on the followers, or on the leader when there are none, for
+   * a number of seconds.
+   */
+  private static void run(ReplicationLeader leader, CityGraph cityGraph, List<Flight> flights,
+      ReplicaFollower[] followers, int[] seatCounter, int cities, int seconds, int bookingRate)
+      throws InterruptedException {
+    LatencyHistogram lag = Metrics.histogram("replication.lag.ms");
+    lag.reset();
+    AtomicBoolean stop = new AtomicBoolean();
+    LongAdder bookings = new LongAdder();
+    LongAdder queries = new LongAdder();
+    List<Thread> threads = new ArrayList<>();
+
+    threads.add(new Thread(() -> {
+      Random random = new Random(1);
+      int seat = seatCounter[0];
+      long interval = 1_000_000_000L / bookingRate;
+      long next = System.nanoTime();
+      while (!stop.get()) {
+        Flight flight = flights.get(random.nextInt(flights.size()));
+        if (flight.addCrewMember(new CrewMember("Crew " + seat, seat++))) {
+          bookings.increment();
+        }
+        next += interval;
+        long wait = next - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+      }
+      seatCounter[0] = seat;
+    }));
+    if (followers.length == 0) {
+      threads.add(new Thread(() -> {
+        Random random = new Random(2);
+        while (!stop.get()) {
+          cityGraph.findCheapestRoute("City " + random.nextInt(cities), "City " + random.nextInt(cities));
+          queries.increment();
+        }
+      }));
+    }
+    for (ReplicaFollower follower : followers) {
+      for (int i = 0; i < QUERY_THREADS_PER_FOLLOWER; i++) {
+        int seed = threads.size();
+        threads.add(new Thread(() -> {
+          Random random = new Random(seed);
+          while (!stop.get()) {
+            follower.findCheapestRoute("City " + random.nextInt(cities), "City " + random.nextInt(cities));
+            queries.increment();
+          }
+        }));
+      }
+    }
+
+    threads.forEach(Thread::start);
+    Thread.sleep(seconds * 1_000L);
+    stop.set(true);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (ReplicaFollower follower : followers) {
+      follower.awaitSequence(leader.getSequence(), 60_000);
+    }
+    System.out.printf("%-10d %12.0f %12.1f %12d %12d%n", followers.length, bookings.sum() / (double) seconds,
+        queries.sum() / (double) seconds, lag.getPercentile(50), lag.getPercentile(99));
+  }
+}
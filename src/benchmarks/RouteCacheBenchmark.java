@@ -0,0 +1,115 @@
+package benchmarks;
+
+import java.util.Random;
+
+import models.CrewMember;
+import models.Flight;
+import services.CityGraph;
+import services.RouteCache;
+import shared.metrics.LatencyHistogram;
+import shared.structures.Graph;
+
+/**
+ * Replays route queries whose city pairs follow a Zipf distribution against
+ * the city graph directly and through the route cache, with an occasional
+ * booking between queries, and reports the hit ratio and latencies.
+ * Usage: {@code java benchmarks.RouteCacheBenchmark [queries] [zipfExponent]}.
+ */
+public class RouteCacheBenchmark {
+  private static final int CITIES = 300;
+  private static final int FLIGHTS_PER_CITY = 10;
+  private static final int CACHE_SIZE = 2_000;
+  private static final int QUERIES_PER_BOOKING = 100;
+
+  public static void main(String[] args) {
+    int queries = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    double exponent = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+    int[] pairs = zipfReplay(queries, CITIES * CITIES, exponent, 42);
+    System.out.printf("%-8s %10s %10s %10s %10s%n", "setup", "hit ratio", "mean ns", "p50 ns", "p99 ns");
+    run("direct", pairs, false);
+    run("cached", pairs, true);
+  }
+
+  private static void run(String name, int[] pairs, boolean cached) {
+    Graph<Flight> graph = new Graph<>();
+    CityGraph cityGraph = new CityGraph();
+    cityGraph.attach(graph);
+    RouteCache cache = new RouteCache(cityGraph, CACHE_SIZE);
+    if (cached) {
+      cache.attach(graph);
+    }
+
+    Random random = new Random(7);
+    Flight[] flights = new Flight[CITIES * FLIGHTS_PER_CITY];
+    for (int i = 0; i < flights.length; i++) {
+      int origin = i / FLIGHTS_PER_CITY;
+      int destination = (origin + 1 + random.nextInt(CITIES - 1)) % CITIES;
+      flights[i] = new Flight("City " + origin, "City " + destination, 50_000 + random.nextInt(100_000),
+          1_000_000);
+      graph.addVertex(flights[i]);
+    }
+
+    LatencyHistogram latency = new LatencyHistogram();
+    int seat = 0;
+    for (int i = 0; i < pairs.length; i++) {
+      String origin = "City " + pairs[i] / CITIES;
+      String destination = "City " + pairs[i] % CITIES;
+      long start = System.nanoTime();
+      if (cached) {
+        cache.findCheapestRoute(origin, destination, 2);
+      } else {
+        cityGraph.findCheapestRoute(origin, destination, 2);
+      }
+      latency.recordSince(start);
+
+      if (i % QUERIES_PER_BOOKING == 0) {
+        flights[random.nextInt(flights.length)].addCrewMember(new CrewMember("Crew " + seat, seat++));
+      }
+    }
+
+    System.out.printf("%-8s %10.3f %10.0f %10d %10d%n", name, cached ? cache.getHitRatio() : 0.0,
+        latency.getMean(), latency.getPercentile(50), latency.getPercentile(99));
+  }
+
+  /**
+   * Draws values from 0 to n - 1 with probability proportional to
+   * 1 / (rank ^ exponent), where ranks are a random permutation of the values.
+   */
+  private static int[] zipfReplay(int count, int n, double exponent, long seed) {
+    double[] cumulative = new double[n];
+    double total = 0;
+    for (int rank = 0; rank < n; rank++) {
+      total += 1.0 / Math.pow(rank + 1, exponent);
+      cumulative[rank] = total;
+    }
+    Random random = new Random(seed);
+    int[] permutation = new int[n];
+    for (int i = 0; i < n; i++) {
+      permutation[i] = i;
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = permutation[i];
+      permutation[i] = permutation[j];
+      permutation[j] = swap;
+    }
+
+    int[] values = new int[count];
+    for (int i = 0; i < count; i++) {
+      double target = random.nextDouble() * total;
+      int low = 0;
+      int high = n - 1;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (cumulative[middle] < target) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      values[i] = permutation[low];
+    }
+    return values;
+  }
+}
@@ -0,0 +1,148 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import models.Flight;
+import services.CityGraph;
+import services.CrewIndex;
+import services.FlightIndex;
+import services.FlightTable;
+import services.RouteCache;
+import services.ScheduleChangeset;
+import shared.structures.BPlusTree;
+import shared.structures.Graph;
+
+/**
+ * Compares moving an indexed flight graph to a new schedule by diffing and
+ * applying the changes with rebuilding the graph and its indexes from the
+ * schedule. Each new schedule removes, reschedules and adds equal numbers of
+ * flights, a given fraction of the network in total.
+ * Usage: {@code java benchmarks.ScheduleDiffBenchmark [flights]}. A million
+ * flights need about 3 GB of heap.
+ */
+public class ScheduleDiffBenchmark {
+  private static final int FLIGHTS_PER_CITY = 20;
+  private static final int CONNECTIONS_PER_FLIGHT = 2;
+  private static final double[] CHANGED_FRACTIONS = { 0.001, 0.01, 0.001, 0.01 };
+
+  public static void main(String[] args) {
+    int flights = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int cities = Math.max(flights / FLIGHTS_PER_CITY, FLIGHTS_PER_CITY + 1);
+    Random random = new Random(23);
+
+    Graph<Flight> live = new Graph<>();
+    List<Flight> all = new ArrayList<>();
+    for (int origin = 0; origin < cities && all.size() < flights; origin++) {
+      int offset = random.nextInt(cities);
+      for (int i = 0; i < FLIGHTS_PER_CITY; i++) {
+        int destination = (origin + 1 + (offset + i) % (cities - 1)) % cities;
+        all.add(newFlight(random, origin, destination));
+      }
+    }
+    all.forEach(live::addVertex);
+    connect(live, all, random);
+    attachIndexes(live);
+    System.out.printf("%d flights, %d cities%n", live.getVertices().size(), cities);
+
+    // The first two rounds warm up the JIT
+    System.out.printf("%-10s %10s %10s %10s %12s%n", "changed", "changes", "diff ms", "apply ms", "rebuild ms");
+    for (int round = 0; round < CHANGED_FRACTIONS.length; round++) {
+      Graph<Flight> schedule = nextSchedule(live, CHANGED_FRACTIONS[round], cities, random);
+
+      long start = System.nanoTime();
+      ScheduleChangeset changeset = ScheduleChangeset.diff(live, schedule);
+      long diffNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      changeset.apply(live);
+      long applyNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      Graph<Flight> rebuilt = new Graph<>();
+      attachIndexes(rebuilt);
+      schedule.getVertices().keySet().forEach(rebuilt::addVertex);
+      schedule.getVertices().forEach((from, neighbors) -> neighbors.forEach((to, cost) -> rebuilt.addEdge(from, to, cost)));
+      long rebuildNanos = System.nanoTime() - start;
+
+      if (round >= 2) {
+        System.out.printf("%-10s %10d %10.1f %10.1f %12.1f%n", CHANGED_FRACTIONS[round] * 100 + "%", changeset.size(),
+            diffNanos / 1e6, applyNanos / 1e6, rebuildNanos / 1e6);
+      }
+    }
+  }
+
+  private static void attachIndexes(Graph<Flight> graph) {
+    new FlightIndex().attach(graph);
+    new CrewIndex().attach(graph);
+    CityGraph cityGraph = new CityGraph();
+    cityGraph.attach(graph);
+    new RouteCache(cityGraph, 1_000).attach(graph);
+    new FlightTable().attach(graph);
+  }
+
+  private static Flight newFlight(Random random, int origin, int destination) {
+    int capacity = 100 + random.nextInt(200);
+    return new Flight("City " + origin, "City " + destination, 20_000 + random.nextInt(180_000), capacity,
+        random.nextInt(capacity / 2), BPlusTree::new);
+  }
+
+  /**
+   * Connects every flight to a few of the flights leaving its destination.
+   */
+  private static void connect(Graph<Flight> graph, List<Flight> flights, Random random) {
+    Map<String, List<Flight>> departures = new HashMap<>();
+    for (Flight flight : graph.getVertices().keySet()) {
+      departures.computeIfAbsent(flight.getOrigin(), k -> new ArrayList<>()).add(flight);
+    }
+    for (Flight flight : flights) {
+      List<Flight> next = departures.get(flight.getDestination());
+      for (int i = 0; next != null && i < CONNECTIONS_PER_FLIGHT; i++) {
+        Flight to = next.get(random.nextInt(next.size()));
+        graph.addEdge(flight, to, to.getDefaultPrice());
+      }
+    }
+  }
+
+  /**
+   * Copies the live graph into a new schedule with a fraction of its flights
+   * removed, rescheduled or added, a third each.
+   */
+  private static Graph<Flight> nextSchedule(Graph<Flight> live, double fraction, int cities, Random random) {
+    int changes = Math.max((int) (live.getVertices().size() * fraction / 3), 1);
+    List<Flight> flights = new ArrayList<>(live.getVertices().keySet());
+    Map<Flight, Flight> copies = new HashMap<>(flights.size() * 2);
+    for (Flight flight : flights) {
+      copies.put(flight, new Flight(flight.getOrigin(), flight.getDestination(), flight.getDefaultPrice(),
+          flight.getCapacity()));
+    }
+    for (int i = 0; i < changes; i++) {
+      copies.remove(flights.get(random.nextInt(flights.size())));
+      Flight updated = flights.get(random.nextInt(flights.size()));
+      if (copies.containsKey(updated)) {
+        copies.put(updated, new Flight(updated.getOrigin(), updated.getDestination(),
+            updated.getDefaultPrice() + 1_000, updated.getCapacity() + 10));
+      }
+    }
+
+    Graph<Flight> schedule = new Graph<>();
+    copies.values().forEach(schedule::addVertex);
+    live.getVertices().forEach((from, neighbors) -> neighbors.forEach((to, cost) -> {
+      if (copies.containsKey(from) && copies.containsKey(to)) {
+        schedule.addEdge(copies.get(from), copies.get(to), cost);
+      }
+    }));
+    List<Flight> added = new ArrayList<>();
+    while (added.size() < changes) {
+      Flight flight = newFlight(random, random.nextInt(cities), random.nextInt(cities));
+      if (!flight.getOrigin().equals(flight.getDestination()) && !schedule.getVertices().containsKey(flight)) {
+        schedule.addVertex(flight);
+        added.add(flight);
+      }
+    }
+    connect(schedule, added, random);
+    return schedule;
+  }
+}
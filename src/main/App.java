@@ -1,10 +1,39 @@
 package main;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import shared.metrics.Metrics;
+import shared.utils.FlightStore;
 import views.MainMenu;
 
 public class App {
-  public static void main(String[] args) {
-    MainMenu mainMenu = new MainMenu();
+  /**
+   * Starts the application.
+   * Usage: {@code App [--lazy] [data-directory]}. When a data directory saved
+   * from the main menu is given, its flights are loaded at startup; with
+   * {@code --lazy}, crew members are only read when a flight's crew is first
+   * used.
+   *
+   * @param args the command-line arguments
+   * @throws IOException if the data directory cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    Metrics.registerMBean();
+
+    boolean lazy = false;
+    String directory = null;
+    for (String arg : args) {
+      if (arg.equals("--lazy")) {
+        lazy = true;
+      } else {
+        directory = arg;
+      }
+    }
+
+    MainMenu mainMenu = directory == null
+        ? new MainMenu()
+        : new MainMenu(FlightStore.load(Paths.get(directory), lazy));
     mainMenu.show();
   }
 }
\ No newline at end of file
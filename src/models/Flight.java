@@ -1,6 +1,15 @@
 package models;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.render.OutputBuffer;
 import shared.structures.AVLTree;
+import shared.structures.OrderedIndex;
 
 /**
  * Represents a flight in the system.
@@ -10,12 +19,21 @@ import shared.structures.AVLTree;
  * making it suitable for use in data structures such as graphs and hash maps.
  */
 public class Flight {
+  private static final LatencyHistogram ADD_CREW_NANOS = Metrics.histogram("flight.addCrewMember.ns");
+  private static final LongAdder CREW_ADDED = Metrics.counter("flight.addCrewMember.success");
+  private static final LongAdder CREW_REJECTED = Metrics.counter("flight.addCrewMember.rejected");
+  private static final LongAdder PRICE_CALCULATIONS = Metrics.counter("flight.calculatePrice.calls");
+
   private final String origin;
   private final String destination;
-  private final int defaultPrice;
-  private final int capacity;
+  private int defaultPrice;
+  private int capacity;
   private int occupiedSeats;
-  private final AVLTree<CrewMember> crewTree;
+  private int heldSeats;
+  private volatile OrderedIndex<CrewMember> crewTree;
+  private Supplier<? extends OrderedIndex<CrewMember>> crewLoader;
+  private FlightPricer pricer;
+  private final List<FlightListener> listeners;
 
   /**
    * Constructs a Flight with the specified parameters.
@@ -32,30 +50,214 @@ public class Flight {
     this.capacity = capacity;
     this.occupiedSeats = 0;
     this.crewTree = new AVLTree<>();
+    this.listeners = new ArrayList<>();
+  }
+
+  /**
+   * Constructs a Flight that keeps its crew members in the given index, for
+   * example a {@link shared.structures.BPlusTree} for very large manifests.
+   *
+   * @param origin       the origin city of the flight
+   * @param destination  the destination city of the flight
+   * @param defaultPrice the base price of the flight
+   * @param capacity     the maximum number of seats available on the flight
+   * @param crewTree     the empty index to store crew members in
+   */
+  public Flight(String origin, String destination, int defaultPrice, int capacity,
+      OrderedIndex<CrewMember> crewTree) {
+    this.origin = origin;
+    this.destination = destination;
+    this.defaultPrice = defaultPrice;
+    this.capacity = capacity;
+    this.occupiedSeats = 0;
+    this.crewTree = crewTree;
+    this.listeners = new ArrayList<>();
+  }
+
+  /**
+   * Constructs a Flight whose crew tree is loaded lazily.
+   * The loader is invoked once, the first time the crew tree is needed, so
+   * flights can be made available before their crew members are read.
+   *
+   * @param origin        the origin city of the flight
+   * @param destination   the destination city of the flight
+   * @param defaultPrice  the base price of the flight
+   * @param capacity      the maximum number of seats available on the flight
+   * @param occupiedSeats the number of seats already occupied
+   * @param crewLoader    the supplier of the flight's crew tree
+   */
+  public Flight(String origin, String destination, int defaultPrice, int capacity, int occupiedSeats,
+      Supplier<? extends OrderedIndex<CrewMember>> crewLoader) {
+    this.origin = origin;
+    this.destination = destination;
+    this.defaultPrice = defaultPrice;
+    this.capacity = capacity;
+    this.occupiedSeats = occupiedSeats;
+    this.crewLoader = crewLoader;
+    this.listeners = new ArrayList<>();
+  }
+
+  /**
+   * Registers a listener that is notified of changes to this flight.
+   *
+   * @param listener the listener to register
+   */
+  public void addListener(FlightListener listener) {
+    if (!listeners.contains(listener)) {
+      listeners.add(listener);
+    }
+  }
+
+  /**
+   * Unregisters a previously registered listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeListener(FlightListener listener) {
+    listeners.remove(listener);
   }
 
   /**
    * Adds a crew member to the flight.
    * The crew member is assigned to a specific seat based on their seat number.
-   * If the flight is fully booked, the operation will fail.
+   * If the flight is fully booked, counting held seats, or the seat is
+   * already taken, the operation will fail.
    *
    * @param crewMember the crew member to add
    * @return true if the crew member was successfully added, false otherwise
    */
-  public boolean addCrewMember(CrewMember crewMember) {
-    if (occupiedSeats >= capacity) {
+  public synchronized boolean addCrewMember(CrewMember crewMember) {
+    if (occupiedSeats + heldSeats >= capacity) {
+      CREW_REJECTED.increment();
       System.out.println("Flight is fully booked.");
       return false;
     }
-    crewTree.insert(crewMember);
+    return insertCrewMember(crewMember);
+  }
+
+  /**
+   * Reserves seats without assigning them, for example while a payment
+   * clears. Held seats count against the capacity until they are booked with
+   * {@link #addHeldCrewMember(CrewMember)} or released. The listeners are
+   * notified of the held seats.
+   *
+   * @param seats the number of seats to hold
+   * @return true if the seats were held, false if there are not enough free
+   *         seats
+   */
+  public synchronized boolean holdSeats(int seats) {
+    if (seats < 1 || occupiedSeats + heldSeats + seats > capacity) {
+      return false;
+    }
+    heldSeats += seats;
+    for (FlightListener listener : listeners) {
+      listener.onHeldSeatsChanged(this, seats);
+    }
+    return true;
+  }
+
+  /**
+   * Releases held seats, making them available again, and notifies the
+   * listeners if any were held.
+   *
+   * @param seats the number of seats to release
+   */
+  public synchronized void releaseHeldSeats(int seats) {
+    int released = Math.min(Math.max(seats, 0), heldSeats);
+    if (released == 0) {
+      return;
+    }
+    heldSeats -= released;
+    for (FlightListener listener : listeners) {
+      listener.onHeldSeatsChanged(this, -released);
+    }
+  }
+
+  /**
+   * Adds a crew member to one of the held seats.
+   *
+   * @param crewMember the crew member to add
+   * @return true if the crew member was added, false if no seats are held or
+   *         the seat is already taken
+   */
+  public synchronized boolean addHeldCrewMember(CrewMember crewMember) {
+    if (heldSeats == 0) {
+      return false;
+    }
+    heldSeats--;
+    if (!insertCrewMember(crewMember)) {
+      heldSeats++;
+      return false;
+    }
+    return true;
+  }
+
+  private boolean insertCrewMember(CrewMember crewMember) {
+    long start = System.nanoTime();
+    if (!loadedCrewTree().insert(crewMember)) {
+      CREW_REJECTED.increment();
+      System.out.println("Seat is already taken.");
+      return false;
+    }
     occupiedSeats++;
+    for (FlightListener listener : listeners) {
+      listener.onCrewMemberAdded(this, crewMember);
+    }
+    ADD_CREW_NANOS.recordSince(start);
+    CREW_ADDED.increment();
     return true;
   }
 
   /**
-   * Calculates the current price of the flight based on the number of occupied
-   * seats.
-   * Discounts are applied as follows:
+   * Changes the base price and capacity of the flight, keeping its crew
+   * members and held seats, and notifies the listeners.
+   *
+   * @param defaultPrice the new base price
+   * @param capacity     the new maximum number of seats
+   * @throws IllegalArgumentException if the capacity is below the number of
+   *                                  occupied and held seats
+   */
+  public void reschedule(int defaultPrice, int capacity) {
+    synchronized (this) {
+      if (capacity < occupiedSeats + heldSeats) {
+        throw new IllegalArgumentException("Capacity " + capacity + " is below the " + (occupiedSeats + heldSeats)
+            + " occupied and held seats of " + origin + " -> " + destination);
+      }
+      this.defaultPrice = defaultPrice;
+      this.capacity = capacity;
+    }
+    for (FlightListener listener : listeners) {
+      listener.onScheduleChanged(this);
+    }
+  }
+
+  /**
+   * Replaces the way the price of this flight is calculated and notifies the
+   * listeners that the price may have changed.
+   *
+   * @param pricer the pricer to use, or null for the built-in discounts
+   */
+  public void setPricer(FlightPricer pricer) {
+    this.pricer = pricer;
+    priceChanged();
+  }
+
+  /**
+   * Notifies the listeners that the price of this flight may have changed.
+   * Pricers whose result depends on more than the occupied seats call this
+   * when their inputs change.
+   */
+  public void priceChanged() {
+    for (FlightListener listener : listeners) {
+      listener.onPriceChanged(this);
+    }
+  }
+
+  /**
+   * Calculates the current price of the flight.
+   * If a pricer has been installed, it decides the price. Otherwise the price
+   * depends on the number of occupied seats and discounts are applied as
+   * follows:
    * - 10% discount if the flight is 50% occupied.
    * - 20% discount if the flight is 70% occupied.
    * - 40% discount if the flight is fully occupied.
@@ -63,6 +265,10 @@ public class Flight {
    * @return the dynamically adjusted price of the flight
    */
   public int calculatePrice() {
+    PRICE_CALCULATIONS.increment();
+    if (pricer != null) {
+      return pricer.priceOf(this);
+    }
     if (occupiedSeats == capacity) {
       return defaultPrice * 60 / 100; // 40% discount
     } else if (occupiedSeats >= capacity * 0.7) {
@@ -79,12 +285,27 @@ public class Flight {
    * and crew members.
    */
   public void printDetails() {
-    System.out.println("Flight from " + origin + " to " + destination);
-    System.out.println("Base Price: " + defaultPrice);
-    System.out.println("Current Price: " + calculatePrice());
-    System.out.println("Occupied Seats: " + occupiedSeats + "/" + capacity);
-    System.out.println("Crew Members (In-Order):");
-    crewTree.inOrder();
+    OutputBuffer out = OutputBuffer.stdout();
+    writeDetails(out);
+    out.flush();
+  }
+
+  /**
+   * Writes detailed information about the flight, including its price,
+   * capacity, and crew members in seat order.
+   *
+   * @param out the destination of the details
+   */
+  public void writeDetails(OutputBuffer out) {
+    out.append("Flight from ").append(origin).append(" to ").append(destination).newLine();
+    out.append("Base Price: ").append((long) defaultPrice).newLine();
+    out.append("Current Price: ").append((long) calculatePrice()).newLine();
+    out.append("Occupied Seats: ").append((long) occupiedSeats).append('/').append((long) capacity).newLine();
+    if (heldSeats > 0) {
+      out.append("Held Seats: ").append((long) heldSeats).newLine();
+    }
+    out.append("Crew Members (In-Order):").newLine();
+    loadedCrewTree().forEach(crewMember -> out.append(crewMember).newLine());
   }
 
   /**
@@ -123,6 +344,24 @@ public class Flight {
     return occupiedSeats;
   }
 
+  /**
+   * Gets the number of seats currently held but not yet booked.
+   *
+   * @return the number of held seats
+   */
+  public int getHeldSeats() {
+    return heldSeats;
+  }
+
+  /**
+   * Gets the number of seats that are neither occupied nor held.
+   *
+   * @return the number of available seats
+   */
+  public int getAvailableSeats() {
+    return capacity - occupiedSeats - heldSeats;
+  }
+
   /**
    * Gets the total capacity of the flight.
    *
@@ -178,12 +417,41 @@ public class Flight {
   }
 
   /**
-   * Gets the AVL tree containing the crew members for this flight.
+   * Gets the ordered index containing the crew members for this flight, an
+   * AVL tree unless another index was supplied at construction.
    *
-   * @return the AVL tree of crew members
+   * @return the index of crew members
    */
-  public AVLTree<CrewMember> getCrewTree() {
-    return crewTree;
+  public OrderedIndex<CrewMember> getCrewTree() {
+    return loadedCrewTree();
+  }
+
+  /**
+   * Determines whether the crew tree of this flight has been materialized.
+   * Flights created without a crew loader are always loaded.
+   *
+   * @return true if the crew tree is in memory, false otherwise
+   */
+  public boolean isCrewLoaded() {
+    return crewTree != null;
+  }
+
+  private OrderedIndex<CrewMember> loadedCrewTree() {
+    OrderedIndex<CrewMember> loaded = crewTree;
+    if (loaded != null) {
+      return loaded;
+    }
+    // Loaded under the same lock as bookings, so the loader runs only once
+    synchronized (this) {
+      if (crewTree == null) {
+        crewTree = crewLoader.get();
+        crewLoader = null;
+        for (FlightListener listener : listeners) {
+          listener.onCrewTreeLoaded(this);
+        }
+      }
+      return crewTree;
+    }
   }
 
 }
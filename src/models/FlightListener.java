@@ -0,0 +1,56 @@
+package models;
+
+/**
+ * Receives notifications about changes to a flight.
+ * Listeners are registered with {@link Flight#addListener(FlightListener)}.
+ */
+public interface FlightListener {
+  /**
+   * Called after a crew member has been successfully added to a flight.
+   *
+   * @param flight     the flight that received the crew member
+   * @param crewMember the crew member that was added
+   */
+  void onCrewMemberAdded(Flight flight, CrewMember crewMember);
+
+  /**
+   * Called after the crew tree of a lazily loaded flight has been
+   * materialized.
+   *
+   * @param flight the flight whose crew tree was loaded
+   */
+  default void onCrewTreeLoaded(Flight flight) {
+  }
+
+  /**
+   * Called when the price of a flight may have changed for a reason other
+   * than a new crew member, for example a new pricer or a change in demand.
+   *
+   * @param flight the flight whose price may have changed
+   */
+  default void onPriceChanged(Flight flight) {
+  }
+
+  /**
+   * Called after seats of a flight have been held with
+   * {@link Flight#holdSeats(int)} or released with
+   * {@link Flight#releaseHeldSeats(int)}, changing its available seats but
+   * not its price.
+   *
+   * @param flight the flight whose held seats changed
+   * @param change the number of seats held, or minus the number released
+   */
+  default void onHeldSeatsChanged(Flight flight, int change) {
+  }
+
+  /**
+   * Called after the base price or capacity of a flight has been changed with
+   * {@link Flight#reschedule(int, int)}. By default this is handled as a
+   * price change.
+   *
+   * @param flight the rescheduled flight
+   */
+  default void onScheduleChanged(Flight flight) {
+    onPriceChanged(flight);
+  }
+}
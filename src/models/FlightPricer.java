@@ -0,0 +1,17 @@
+package models;
+
+/**
+ * Computes the current price of a flight.
+ * A pricer can be installed with {@link Flight#setPricer(FlightPricer)} to
+ * replace the built-in occupancy discounts.
+ */
+public interface FlightPricer {
+  /**
+   * Computes the current price of a flight.
+   * Called on every price lookup, so implementations should be cheap.
+   *
+   * @param flight the flight to price
+   * @return the current price of the flight
+   */
+  int priceOf(Flight flight);
+}
@@ -0,0 +1,324 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import models.Flight;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * A city-level view of a flight graph: cities are vertices and every flight
+ * is an edge from its origin to its destination, carrying the flight's price
+ * and capacity. The view is updated as flights are added to and removed from
+ * the flight graph, so questions between cities run on a graph as wide as the number of
+ * cities instead of the number of flights.
+ * Queries may run on several threads while the flight graph changes: they
+ * share a read lock, and the view takes the write lock to follow the graph.
+ */
+public class CityGraph implements GraphListener<Flight> {
+  private final Map<String, Integer> cityIds;
+  private final List<String> cities;
+  private final List<List<Flight>> departures;
+  private final ReadWriteLock lock;
+  private int flightCount;
+
+  /**
+   * Constructs an empty city graph.
+   */
+  public CityGraph() {
+    this.cityIds = new HashMap<>();
+    this.cities = new ArrayList<>();
+    this.departures = new ArrayList<>();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  /**
+   * Starts tracking a flight graph.
+   * Flights already in the graph are added immediately and later changes are
+   * picked up through listeners.
+   *
+   * @param flightGraph the graph to track
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::onVertexAdded);
+  }
+
+  /**
+   * Stops tracking a flight graph and forgets its flights.
+   *
+   * @param flightGraph the graph to stop tracking
+   */
+  public void detach(Graph<Flight> flightGraph) {
+    flightGraph.removeListener(this);
+    onCleared();
+  }
+
+  /**
+   * Gets the number of cities.
+   *
+   * @return the number of cities
+   */
+  public int cityCount() {
+    lock.readLock().lock();
+    try {
+      return cities.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of flights.
+   *
+   * @return the number of flights
+   */
+  public int flightCount() {
+    lock.readLock().lock();
+    try {
+      return flightCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets every city that flights depart from or arrive at.
+   *
+   * @return a copy of the cities
+   */
+  public Set<String> getCities() {
+    lock.readLock().lock();
+    try {
+      return Collections.unmodifiableSet(new HashSet<>(cityIds.keySet()));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the flights departing from a city.
+   *
+   * @param city the origin city
+   * @return a copy of the flights departing from the city
+   */
+  public List<Flight> getDepartures(String city) {
+    lock.readLock().lock();
+    try {
+      Integer id = cityIds.get(city);
+      return id == null ? Collections.emptyList()
+          : Collections.unmodifiableList(new ArrayList<>(departures.get(id)));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the direct flights between two cities.
+   *
+   * @param origin      the origin city
+   * @param destination the destination city
+   * @return the direct flights
+   */
+  public List<Flight> getFlights(String origin, String destination) {
+    List<Flight> flights = new ArrayList<>();
+    for (Flight flight : getDepartures(origin)) {
+      if (flight.getDestination().equals(destination)) {
+        flights.add(flight);
+      }
+    }
+    return flights;
+  }
+
+  /**
+   * Finds the cheapest sequence of flights between two cities at their
+   * current prices, using only flights with free seats.
+   *
+   * @param origin      the origin city
+   * @param destination the destination city
+   * @return the flights in travel order, or an empty list if the destination
+   *         cannot be reached
+   */
+  public List<Flight> findCheapestRoute(String origin, String destination) {
+    lock.readLock().lock();
+    try {
+      return cheapestRoute(origin, destination);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Flight> cheapestRoute(String origin, String destination) {
+    Integer from = cityIds.get(origin);
+    Integer to = cityIds.get(destination);
+    if (from == null || to == null || from.equals(to)) {
+      return Collections.emptyList();
+    }
+
+    long[] costs = new long[cities.size()];
+    Arrays.fill(costs, Long.MAX_VALUE);
+    Flight[] arrivals = new Flight[cities.size()];
+    PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+    costs[from] = 0;
+    queue.add(new long[] { 0, from });
+
+    while (!queue.isEmpty()) {
+      long[] entry = queue.poll();
+      int city = (int) entry[1];
+      if (entry[0] > costs[city]) {
+        continue;
+      }
+      if (city == to) {
+        break;
+      }
+      for (Flight flight : departures.get(city)) {
+        if (flight.getAvailableSeats() <= 0) {
+          continue;
+        }
+        int next = cityIds.get(flight.getDestination());
+        long cost = costs[city] + flight.calculatePrice();
+        if (cost < costs[next]) {
+          costs[next] = cost;
+          arrivals[next] = flight;
+          queue.add(new long[] { cost, next });
+        }
+      }
+    }
+
+    LinkedList<Flight> route = new LinkedList<>();
+    for (Flight flight = arrivals[to]; flight != null; flight = arrivals[cityIds.get(flight.getOrigin())]) {
+      route.addFirst(flight);
+    }
+    return route;
+  }
+
+  /**
+   * Finds the cheapest sequence of flights between two cities with at most a
+   * number of connections, at current prices and using only flights with
+   * free seats.
+   *
+   * @param origin         the origin city
+   * @param destination    the destination city
+   * @param maxConnections the largest number of connections, or a negative
+   *                       number for no limit
+   * @return the flights in travel order, or an empty list if the destination
+   *         cannot be reached
+   */
+  public List<Flight> findCheapestRoute(String origin, String destination, int maxConnections) {
+    lock.readLock().lock();
+    try {
+      return maxConnections < 0 ? cheapestRoute(origin, destination)
+          : cheapestRoute(origin, destination, maxConnections);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Flight> cheapestRoute(String origin, String destination, int maxConnections) {
+    Integer from = cityIds.get(origin);
+    Integer to = cityIds.get(destination);
+    if (from == null || to == null || from.equals(to)) {
+      return Collections.emptyList();
+    }
+
+    // Round k relaxes every flight once, so costs[k] allows k flights
+    int rounds = maxConnections + 1;
+    long[][] costs = new long[rounds + 1][cities.size()];
+    Flight[][] arrivals = new Flight[rounds + 1][cities.size()];
+    Arrays.fill(costs[0], Long.MAX_VALUE);
+    costs[0][from] = 0;
+    for (int round = 1; round <= rounds; round++) {
+      long[] previous = costs[round - 1];
+      long[] current = costs[round];
+      System.arraycopy(previous, 0, current, 0, current.length);
+      for (int city = 0; city < cities.size(); city++) {
+        if (previous[city] == Long.MAX_VALUE) {
+          continue;
+        }
+        for (Flight flight : departures.get(city)) {
+          if (flight.getAvailableSeats() <= 0) {
+            continue;
+          }
+          int next = cityIds.get(flight.getDestination());
+          long cost = previous[city] + flight.calculatePrice();
+          if (cost < current[next]) {
+            current[next] = cost;
+            arrivals[round][next] = flight;
+          }
+        }
+      }
+    }
+
+    LinkedList<Flight> route = new LinkedList<>();
+    int city = to;
+    for (int round = rounds; round > 0 && city != from; round--) {
+      Flight flight = arrivals[round][city];
+      if (flight != null) {
+        route.addFirst(flight);
+        city = cityIds.get(flight.getOrigin());
+      }
+    }
+    return city == from ? route : Collections.emptyList();
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    lock.writeLock().lock();
+    try {
+      int origin = cityId(flight.getOrigin());
+      cityId(flight.getDestination());
+      departures.get(origin).add(flight);
+      flightCount++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    lock.writeLock().lock();
+    try {
+      Integer origin = cityIds.get(flight.getOrigin());
+      if (origin != null && departures.get(origin).remove(flight)) {
+        flightCount--;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void onCleared() {
+    lock.writeLock().lock();
+    try {
+      cityIds.clear();
+      cities.clear();
+      departures.clear();
+      flightCount = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private int cityId(String city) {
+    Integer id = cityIds.get(city);
+    if (id == null) {
+      id = cities.size();
+      cityIds.put(city, id);
+      cities.add(city);
+      departures.add(new ArrayList<>());
+    }
+    return id;
+  }
+}
@@ -0,0 +1,632 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import models.CrewMember;
+import models.Flight;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.CompactGraph;
+import shared.structures.Graph;
+import shared.structures.OrderedIndex;
+
+/**
+ * Assigns a pool of crew to the flights of a graph in one batch. Each crew
+ * member gets a duty: a chain of at most a given number of flights that
+ * starts with a flight departing from their home base and follows the
+ * connections of the graph, ideally ending with a flight back to it.
+ * A duty never visits a flight twice or a flight the crew member is already
+ * on, a crew member has at most one duty, and no flight gets more crew than
+ * its free seats, so every plan is feasible. Crew members are told apart by
+ * name, as in the crew trees of the flights. Among feasible plans the optimizer minimizes, in order of
+ * weight, the crew missing from flights below the required crew per flight,
+ * the duties that do not return home, and the number of legs.
+ * The search is a parallel local search on a fork-join pool: it runs in
+ * rounds, and in each round every worker starts from the best plan so far
+ * with its own random moves, so rounds cost what one worker costs on enough
+ * cores.
+ */
+public class CrewAssignmentOptimizer {
+  private static final LatencyHistogram OPTIMIZE_NANOS = Metrics.histogram("crew.optimize.ns");
+  private static final long UNDERSTAFFED_COST = 1_000;
+  private static final long AWAY_COST = 10;
+  private static final long LEG_COST = 1;
+  private static final int MOVES_PER_ROUND = 200_000;
+  private static final int STALE_ROUNDS = 3;
+  private static final int SAMPLES = 4;
+  private static final int[] NO_DUTY = new int[0];
+
+  private final int crewPerFlight;
+  private final int maxLegs;
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructs an optimizer that runs on the common fork-join pool.
+   *
+   * @param crewPerFlight the crew each flight should get
+   * @param maxLegs       the most flights in one duty
+   */
+  public CrewAssignmentOptimizer(int crewPerFlight, int maxLegs) {
+    this(crewPerFlight, maxLegs, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs an optimizer that runs on the given pool, with one search
+   * worker per thread of the pool.
+   *
+   * @param crewPerFlight the crew each flight should get
+   * @param maxLegs       the most flights in one duty
+   * @param pool          the pool to run on
+   */
+  public CrewAssignmentOptimizer(int crewPerFlight, int maxLegs, ForkJoinPool pool) {
+    if (crewPerFlight < 1 || maxLegs < 1) {
+      throw new IllegalArgumentException("Crew per flight and legs per duty must be positive");
+    }
+    this.crewPerFlight = crewPerFlight;
+    this.maxLegs = maxLegs;
+    this.pool = pool;
+  }
+
+  /**
+   * Finds a plan for a pool of crew. Seats already occupied or held are left
+   * alone. Candidates with the same name are one crew member, with the home
+   * base of the first of them. Flights must not be modified while the plan is
+   * being found.
+   *
+   * @param flightGraph     the graph of flights
+   * @param candidates      the crew to assign
+   * @param timeLimitMillis the longest time to search, in milliseconds; the
+   *                        search also stops once rounds stop improving
+   * @return the best plan found
+   */
+  public Plan optimize(Graph<Flight> flightGraph, List<Candidate> candidates, long timeLimitMillis) {
+    long start = System.nanoTime();
+    long deadline = start + timeLimitMillis * 1_000_000L;
+    Problem problem = new Problem(flightGraph, candidates, crewPerFlight, maxLegs);
+
+    Search best = new Search(problem, null, 1);
+    best.construct();
+    int workers = pool.getParallelism();
+    int stale = 0;
+    for (int round = 0; stale < STALE_ROUNDS && System.nanoTime() < deadline; round++) {
+      List<Callable<Search>> tasks = new ArrayList<>();
+      for (int worker = 0; worker < workers; worker++) {
+        Search from = best;
+        long seed = (long) round * workers + worker + 2;
+        tasks.add(() -> {
+          Search search = new Search(problem, from, seed);
+          search.run(MOVES_PER_ROUND, deadline);
+          return search;
+        });
+      }
+      Search roundBest = best;
+      for (Future<Search> result : pool.invokeAll(tasks)) {
+        Search search = await(result);
+        if (search.cost < roundBest.cost) {
+          roundBest = search;
+        }
+      }
+      stale = roundBest == best ? stale + 1 : 0;
+      best = roundBest;
+    }
+
+    Plan plan = new Plan(problem, best);
+    OPTIMIZE_NANOS.recordSince(start);
+    return plan;
+  }
+
+  private static Search await(Future<Search> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while optimizing crew assignments", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * The flights, connections and crew of one optimization, in arrays indexed
+   * by flight, city and crew ids, shared read-only by the workers.
+   */
+  private static class Problem {
+    final CompactGraph<Flight> graph;
+    final List<Candidate> candidates;
+    final int[] free;
+    final int[] destination;
+    final int[][] departures;
+    final int[] home;
+    final int[][] booked;
+    final int crewPerFlight;
+    final int maxLegs;
+
+    Problem(Graph<Flight> flightGraph, List<Candidate> candidates, int crewPerFlight, int maxLegs) {
+      this.graph = CompactGraph.of(flightGraph);
+      Map<String, Integer> crewIds = new HashMap<>();
+      this.candidates = new ArrayList<>();
+      for (Candidate candidate : candidates) {
+        if (crewIds.putIfAbsent(candidate.getName(), crewIds.size()) == null) {
+          this.candidates.add(candidate);
+        }
+      }
+      this.crewPerFlight = crewPerFlight;
+      this.maxLegs = maxLegs;
+      int n = graph.vertexCount();
+      this.free = new int[n];
+      this.destination = new int[n];
+
+      Map<String, Integer> cities = new HashMap<>();
+      List<List<Integer>> byOrigin = new ArrayList<>();
+      for (int f = 0; f < n; f++) {
+        Flight flight = graph.vertexAt(f);
+        // Connection targets that are not in the graph cannot be staffed
+        if (flightGraph.getVertices().containsKey(flight)) {
+          free[f] = Math.max(flight.getAvailableSeats(), 0);
+        }
+        int origin = cities.computeIfAbsent(flight.getOrigin(), k -> cities.size());
+        destination[f] = cities.computeIfAbsent(flight.getDestination(), k -> cities.size());
+        while (byOrigin.size() < cities.size()) {
+          byOrigin.add(new ArrayList<>());
+        }
+        if (free[f] > 0) {
+          byOrigin.get(origin).add(f);
+        }
+      }
+
+      // The flights each crew member is already on, in ascending order
+      List<List<Integer>> bookedFlights = new ArrayList<>();
+      for (int c = 0; c < this.candidates.size(); c++) {
+        bookedFlights.add(new ArrayList<>());
+      }
+      for (int f = 0; f < n; f++) {
+        if (free[f] == 0) {
+          continue;
+        }
+        Flight flight = graph.vertexAt(f);
+        int id = f;
+        synchronized (flight) {
+          flight.getCrewTree().forEach(crewMember -> {
+            Integer crew = crewIds.get(crewMember.getName());
+            if (crew != null) {
+              bookedFlights.get(crew).add(id);
+            }
+          });
+        }
+      }
+      this.booked = new int[bookedFlights.size()][];
+      for (int c = 0; c < booked.length; c++) {
+        List<Integer> flights = bookedFlights.get(c);
+        booked[c] = flights.isEmpty() ? NO_DUTY : flights.stream().mapToInt(Integer::intValue).toArray();
+      }
+      this.departures = new int[byOrigin.size()][];
+      for (int city = 0; city < departures.length; city++) {
+        departures[city] = byOrigin.get(city).stream().mapToInt(Integer::intValue).toArray();
+      }
+      this.home = new int[this.candidates.size()];
+      for (int c = 0; c < home.length; c++) {
+        Integer city = cities.get(this.candidates.get(c).getHomeBase());
+        home[c] = city == null ? -1 : city;
+      }
+    }
+
+    long dutyCost(int crew, int[] duty) {
+      if (duty.length == 0) {
+        return 0;
+      }
+      boolean returns = destination[duty[duty.length - 1]] == home[crew];
+      return duty.length * LEG_COST + (returns ? 0 : AWAY_COST);
+    }
+  }
+
+  /**
+   * The state of one worker: a duty per crew member, the crew on each flight
+   * and the cost of the plan.
+   */
+  private static class Search {
+    final Problem problem;
+    final int[][] duties;
+    final int[] assigned;
+    final SplittableRandom random;
+    long cost;
+
+    Search(Problem problem, Search from, long seed) {
+      this.problem = problem;
+      this.random = new SplittableRandom(seed);
+      if (from == null) {
+        this.duties = new int[problem.home.length][];
+        Arrays.fill(duties, NO_DUTY);
+        this.assigned = new int[problem.free.length];
+        long understaffed = 0;
+        for (int f = 0; f < problem.free.length; f++) {
+          if (problem.free[f] > 0) {
+            understaffed += problem.crewPerFlight;
+          }
+        }
+        this.cost = understaffed * UNDERSTAFFED_COST;
+      } else {
+        // Duties are never modified in place, so they can be shared
+        this.duties = from.duties.clone();
+        this.assigned = from.assigned.clone();
+        this.cost = from.cost;
+      }
+    }
+
+    /**
+     * Gives every crew member, in random order, a duty built towards the
+     * flights that are short of crew, keeping it if it lowers the cost.
+     */
+    void construct() {
+      int[] order = new int[duties.length];
+      for (int c = 0; c < order.length; c++) {
+        int other = random.nextInt(c + 1);
+        order[c] = order[other];
+        order[other] = c;
+      }
+      for (int crew : order) {
+        move(crew, 0.0, true);
+      }
+    }
+
+    /**
+     * Runs simulated annealing moves, cooling linearly to a greedy search.
+     */
+    void run(int moves, long deadline) {
+      double startTemperature = AWAY_COST;
+      for (int i = 0; i < moves; i++) {
+        if ((i & 4095) == 0 && System.nanoTime() >= deadline) {
+          return;
+        }
+        double temperature = startTemperature * (1.0 - (double) i / moves);
+        move(random.nextInt(duties.length), temperature, false);
+      }
+    }
+
+    private void move(int crew, double temperature, boolean fresh) {
+      if (problem.home[crew] < 0) {
+        return;
+      }
+      int[] old = duties[crew];
+      long delta = remove(crew, old);
+      int[] next;
+      double kind = random.nextDouble();
+      if (fresh || old.length == 0 || kind < 0.5) {
+        next = walk(crew);
+      } else if (kind < 0.65) {
+        next = NO_DUTY;
+      } else if (kind < 0.8) {
+        next = Arrays.copyOf(old, old.length - 1);
+      } else {
+        next = extend(crew, old);
+      }
+      delta += add(crew, next);
+
+      if (delta <= 0 || (temperature > 0 && random.nextDouble() < Math.exp(-delta / temperature))) {
+        duties[crew] = next;
+        cost += delta;
+      } else {
+        remove(crew, next);
+        add(crew, old);
+      }
+    }
+
+    private long remove(int crew, int[] duty) {
+      long delta = -problem.dutyCost(crew, duty);
+      for (int f : duty) {
+        if (assigned[f] <= problem.crewPerFlight) {
+          delta += UNDERSTAFFED_COST;
+        }
+        assigned[f]--;
+      }
+      return delta;
+    }
+
+    private long add(int crew, int[] duty) {
+      long delta = problem.dutyCost(crew, duty);
+      for (int f : duty) {
+        if (assigned[f] < problem.crewPerFlight) {
+          delta -= UNDERSTAFFED_COST;
+        }
+        assigned[f]++;
+      }
+      return delta;
+    }
+
+    /**
+     * Builds a duty from the crew member's home base, picking each flight as
+     * the neediest of a few sampled ones with free seats and closing the
+     * chain with a flight home when one connects.
+     */
+    private int[] walk(int crew) {
+      int[] departures = problem.departures[problem.home[crew]];
+      int first = neediest(crew, departures, 0, departures.length, null, 0);
+      if (first < 0) {
+        return NO_DUTY;
+      }
+      int length = 1 + random.nextInt(problem.maxLegs);
+      int[] duty = new int[length];
+      duty[0] = first;
+      int legs = 1;
+      while (legs < length && problem.destination[duty[legs - 1]] != problem.home[crew]) {
+        int last = duty[legs - 1];
+        int next = legs == length - 1 || random.nextBoolean() ? homeward(crew, last, duty, legs) : -1;
+        if (next < 0) {
+          next = neediest(crew, null, problem.graph.firstEdge(last), problem.graph.firstEdge(last + 1), duty, legs);
+        }
+        if (next < 0) {
+          break;
+        }
+        duty[legs++] = next;
+      }
+      return legs == length ? duty : Arrays.copyOf(duty, legs);
+    }
+
+    private int[] extend(int crew, int[] duty) {
+      int last = duty[duty.length - 1];
+      int next = neediest(crew, null, problem.graph.firstEdge(last), problem.graph.firstEdge(last + 1), duty,
+          duty.length);
+      if (next < 0 || duty.length == problem.maxLegs) {
+        return duty;
+      }
+      int[] longer = Arrays.copyOf(duty, duty.length + 1);
+      longer[duty.length] = next;
+      return longer;
+    }
+
+    /**
+     * Finds a connection from a flight that lands at the crew member's home
+     * base and has a free seat.
+     */
+    private int homeward(int crew, int from, int[] duty, int legs) {
+      for (int e = problem.graph.firstEdge(from); e < problem.graph.firstEdge(from + 1); e++) {
+        int f = problem.graph.edgeTarget(e);
+        if (problem.destination[f] == problem.home[crew] && available(crew, f, duty, legs)) {
+          return f;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Samples a few flights from a range of departures, or of connection
+     * targets when {@code flights} is null, and gets the one with the most
+     * missing crew that the crew member can take.
+     */
+    private int neediest(int crew, int[] flights, int from, int to, int[] duty, int legs) {
+      if (from >= to) {
+        return -1;
+      }
+      int best = -1;
+      int bestNeed = Integer.MIN_VALUE;
+      for (int sample = 0; sample < SAMPLES; sample++) {
+        int i = from + random.nextInt(to - from);
+        int f = flights != null ? flights[i] : problem.graph.edgeTarget(i);
+        int need = problem.crewPerFlight - assigned[f];
+        if (need > bestNeed && available(crew, f, duty, legs)) {
+          best = f;
+          bestNeed = need;
+        }
+      }
+      return best;
+    }
+
+    private boolean available(int crew, int f, int[] duty, int legs) {
+      if (assigned[f] >= problem.free[f] || Arrays.binarySearch(problem.booked[crew], f) >= 0) {
+        return false;
+      }
+      for (int i = 0; i < legs; i++) {
+        if (duty[i] == f) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * A crew member to assign, with the city their duties start from.
+   */
+  public static class Candidate {
+    private final String name;
+    private final String homeBase;
+
+    /**
+     * Constructs a candidate.
+     *
+     * @param name     the name of the crew member
+     * @param homeBase the city their duties start from
+     */
+    public Candidate(String name, String homeBase) {
+      this.name = name;
+      this.homeBase = homeBase;
+    }
+
+    /**
+     * Gets the name of the crew member.
+     *
+     * @return the name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the city the crew member's duties start from.
+     *
+     * @return the home base
+     */
+    public String getHomeBase() {
+      return homeBase;
+    }
+
+    @Override
+    public String toString() {
+      return name + " (" + homeBase + ")";
+    }
+  }
+
+  /**
+   * A flight in a duty with the seat given to the crew member on it.
+   */
+  public static class Leg {
+    private final Flight flight;
+    private final int seatNumber;
+
+    Leg(Flight flight, int seatNumber) {
+      this.flight = flight;
+      this.seatNumber = seatNumber;
+    }
+
+    /**
+     * Gets the flight.
+     *
+     * @return the flight
+     */
+    public Flight getFlight() {
+      return flight;
+    }
+
+    /**
+     * Gets the seat given to the crew member.
+     *
+     * @return the seat number
+     */
+    public int getSeatNumber() {
+      return seatNumber;
+    }
+  }
+
+  /**
+   * The duties found for a pool of crew, with seats on every leg.
+   */
+  public static class Plan {
+    private final Map<Candidate, List<Leg>> duties;
+    private final List<Flight> understaffed;
+    private final long cost;
+    private final int legCount;
+    private final int dutiesHome;
+
+    Plan(Problem problem, Search search) {
+      CompactGraph<Flight> graph = problem.graph;
+      // Seats are given from 1 up, skipping those already taken
+      int[] nextSeat = new int[graph.vertexCount()];
+      Arrays.fill(nextSeat, 1);
+      Map<Candidate, List<Leg>> duties = new LinkedHashMap<>();
+      int legs = 0;
+      int home = 0;
+      for (int c = 0; c < search.duties.length; c++) {
+        int[] duty = search.duties[c];
+        if (duty.length == 0) {
+          continue;
+        }
+        List<Leg> dutyLegs = new ArrayList<>(duty.length);
+        for (int f : duty) {
+          Flight flight = graph.vertexAt(f);
+          OrderedIndex<CrewMember> crewTree = flight.getCrewTree();
+          int seat = nextSeat[f];
+          while (crewTree.contains(seat)) {
+            seat++;
+          }
+          nextSeat[f] = seat + 1;
+          dutyLegs.add(new Leg(flight, seat));
+        }
+        duties.put(problem.candidates.get(c), Collections.unmodifiableList(dutyLegs));
+        legs += duty.length;
+        if (problem.destination[duty[duty.length - 1]] == problem.home[c]) {
+          home++;
+        }
+      }
+
+      List<Flight> understaffed = new ArrayList<>();
+      for (int f = 0; f < graph.vertexCount(); f++) {
+        if (problem.free[f] > 0 && search.assigned[f] < problem.crewPerFlight) {
+          understaffed.add(graph.vertexAt(f));
+        }
+      }
+      this.duties = Collections.unmodifiableMap(duties);
+      this.understaffed = Collections.unmodifiableList(understaffed);
+      this.cost = search.cost;
+      this.legCount = legs;
+      this.dutiesHome = home;
+    }
+
+    /**
+     * Gets the duty of every crew member that got one.
+     *
+     * @return the legs of each assigned candidate, in travel order, keyed by
+     *         the first candidate of each name
+     */
+    public Map<Candidate, List<Leg>> getDuties() {
+      return duties;
+    }
+
+    /**
+     * Gets the flights with free seats that got less than the required crew.
+     *
+     * @return the understaffed flights
+     */
+    public List<Flight> getUnderstaffedFlights() {
+      return understaffed;
+    }
+
+    /**
+     * Gets the number of legs over all duties.
+     *
+     * @return the number of seats the plan books
+     */
+    public int getLegCount() {
+      return legCount;
+    }
+
+    /**
+     * Gets the number of duties that end at the crew member's home base.
+     *
+     * @return the duties that return home
+     */
+    public int getDutiesReturningHome() {
+      return dutiesHome;
+    }
+
+    /**
+     * Gets the cost the optimizer minimized.
+     *
+     * @return the cost of the plan
+     */
+    public long getCost() {
+      return cost;
+    }
+
+    /**
+     * Books every leg of the plan. Legs whose flight filled up or whose seat
+     * was taken since the plan was found are skipped.
+     *
+     * @return the number of legs booked, fewer than {@link #getLegCount()}
+     *         if any were skipped
+     */
+    public int apply() {
+      int booked = 0;
+      for (Map.Entry<Candidate, List<Leg>> duty : duties.entrySet()) {
+        for (Leg leg : duty.getValue()) {
+          if (leg.flight.addCrewMember(new CrewMember(duty.getKey().getName(), leg.seatNumber))) {
+            booked++;
+          }
+        }
+      }
+      return booked;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * A secondary index from crew member names to the flights and seats they are
+ * assigned to.
+ * Once attached to a flight graph, the index follows every flight added to
+ * or removed from the graph and every crew member added to those flights, so
+ * lookups never have to scan the crew trees. Names are compared
+ * case-insensitively.
+ * Flights whose crew trees are loaded lazily are indexed when their crew
+ * trees are materialized, so attaching the index never forces a load.
+ * Crew members booked on different flights at once are indexed safely: the
+ * index guards its map with its own lock, which it never holds while calling
+ * into a flight.
+ */
+public class CrewIndex implements GraphListener<Flight>, FlightListener {
+  private final NavigableMap<String, List<Assignment>> assignmentsByName;
+
+  /**
+   * Constructs an empty crew index.
+   */
+  public CrewIndex() {
+    this.assignmentsByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+  }
+
+  /**
+   * Starts tracking a flight graph.
+   * Flights already in the graph are indexed immediately and later changes are
+   * picked up through listeners.
+   *
+   * @param flightGraph the graph to index
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::onVertexAdded);
+  }
+
+  /**
+   * Finds every seat assigned to crew members with the given name.
+   *
+   * @param name the name to look up
+   * @return the assignments for that name, or an empty list if there are none
+   */
+  public synchronized List<Assignment> find(String name) {
+    List<Assignment> assignments = assignmentsByName.get(name);
+    return assignments == null ? Collections.emptyList()
+        : Collections.unmodifiableList(new ArrayList<>(assignments));
+  }
+
+  /**
+   * Finds every flight that has a crew member with the given name.
+   *
+   * @param name the name to look up
+   * @return the flights for that name, in assignment order
+   */
+  public Set<Flight> findFlights(String name) {
+    Set<Flight> flights = new LinkedHashSet<>();
+    for (Assignment assignment : find(name)) {
+      flights.add(assignment.getFlight());
+    }
+    return flights;
+  }
+
+  /**
+   * Finds every crew member whose name starts with the given prefix.
+   *
+   * @param prefix the prefix to search for
+   * @return the matching names, in alphabetical order, with their assignments
+   */
+  public synchronized Map<String, List<Assignment>> findByPrefix(String prefix) {
+    Map<String, List<Assignment>> matches = new LinkedHashMap<>();
+    assignmentsByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).forEach(
+        (name, assignments) -> matches.put(name, Collections.unmodifiableList(new ArrayList<>(assignments))));
+    return matches;
+  }
+
+  /**
+   * Gets the number of distinct names in the index.
+   *
+   * @return the number of indexed names
+   */
+  public synchronized int size() {
+    return assignmentsByName.size();
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    flight.addListener(this);
+    if (flight.isCrewLoaded()) {
+      onCrewTreeLoaded(flight);
+    }
+  }
+
+  @Override
+  public void onCrewTreeLoaded(Flight flight) {
+    flight.getCrewTree().forEach(crewMember -> onCrewMemberAdded(flight, crewMember));
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    flight.removeListener(this);
+    if (!flight.isCrewLoaded()) {
+      return;
+    }
+    flight.getCrewTree().forEach(crewMember -> unindex(flight, crewMember.getName()));
+  }
+
+  @Override
+  public synchronized void onCleared() {
+    assignmentsByName.clear();
+  }
+
+  @Override
+  public synchronized void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    assignmentsByName.computeIfAbsent(crewMember.getName(), k -> new ArrayList<>())
+        .add(new Assignment(flight, crewMember.value));
+  }
+
+  private synchronized void unindex(Flight flight, String name) {
+    List<Assignment> assignments = assignmentsByName.get(name);
+    if (assignments != null) {
+      assignments.removeIf(assignment -> assignment.getFlight() == flight);
+      if (assignments.isEmpty()) {
+        assignmentsByName.remove(name);
+      }
+    }
+  }
+
+  /**
+   * A seat on a flight assigned to an indexed crew member.
+   */
+  public static class Assignment {
+    private final Flight flight;
+    private final int seatNumber;
+
+    Assignment(Flight flight, int seatNumber) {
+      this.flight = flight;
+      this.seatNumber = seatNumber;
+    }
+
+    /**
+     * Gets the flight of the assignment.
+     *
+     * @return the flight
+     */
+    public Flight getFlight() {
+      return flight;
+    }
+
+    /**
+     * Gets the seat number of the assignment.
+     *
+     * @return the seat number
+     */
+    public int getSeatNumber() {
+      return seatNumber;
+    }
+
+    @Override
+    public String toString() {
+      return flight.getOrigin() + " -> " + flight.getDestination() + " (Seat: " + seatNumber + ")";
+    }
+  }
+}
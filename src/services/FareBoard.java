@@ -0,0 +1,278 @@
+package services;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import models.Flight;
+import shared.render.OutputBuffer;
+import shared.structures.Graph;
+
+/**
+ * Builds the departures fare board: a snapshot of the current price and
+ * occupancy of every flight, sorted by origin, then price, then destination.
+ * The flights are partitioned across a fork-join pool; each partition takes
+ * its snapshots and sorts them, and sorted partitions are combined with a
+ * parallel merge.
+ */
+public class FareBoard {
+  private static final int LEAF_SIZE = 4096;
+  private static final int SEQUENTIAL_MERGE = 8192;
+
+  /**
+   * The order of the board: by origin, then price, then destination.
+   */
+  public static final Comparator<Fare> ORDER = (a, b) -> {
+    int order = a.origin.compareTo(b.origin);
+    if (order == 0) {
+      order = Integer.compare(a.price, b.price);
+    }
+    return order != 0 ? order : a.destination.compareTo(b.destination);
+  };
+
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructs a fare board builder that runs on the common fork-join pool.
+   */
+  public FareBoard() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a fare board builder that runs on the given pool.
+   *
+   * @param pool the pool to run on
+   */
+  public FareBoard(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Builds the fare board for every flight in a graph.
+   * Flights must not be modified while the board is being built.
+   *
+   * @param flightGraph the graph of flights
+   * @return the fares, sorted by origin, then price, then destination
+   */
+  public List<Fare> build(Graph<Flight> flightGraph) {
+    Flight[] flights = flightGraph.getVertices().keySet().toArray(new Flight[0]);
+    if (flights.length == 0) {
+      return Collections.emptyList();
+    }
+    Fare[] fares = new Fare[flights.length];
+    pool.invoke(new SnapshotTask(flights, fares, new Fare[flights.length], 0, flights.length));
+    return Arrays.asList(fares);
+  }
+
+  /**
+   * Writes a fare board as a table, one flight per line.
+   *
+   * @param fares the fares to write
+   * @param out   the destination of the text
+   */
+  public static void render(List<Fare> fares, OutputBuffer out) {
+    out.append("=== Departures ===").newLine();
+    for (Fare fare : fares) {
+      out.append(fare.getOrigin()).append(" -> ").append(fare.getDestination())
+          .append(" | Price: ").append((long) fare.getPrice())
+          .append(" | Seats: ").append((long) fare.getOccupiedSeats()).append('/').append((long) fare.getCapacity())
+          .newLine();
+    }
+  }
+
+  /**
+   * Snapshots and sorts {@code flights[from, to)} into {@code fares[from, to)},
+   * using {@code scratch} as merge space.
+   */
+  private static class SnapshotTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Flight[] flights;
+    private final Fare[] fares;
+    private final Fare[] scratch;
+    private final int from;
+    private final int to;
+
+    SnapshotTask(Flight[] flights, Fare[] fares, Fare[] scratch, int from, int to) {
+      this.flights = flights;
+      this.fares = fares;
+      this.scratch = scratch;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= LEAF_SIZE) {
+        for (int i = from; i < to; i++) {
+          fares[i] = new Fare(flights[i]);
+        }
+        Arrays.sort(fares, from, to, ORDER);
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new SnapshotTask(flights, fares, scratch, from, middle),
+          new SnapshotTask(flights, fares, scratch, middle, to));
+      System.arraycopy(fares, from, scratch, from, to - from);
+      new MergeTask(scratch, from, middle, middle, to, fares, from).compute();
+    }
+  }
+
+  /**
+   * Merges the sorted ranges {@code source[aFrom, aTo)} and
+   * {@code source[bFrom, bTo)} into {@code target} starting at
+   * {@code targetFrom}. Large merges split at the median of the larger range
+   * and merge both halves in parallel.
+   */
+  private static class MergeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Fare[] source;
+    private final int aFrom;
+    private final int aTo;
+    private final int bFrom;
+    private final int bTo;
+    private final Fare[] target;
+    private final int targetFrom;
+
+    MergeTask(Fare[] source, int aFrom, int aTo, int bFrom, int bTo, Fare[] target, int targetFrom) {
+      this.source = source;
+      this.aFrom = aFrom;
+      this.aTo = aTo;
+      this.bFrom = bFrom;
+      this.bTo = bTo;
+      this.target = target;
+      this.targetFrom = targetFrom;
+    }
+
+    @Override
+    protected void compute() {
+      int aLength = aTo - aFrom;
+      int bLength = bTo - bFrom;
+      if (aLength + bLength <= SEQUENTIAL_MERGE) {
+        mergeSequentially();
+        return;
+      }
+      if (aLength < bLength) {
+        new MergeTask(source, bFrom, bTo, aFrom, aTo, target, targetFrom).compute();
+        return;
+      }
+
+      int aMiddle = (aFrom + aTo) >>> 1;
+      int bMiddle = lowerBound(source, bFrom, bTo, source[aMiddle]);
+      int targetMiddle = targetFrom + (aMiddle - aFrom) + (bMiddle - bFrom);
+      target[targetMiddle] = source[aMiddle];
+      invokeAll(new MergeTask(source, aFrom, aMiddle, bFrom, bMiddle, target, targetFrom),
+          new MergeTask(source, aMiddle + 1, aTo, bMiddle, bTo, target, targetMiddle + 1));
+    }
+
+    private void mergeSequentially() {
+      int a = aFrom;
+      int b = bFrom;
+      int t = targetFrom;
+      while (a < aTo && b < bTo) {
+        target[t++] = ORDER.compare(source[b], source[a]) < 0 ? source[b++] : source[a++];
+      }
+      while (a < aTo) {
+        target[t++] = source[a++];
+      }
+      while (b < bTo) {
+        target[t++] = source[b++];
+      }
+    }
+
+    private static int lowerBound(Fare[] fares, int from, int to, Fare key) {
+      int low = from;
+      int high = to;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (ORDER.compare(fares[middle], key) < 0) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * A snapshot of one flight's fare and occupancy.
+   */
+  public static class Fare {
+    private final Flight flight;
+    private final String origin;
+    private final String destination;
+    private final int price;
+    private final int occupiedSeats;
+    private final int capacity;
+
+    Fare(Flight flight) {
+      this.flight = flight;
+      this.origin = flight.getOrigin();
+      this.destination = flight.getDestination();
+      this.price = flight.calculatePrice();
+      this.occupiedSeats = flight.getOccupiedSeats();
+      this.capacity = flight.getCapacity();
+    }
+
+    /**
+     * Gets the flight this fare was taken from.
+     *
+     * @return the flight
+     */
+    public Flight getFlight() {
+      return flight;
+    }
+
+    /**
+     * Gets the origin city of the flight.
+     *
+     * @return the origin city
+     */
+    public String getOrigin() {
+      return origin;
+    }
+
+    /**
+     * Gets the destination city of the flight.
+     *
+     * @return the destination city
+     */
+    public String getDestination() {
+      return destination;
+    }
+
+    /**
+     * Gets the price of the flight when the snapshot was taken.
+     *
+     * @return the price
+     */
+    public int getPrice() {
+      return price;
+    }
+
+    /**
+     * Gets the number of occupied seats when the snapshot was taken.
+     *
+     * @return the number of occupied seats
+     */
+    public int getOccupiedSeats() {
+      return occupiedSeats;
+    }
+
+    /**
+     * Gets the capacity of the flight.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+      return capacity;
+    }
+  }
+}
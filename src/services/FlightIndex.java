@@ -0,0 +1,258 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * Secondary indexes over the flights of a flight graph.
+ * Flights can be looked up by origin, by destination, by origin and
+ * destination, and by current price range. Prices are kept current by
+ * listening to bookings on every indexed flight, so price queries are range
+ * lookups instead of full scans.
+ * Flights booked on different threads are indexed safely: the index guards
+ * its maps with its own lock, taken after the flight's own and never held
+ * while calling into a flight, and lookups return copies.
+ */
+public class FlightIndex implements GraphListener<Flight>, FlightListener {
+  private final Map<String, Map<String, Flight>> flightsByRoute;
+  private final Map<String, Set<Flight>> flightsByDestination;
+  private final NavigableMap<Integer, Set<Flight>> flightsByPrice;
+  private final Map<String, NavigableMap<Integer, Set<Flight>>> flightsByOriginAndPrice;
+  private final Map<Flight, Integer> indexedPrices;
+
+  /**
+   * Constructs an empty flight index.
+   */
+  public FlightIndex() {
+    this.flightsByRoute = new HashMap<>();
+    this.flightsByDestination = new HashMap<>();
+    this.flightsByPrice = new TreeMap<>();
+    this.flightsByOriginAndPrice = new HashMap<>();
+    this.indexedPrices = new HashMap<>();
+  }
+
+  /**
+   * Starts tracking a flight graph.
+   * Flights already in the graph are indexed immediately and later changes are
+   * picked up through listeners.
+   *
+   * @param flightGraph the graph to index
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::onVertexAdded);
+  }
+
+  /**
+   * Stops tracking a flight graph and its flights.
+   *
+   * @param flightGraph the graph to stop indexing
+   */
+  public void detach(Graph<Flight> flightGraph) {
+    flightGraph.removeListener(this);
+    List<Flight> flights;
+    synchronized (this) {
+      flights = new ArrayList<>(indexedPrices.keySet());
+    }
+    flights.forEach(flight -> flight.removeListener(this));
+    onCleared();
+  }
+
+  /**
+   * Finds the flight between two cities.
+   *
+   * @param origin      the origin city
+   * @param destination the destination city
+   * @return the flight, or null if there is none
+   */
+  public synchronized Flight find(String origin, String destination) {
+    return flightsByRoute.getOrDefault(origin, Collections.emptyMap()).get(destination);
+  }
+
+  /**
+   * Finds every flight departing from a city.
+   *
+   * @param origin the origin city
+   * @return a copy of the flights departing from the city
+   */
+  public synchronized Collection<Flight> findByOrigin(String origin) {
+    return Collections.unmodifiableCollection(
+        new ArrayList<>(flightsByRoute.getOrDefault(origin, Collections.emptyMap()).values()));
+  }
+
+  /**
+   * Finds every flight arriving at a city.
+   *
+   * @param destination the destination city
+   * @return a copy of the flights arriving at the city
+   */
+  public synchronized Collection<Flight> findByDestination(String destination) {
+    return Collections.unmodifiableCollection(
+        new ArrayList<>(flightsByDestination.getOrDefault(destination, Collections.emptySet())));
+  }
+
+  /**
+   * Finds every flight whose current price is within a range.
+   *
+   * @param minPrice the lowest price, inclusive
+   * @param maxPrice the highest price, inclusive
+   * @return the matching flights ordered by ascending price
+   */
+  public synchronized List<Flight> findByPriceRange(int minPrice, int maxPrice) {
+    return collect(flightsByPrice, minPrice, maxPrice);
+  }
+
+  /**
+   * Finds every flight departing from a city whose current price is within a
+   * range.
+   *
+   * @param origin   the origin city
+   * @param minPrice the lowest price, inclusive
+   * @param maxPrice the highest price, inclusive
+   * @return the matching flights ordered by ascending price
+   */
+  public synchronized List<Flight> findByOriginAndPriceRange(String origin, int minPrice, int maxPrice) {
+    NavigableMap<Integer, Set<Flight>> prices = flightsByOriginAndPrice.get(origin);
+    return prices == null ? Collections.emptyList() : collect(prices, minPrice, maxPrice);
+  }
+
+  /**
+   * Gets the number of indexed flights.
+   *
+   * @return the number of flights
+   */
+  public synchronized int size() {
+    return indexedPrices.size();
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    // Under the flight's lock no booking can slip in between pricing and indexing
+    synchronized (flight) {
+      flight.addListener(this);
+      int price = flight.calculatePrice();
+      synchronized (this) {
+        if (indexedPrices.containsKey(flight)) {
+          return;
+        }
+        flightsByRoute.computeIfAbsent(flight.getOrigin(), k -> new LinkedHashMap<>())
+            .put(flight.getDestination(), flight);
+        flightsByDestination.computeIfAbsent(flight.getDestination(), k -> new LinkedHashSet<>()).add(flight);
+        addPrice(flight, price);
+      }
+    }
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    synchronized (flight) {
+      flight.removeListener(this);
+      unindex(flight);
+    }
+  }
+
+  private synchronized void unindex(Flight flight) {
+    Integer price = indexedPrices.remove(flight);
+    if (price == null) {
+      return;
+    }
+    Map<String, Flight> routes = flightsByRoute.get(flight.getOrigin());
+    routes.remove(flight.getDestination());
+    if (routes.isEmpty()) {
+      flightsByRoute.remove(flight.getOrigin());
+    }
+    Set<Flight> arrivals = flightsByDestination.get(flight.getDestination());
+    arrivals.remove(flight);
+    if (arrivals.isEmpty()) {
+      flightsByDestination.remove(flight.getDestination());
+    }
+    removePrice(flight, price);
+  }
+
+  @Override
+  public synchronized void onCleared() {
+    flightsByRoute.clear();
+    flightsByDestination.clear();
+    flightsByPrice.clear();
+    flightsByOriginAndPrice.clear();
+    indexedPrices.clear();
+  }
+
+  @Override
+  public void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    reprice(flight);
+  }
+
+  @Override
+  public void onPriceChanged(Flight flight) {
+    reprice(flight);
+  }
+
+  /**
+   * Moves a flight to its current price in the price indexes if it changed.
+   *
+   * @param flight the flight whose price may have changed
+   */
+  void reprice(Flight flight) {
+    // Pricing under the flight's lock keeps concurrent reprices of it in order
+    synchronized (flight) {
+      int newPrice = flight.calculatePrice();
+      synchronized (this) {
+        Integer oldPrice = indexedPrices.get(flight);
+        if (oldPrice == null || oldPrice == newPrice) {
+          return;
+        }
+        removePrice(flight, oldPrice);
+        addPrice(flight, newPrice);
+      }
+    }
+  }
+
+  private void addPrice(Flight flight, int price) {
+    indexedPrices.put(flight, price);
+    flightsByPrice.computeIfAbsent(price, k -> new LinkedHashSet<>()).add(flight);
+    flightsByOriginAndPrice.computeIfAbsent(flight.getOrigin(), k -> new TreeMap<>())
+        .computeIfAbsent(price, k -> new LinkedHashSet<>()).add(flight);
+  }
+
+  private void removePrice(Flight flight, int price) {
+    removeFrom(flightsByPrice, price, flight);
+    NavigableMap<Integer, Set<Flight>> originPrices = flightsByOriginAndPrice.get(flight.getOrigin());
+    removeFrom(originPrices, price, flight);
+    if (originPrices.isEmpty()) {
+      flightsByOriginAndPrice.remove(flight.getOrigin());
+    }
+  }
+
+  private static void removeFrom(NavigableMap<Integer, Set<Flight>> prices, int price, Flight flight) {
+    Set<Flight> flights = prices.get(price);
+    flights.remove(flight);
+    if (flights.isEmpty()) {
+      prices.remove(price);
+    }
+  }
+
+  private static List<Flight> collect(NavigableMap<Integer, Set<Flight>> prices, int minPrice, int maxPrice) {
+    List<Flight> flights = new ArrayList<>();
+    if (minPrice > maxPrice) {
+      return flights;
+    }
+    prices.subMap(minPrice, true, maxPrice, true).values().forEach(flights::addAll);
+    return flights;
+  }
+}
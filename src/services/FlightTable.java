@@ -0,0 +1,339 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * A columnar copy of the flights of a flight graph for analytical scans.
+ * Each attribute is stored in its own int array, one row per flight, so
+ * aggregates read contiguous memory instead of visiting every Flight object.
+ * Cities are stored as ids into a dictionary. The table follows the graph
+ * through listeners: rows are appended as flights are added, a removed
+ * flight's row is filled with the last row, and the other columns are
+ * updated on every booking, price change and reschedule.
+ * The scan operators are plain counted loops over the columns without
+ * branches in their bodies, which the JIT compiles to vector instructions.
+ */
+public class FlightTable implements GraphListener<Flight>, FlightListener {
+  /**
+   * The numeric columns of the table.
+   */
+  public enum Column {
+    /** The maximum number of seats. */
+    CAPACITY,
+    /** The number of occupied seats. */
+    OCCUPIED_SEATS,
+    /** The current price. */
+    PRICE,
+    /** The base price. */
+    BASE_PRICE
+  }
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final Map<String, Integer> cityIds;
+  private final List<String> cities;
+  private final Map<Flight, Integer> rows;
+  private Flight[] flights;
+  private int[] origins;
+  private int[] capacities;
+  private int[] occupiedSeats;
+  private int[] prices;
+  private int[] basePrices;
+  private int size;
+
+  /**
+   * Constructs an empty flight table.
+   */
+  public FlightTable() {
+    this.cityIds = new HashMap<>();
+    this.cities = new ArrayList<>();
+    this.rows = new HashMap<>();
+    reset();
+  }
+
+  /**
+   * Starts tracking a flight graph.
+   * Flights already in the graph are added immediately and later changes are
+   * picked up through listeners.
+   *
+   * @param flightGraph the graph to track
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::onVertexAdded);
+  }
+
+  /**
+   * Stops tracking a flight graph and removes its flights from the table.
+   *
+   * @param flightGraph the graph to stop tracking
+   */
+  public void detach(Graph<Flight> flightGraph) {
+    flightGraph.removeListener(this);
+    for (int row = 0; row < size; row++) {
+      flights[row].removeListener(this);
+    }
+    onCleared();
+  }
+
+  /**
+   * Gets the number of rows.
+   *
+   * @return the number of flights in the table
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the flight stored in a row. Removing a flight moves the last row
+   * into its place, so row numbers only hold until the next removal.
+   *
+   * @param row the row
+   * @return the flight
+   */
+  public Flight flightAt(int row) {
+    return flights[row];
+  }
+
+  /**
+   * Sums a column over every row.
+   *
+   * @param column the column to sum
+   * @return the sum
+   */
+  public long sum(Column column) {
+    int[] values = values(column);
+    long sum = 0;
+    for (int row = 0; row < size; row++) {
+      sum += values[row];
+    }
+    return sum;
+  }
+
+  /**
+   * Counts the rows whose value in a column lies within a range.
+   *
+   * @param column the column to filter on
+   * @param min    the lowest value, inclusive
+   * @param max    the highest value, inclusive
+   * @return the number of matching rows
+   */
+  public int count(Column column, int min, int max) {
+    int[] values = values(column);
+    int count = 0;
+    for (int row = 0; row < size; row++) {
+      count += inRange(values[row], min, max);
+    }
+    return count;
+  }
+
+  /**
+   * Sums a column over the rows whose value in another column lies within a
+   * range.
+   *
+   * @param column the column to sum
+   * @param filter the column to filter on
+   * @param min    the lowest value of the filter column, inclusive
+   * @param max    the highest value of the filter column, inclusive
+   * @return the sum over the matching rows
+   */
+  public long sumWhere(Column column, Column filter, int min, int max) {
+    int[] values = values(column);
+    int[] filterValues = values(filter);
+    long sum = 0;
+    for (int row = 0; row < size; row++) {
+      sum += (long) values[row] * inRange(filterValues[row], min, max);
+    }
+    return sum;
+  }
+
+  /**
+   * Finds the rows whose value in a column lies within a range.
+   *
+   * @param column the column to filter on
+   * @param min    the lowest value, inclusive
+   * @param max    the highest value, inclusive
+   * @return the matching rows in ascending order
+   */
+  public int[] select(Column column, int min, int max) {
+    int[] values = values(column);
+    int[] selected = new int[size];
+    int count = 0;
+    for (int row = 0; row < size; row++) {
+      selected[count] = row;
+      count += inRange(values[row], min, max);
+    }
+    return Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * Computes the revenue of the booked seats at current prices.
+   *
+   * @return the sum over all flights of price times occupied seats
+   */
+  public long totalRevenue() {
+    long revenue = 0;
+    for (int row = 0; row < size; row++) {
+      revenue += (long) prices[row] * occupiedSeats[row];
+    }
+    return revenue;
+  }
+
+  /**
+   * Computes the occupancy of each origin city, as occupied seats over
+   * capacity across all flights departing from it.
+   *
+   * @return the occupancy of every origin, from 0.0 to 1.0, in order of first
+   *         appearance
+   */
+  public Map<String, Double> occupancyByOrigin() {
+    long[] occupied = new long[cities.size()];
+    long[] capacity = new long[cities.size()];
+    for (int row = 0; row < size; row++) {
+      occupied[origins[row]] += occupiedSeats[row];
+      capacity[origins[row]] += capacities[row];
+    }
+    Map<String, Double> occupancy = new LinkedHashMap<>();
+    for (int city = 0; city < cities.size(); city++) {
+      if (capacity[city] > 0) {
+        occupancy.put(cities.get(city), (double) occupied[city] / capacity[city]);
+      }
+    }
+    return occupancy;
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    if (rows.containsKey(flight)) {
+      return;
+    }
+    if (size == flights.length) {
+      grow();
+    }
+    int row = size++;
+    rows.put(flight, row);
+    flights[row] = flight;
+    origins[row] = cityId(flight.getOrigin());
+    capacities[row] = flight.getCapacity();
+    basePrices[row] = flight.getDefaultPrice();
+    update(row, flight);
+    flight.addListener(this);
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    Integer row = rows.remove(flight);
+    if (row == null) {
+      return;
+    }
+    flight.removeListener(this);
+    // The last row moves into the gap, so removal does not shift the columns
+    int last = --size;
+    if (row != last) {
+      flights[row] = flights[last];
+      origins[row] = origins[last];
+      capacities[row] = capacities[last];
+      occupiedSeats[row] = occupiedSeats[last];
+      prices[row] = prices[last];
+      basePrices[row] = basePrices[last];
+      rows.put(flights[row], row);
+    }
+    flights[last] = null;
+  }
+
+  @Override
+  public void onCleared() {
+    cityIds.clear();
+    cities.clear();
+    rows.clear();
+    reset();
+  }
+
+  @Override
+  public void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    onPriceChanged(flight);
+  }
+
+  @Override
+  public void onPriceChanged(Flight flight) {
+    Integer row = rows.get(flight);
+    if (row != null) {
+      update(row, flight);
+    }
+  }
+
+  @Override
+  public void onScheduleChanged(Flight flight) {
+    Integer row = rows.get(flight);
+    if (row != null) {
+      capacities[row] = flight.getCapacity();
+      basePrices[row] = flight.getDefaultPrice();
+      update(row, flight);
+    }
+  }
+
+  private void update(int row, Flight flight) {
+    occupiedSeats[row] = flight.getOccupiedSeats();
+    prices[row] = flight.calculatePrice();
+  }
+
+  private int[] values(Column column) {
+    switch (column) {
+      case CAPACITY:
+        return capacities;
+      case OCCUPIED_SEATS:
+        return occupiedSeats;
+      case PRICE:
+        return prices;
+      default:
+        return basePrices;
+    }
+  }
+
+  // 1 if the value is in [min, max], 0 otherwise, without a branch
+  private static int inRange(int value, int min, int max) {
+    return (int) (((long) value - min | (long) max - value) >>> 63) ^ 1;
+  }
+
+  private int cityId(String city) {
+    Integer id = cityIds.get(city);
+    if (id == null) {
+      id = cities.size();
+      cityIds.put(city, id);
+      cities.add(city);
+    }
+    return id;
+  }
+
+  private void reset() {
+    flights = new Flight[INITIAL_CAPACITY];
+    origins = new int[INITIAL_CAPACITY];
+    capacities = new int[INITIAL_CAPACITY];
+    occupiedSeats = new int[INITIAL_CAPACITY];
+    prices = new int[INITIAL_CAPACITY];
+    basePrices = new int[INITIAL_CAPACITY];
+    size = 0;
+  }
+
+  private void grow() {
+    int capacity = flights.length * 2;
+    flights = Arrays.copyOf(flights, capacity);
+    origins = Arrays.copyOf(origins, capacity);
+    capacities = Arrays.copyOf(capacities, capacity);
+    occupiedSeats = Arrays.copyOf(occupiedSeats, capacity);
+    prices = Arrays.copyOf(prices, capacity);
+    basePrices = Arrays.copyOf(basePrices, capacity);
+  }
+}
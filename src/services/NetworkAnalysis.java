@@ -0,0 +1,121 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import models.Flight;
+import shared.structures.CompactGraph;
+import shared.structures.Graph;
+
+/**
+ * Answers connectivity questions about a flight network: which cities can be
+ * reached from a city within a number of connections, and which groups of
+ * flights are cut off from each other.
+ * Works on a {@link CompactGraph} snapshot taken at construction, so create a
+ * new analysis after changing the graph.
+ */
+public class NetworkAnalysis {
+  private final CompactGraph<Flight> graph;
+
+  /**
+   * Constructs an analysis of the current state of a flight graph.
+   *
+   * @param flightGraph the graph of flights
+   */
+  public NetworkAnalysis(Graph<Flight> flightGraph) {
+    this.graph = CompactGraph.of(flightGraph);
+  }
+
+  /**
+   * Gets the snapshot the analysis runs on.
+   *
+   * @return the snapshot of the flight graph
+   */
+  public CompactGraph<Flight> getGraph() {
+    return graph;
+  }
+
+  /**
+   * Finds the flights departing from a city.
+   *
+   * @param origin the origin city
+   * @return the ids of the flights in the snapshot
+   */
+  public BitSet departuresFrom(String origin) {
+    BitSet departures = new BitSet(graph.vertexCount());
+    for (int id = 0; id < graph.vertexCount(); id++) {
+      if (graph.vertexAt(id).getOrigin().equals(origin)) {
+        departures.set(id);
+      }
+    }
+    return departures;
+  }
+
+  /**
+   * Finds the flights that can be taken from a city with at most a number of
+   * connections, starting with a flight out of that city.
+   *
+   * @param origin         the origin city
+   * @param maxConnections the largest number of connections, or a negative
+   *                       number for no limit
+   * @return the ids of the reachable flights in the snapshot
+   */
+  public BitSet reachableFlights(String origin, int maxConnections) {
+    return graph.reachable(departuresFrom(origin), maxConnections);
+  }
+
+  /**
+   * Finds the cities that can be reached from a city with at most a number of
+   * connections.
+   *
+   * @param origin         the origin city
+   * @param maxConnections the largest number of connections, or a negative
+   *                       number for no limit
+   * @return the reachable cities in alphabetical order
+   */
+  public Set<String> reachableCities(String origin, int maxConnections) {
+    Set<String> cities = new TreeSet<>();
+    BitSet flights = reachableFlights(origin, maxConnections);
+    for (int id = flights.nextSetBit(0); id >= 0; id = flights.nextSetBit(id + 1)) {
+      cities.add(graph.vertexAt(id).getDestination());
+    }
+    cities.remove(origin);
+    return cities;
+  }
+
+  /**
+   * Groups the flights into strongly connected components: within a
+   * component, every flight can be reached from every other flight.
+   *
+   * @return the components, largest first
+   */
+  public List<List<Flight>> stronglyConnectedComponents() {
+    return group(graph.stronglyConnectedComponents());
+  }
+
+  /**
+   * Groups the flights into the parts of the network that have no connection
+   * between them in either direction.
+   *
+   * @return the disconnected parts, largest first
+   */
+  public List<List<Flight>> disconnectedParts() {
+    return group(graph.weaklyConnectedComponents());
+  }
+
+  private List<List<Flight>> group(int[] components) {
+    List<List<Flight>> groups = new ArrayList<>();
+    for (int id = 0; id < components.length; id++) {
+      while (groups.size() <= components[id]) {
+        groups.add(new ArrayList<>());
+      }
+      groups.get(components[id]).add(graph.vertexAt(id));
+    }
+    groups.sort(Comparator.comparingInt((List<Flight> group) -> group.size()).reversed());
+    return groups;
+  }
+}
@@ -0,0 +1,311 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import models.Flight;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.CompactGraph;
+import shared.structures.Graph;
+
+/**
+ * Finds every itinerary between two cities that is not beaten on all of
+ * price, number of connections and seats available at once: the Pareto front
+ * of the three criteria. An itinerary is a path of connected flights in the
+ * flight graph, and its available seats are those of its fullest flight.
+ * The search runs in rounds, one flight per round, keeping at every flight a
+ * bag of labels that no other label at that flight dominates. Labels that an
+ * itinerary already found dominates are pruned, since taking more flights
+ * can only make them worse. Bags are bounded: when a bag is full, its most
+ * expensive label makes way for a cheaper one, so on very dense networks the
+ * front may lose some expensive itineraries but never the cheapest.
+ * Works on a {@link CompactGraph} snapshot taken at construction, so create a
+ * new search after adding flights or connections. Prices and seats are read
+ * from the flights at query time.
+ */
+public class ParetoRouteSearch {
+  private static final LatencyHistogram SEARCH_NANOS = Metrics.histogram("pareto.search.ns");
+  private static final int DEFAULT_MAX_LABELS = 32;
+
+  private final CompactGraph<Flight> graph;
+  private final Map<String, int[]> departures;
+  private final int maxLabelsPerFlight;
+
+  /**
+   * Constructs a search over the current state of a flight graph, keeping up
+   * to 32 labels per flight.
+   *
+   * @param flightGraph the graph of flights
+   */
+  public ParetoRouteSearch(Graph<Flight> flightGraph) {
+    this(flightGraph, DEFAULT_MAX_LABELS);
+  }
+
+  /**
+   * Constructs a search over the current state of a flight graph.
+   *
+   * @param flightGraph        the graph of flights
+   * @param maxLabelsPerFlight the largest number of labels kept at a flight
+   */
+  public ParetoRouteSearch(Graph<Flight> flightGraph, int maxLabelsPerFlight) {
+    if (maxLabelsPerFlight < 1) {
+      throw new IllegalArgumentException("Label limit must be positive: " + maxLabelsPerFlight);
+    }
+    this.graph = CompactGraph.of(flightGraph);
+    this.maxLabelsPerFlight = maxLabelsPerFlight;
+
+    Map<String, List<Integer>> ids = new HashMap<>();
+    for (int id = 0; id < graph.vertexCount(); id++) {
+      ids.computeIfAbsent(graph.vertexAt(id).getOrigin(), k -> new ArrayList<>()).add(id);
+    }
+    this.departures = new HashMap<>();
+    ids.forEach((city, list) -> departures.put(city, list.stream().mapToInt(Integer::intValue).toArray()));
+  }
+
+  /**
+   * Gets the snapshot the search runs on.
+   *
+   * @return the snapshot of the flight graph
+   */
+  public CompactGraph<Flight> getGraph() {
+    return graph;
+  }
+
+  /**
+   * Finds the Pareto front of itineraries between two cities.
+   *
+   * @param origin         the origin city
+   * @param destination    the destination city
+   * @param maxConnections the largest number of connections, or a negative
+   *                       number for no limit
+   * @param seats          the number of seats needed on every flight
+   * @return the itineraries, cheapest first, or an empty list if the
+   *         destination cannot be reached
+   */
+  public List<Itinerary> search(String origin, String destination, int maxConnections, int seats) {
+    if (seats < 1) {
+      throw new IllegalArgumentException("Seats must be positive: " + seats);
+    }
+    long start = System.nanoTime();
+    int[] starts = departures.get(origin);
+    if (starts == null || origin.equals(destination)) {
+      SEARCH_NANOS.recordSince(start);
+      return Collections.emptyList();
+    }
+
+    Search search = new Search(destination, seats);
+    for (int id : starts) {
+      search.extend(null, id);
+    }
+    for (int round = 1; !search.frontier.isEmpty() && (maxConnections < 0 || round <= maxConnections); round++) {
+      List<Label> labels = search.frontier;
+      search.frontier = new ArrayList<>();
+      for (Label label : labels) {
+        if (label.pruned) {
+          continue;
+        }
+        for (int edge = graph.firstEdge(label.flight); edge < graph.firstEdge(label.flight + 1); edge++) {
+          search.extend(label, graph.edgeTarget(edge));
+        }
+      }
+    }
+
+    List<Itinerary> itineraries = new ArrayList<>(search.front.size());
+    for (Label label : search.front) {
+      itineraries.add(toItinerary(label));
+    }
+    itineraries.sort((a, b) -> {
+      if (a.price != b.price) {
+        return Long.compare(a.price, b.price);
+      }
+      if (a.getConnections() != b.getConnections()) {
+        return Integer.compare(a.getConnections(), b.getConnections());
+      }
+      return Integer.compare(b.availableSeats, a.availableSeats);
+    });
+    SEARCH_NANOS.recordSince(start);
+    return itineraries;
+  }
+
+  private Itinerary toItinerary(Label label) {
+    LinkedList<Flight> flights = new LinkedList<>();
+    for (Label step = label; step != null; step = step.parent) {
+      flights.addFirst(graph.vertexAt(step.flight));
+    }
+    return new Itinerary(flights, label.price, label.seats);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static List<Label>[] newBags(int count) {
+    return new List[count];
+  }
+
+  /**
+   * The state of one query: the label bags, the labels to extend in the next
+   * round and the itineraries found so far.
+   */
+  private class Search {
+    private final String destination;
+    private final int seats;
+    private final List<Label>[] bags;
+    private final List<Label> front;
+    private List<Label> frontier;
+
+    Search(String destination, int seats) {
+      this.destination = destination;
+      this.seats = seats;
+      this.bags = newBags(graph.vertexCount());
+      this.front = new ArrayList<>();
+      this.frontier = new ArrayList<>();
+    }
+
+    /**
+     * Extends a label, or starts a new itinerary if the label is null, with a
+     * flight.
+     */
+    void extend(Label parent, int id) {
+      Flight flight = graph.vertexAt(id);
+      int available = flight.getAvailableSeats();
+      if (available < seats) {
+        return;
+      }
+      Label label = parent == null
+          ? new Label(id, flight.calculatePrice(), 1, available, null)
+          : new Label(id, parent.price + flight.calculatePrice(), parent.flights + 1,
+              Math.min(parent.seats, available), parent);
+      for (Label found : front) {
+        if (found.dominates(label)) {
+          return;
+        }
+      }
+      // Flying on from the destination can only give dominated itineraries
+      if (flight.getDestination().equals(destination)) {
+        insert(front, label, Integer.MAX_VALUE);
+        return;
+      }
+      if (bags[id] == null) {
+        bags[id] = new ArrayList<>(4);
+      }
+      if (insert(bags[id], label, maxLabelsPerFlight)) {
+        frontier.add(label);
+      }
+    }
+
+    /**
+     * Adds a label to a set of mutually non-dominated labels, dropping the
+     * labels it dominates and, if the set is full, its most expensive label.
+     *
+     * @return true if the label was added
+     */
+    private boolean insert(List<Label> bag, Label label, int limit) {
+      for (Label other : bag) {
+        if (other.dominates(label)) {
+          return false;
+        }
+      }
+      for (Iterator<Label> iterator = bag.iterator(); iterator.hasNext();) {
+        Label other = iterator.next();
+        if (label.dominates(other)) {
+          other.pruned = true;
+          iterator.remove();
+        }
+      }
+      if (bag.size() >= limit) {
+        int worst = 0;
+        for (int i = 1; i < bag.size(); i++) {
+          if (bag.get(i).price > bag.get(worst).price) {
+            worst = i;
+          }
+        }
+        if (bag.get(worst).price <= label.price) {
+          return false;
+        }
+        bag.remove(worst).pruned = true;
+      }
+      bag.add(label);
+      return true;
+    }
+  }
+
+  /**
+   * A partial itinerary ending with a flight.
+   */
+  private static final class Label {
+    private final int flight;
+    private final long price;
+    private final int flights;
+    private final int seats;
+    private final Label parent;
+    private boolean pruned;
+
+    Label(int flight, long price, int flights, int seats, Label parent) {
+      this.flight = flight;
+      this.price = price;
+      this.flights = flights;
+      this.seats = seats;
+      this.parent = parent;
+    }
+
+    boolean dominates(Label other) {
+      return price <= other.price && flights <= other.flights && seats >= other.seats;
+    }
+  }
+
+  /**
+   * A sequence of connected flights between two cities.
+   */
+  public static final class Itinerary {
+    private final List<Flight> flights;
+    private final long price;
+    private final int availableSeats;
+
+    Itinerary(List<Flight> flights, long price, int availableSeats) {
+      this.flights = Collections.unmodifiableList(flights);
+      this.price = price;
+      this.availableSeats = availableSeats;
+    }
+
+    /**
+     * Gets the flights of the itinerary.
+     *
+     * @return the flights in travel order
+     */
+    public List<Flight> getFlights() {
+      return flights;
+    }
+
+    /**
+     * Gets the total price at the time of the search.
+     *
+     * @return the sum of the prices of the flights
+     */
+    public long getPrice() {
+      return price;
+    }
+
+    /**
+     * Gets the number of connections.
+     *
+     * @return the number of flights minus one
+     */
+    public int getConnections() {
+      return flights.size() - 1;
+    }
+
+    /**
+     * Gets the number of seats that can be booked on every flight of the
+     * itinerary.
+     *
+     * @return the available seats on the fullest flight
+     */
+    public int getAvailableSeats() {
+      return availableSeats;
+    }
+  }
+}
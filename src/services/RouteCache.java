@@ -0,0 +1,306 @@
+package services;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+import shared.structures.TinyLfuCache;
+
+/**
+ * Caches cheapest-route results of a {@link CityGraph}, keyed by origin,
+ * destination and maximum number of connections.
+ * A cached route is dropped when a flight on it gets more expensive, fills up
+ * with crew or held seats, is removed, or gains or loses a connection.
+ * Changes that could make a route cheaper through flights that are not on it,
+ * a new flight, a price drop, a rescheduled flight or released seats on a
+ * full flight, invalidate every cached route at once.
+ * Routes are computed outside any lock; a route is cached under a read lock
+ * only if nothing was invalidated meanwhile, and invalidations take the write
+ * lock, so a route made stale while it was computed is never cached.
+ */
+public class RouteCache implements GraphListener<Flight>, FlightListener {
+  private static final LatencyHistogram LOOKUP_NANOS = Metrics.histogram("routecache.lookup.ns");
+  private static final LongAdder HITS = Metrics.counter("routecache.hits");
+  private static final LongAdder MISSES = Metrics.counter("routecache.misses");
+
+  private final CityGraph cityGraph;
+  private final TinyLfuCache<Query, Entry> cache;
+  private final Map<Flight, Set<Query>> queriesByFlight;
+  private final Map<Flight, Integer> knownPrices;
+  private final AtomicLong epoch;
+  private final AtomicLong invalidations;
+  private final ReadWriteLock lock;
+  private final LongAdder hits;
+  private final LongAdder misses;
+
+  /**
+   * Constructs a route cache.
+   *
+   * @param cityGraph   the city graph that computes routes
+   * @param maximumSize the largest number of cached routes
+   */
+  public RouteCache(CityGraph cityGraph, int maximumSize) {
+    this.cityGraph = cityGraph;
+    this.cache = new TinyLfuCache<>(maximumSize);
+    this.queriesByFlight = new ConcurrentHashMap<>();
+    this.knownPrices = new ConcurrentHashMap<>();
+    this.epoch = new AtomicLong();
+    this.invalidations = new AtomicLong();
+    this.lock = new ReentrantReadWriteLock();
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /**
+   * Starts watching a flight graph for changes that invalidate routes. The
+   * graph must be the one the city graph tracks, attached to the city graph
+   * first so it has followed each change before routes are invalidated.
+   *
+   * @param flightGraph the graph to watch
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::watch);
+    flush();
+  }
+
+  /**
+   * Stops watching a flight graph and empties the cache.
+   *
+   * @param flightGraph the graph to stop watching
+   */
+  public void detach(Graph<Flight> flightGraph) {
+    flightGraph.removeListener(this);
+    knownPrices.keySet().forEach(flight -> flight.removeListener(this));
+    knownPrices.clear();
+    flush();
+  }
+
+  /**
+   * Finds the cheapest route between two cities, from the cache if possible.
+   *
+   * @param origin         the origin city
+   * @param destination    the destination city
+   * @param maxConnections the largest number of connections, or a negative
+   *                       number for no limit
+   * @return the flights in travel order, or an empty list if there is no route
+   */
+  public List<Flight> findCheapestRoute(String origin, String destination, int maxConnections) {
+    long start = System.nanoTime();
+    Query query = new Query(origin, destination, Math.max(maxConnections, -1));
+    long currentEpoch = epoch.get();
+    Entry entry = cache.get(query);
+    if (entry != null && entry.epoch == currentEpoch) {
+      hits.increment();
+      HITS.increment();
+      LOOKUP_NANOS.recordSince(start);
+      return entry.route;
+    }
+
+    misses.increment();
+    MISSES.increment();
+    long invalidationsBefore = invalidations.get();
+    List<Flight> route = Collections.unmodifiableList(
+        cityGraph.findCheapestRoute(origin, destination, maxConnections));
+    // Only cache the route if nothing was invalidated while it was computed
+    lock.readLock().lock();
+    try {
+      if (invalidations.get() == invalidationsBefore && epoch.get() == currentEpoch) {
+        for (Flight flight : route) {
+          queriesByFlight.computeIfAbsent(flight, k -> ConcurrentHashMap.newKeySet()).add(query);
+        }
+        cache.put(query, new Entry(route, currentEpoch));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    LOOKUP_NANOS.recordSince(start);
+    return route;
+  }
+
+  /**
+   * Gets the number of lookups answered from the cache.
+   *
+   * @return the number of hits
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of lookups that had to search the city graph.
+   *
+   * @return the number of misses
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the fraction of lookups answered from the cache.
+   *
+   * @return the hit ratio, from 0.0 to 1.0
+   */
+  public double getHitRatio() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+    return total == 0 ? 0.0 : (double) hitCount / total;
+  }
+
+  /**
+   * Empties the cache.
+   */
+  public void flush() {
+    lock.writeLock().lock();
+    try {
+      invalidations.incrementAndGet();
+      epoch.incrementAndGet();
+      cache.clear();
+      queriesByFlight.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    watch(flight);
+    flush();
+  }
+
+  @Override
+  public void onEdgeAdded(Flight from, Flight to, int cost) {
+    invalidate(from);
+    invalidate(to);
+  }
+
+  @Override
+  public void onEdgeRemoved(Flight from, Flight to) {
+    invalidate(from);
+    invalidate(to);
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    flight.removeListener(this);
+    knownPrices.remove(flight);
+    invalidate(flight);
+  }
+
+  @Override
+  public void onCleared() {
+    knownPrices.clear();
+    flush();
+  }
+
+  @Override
+  public void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    onPriceChanged(flight);
+  }
+
+  @Override
+  public void onPriceChanged(Flight flight) {
+    int price = flight.calculatePrice();
+    Integer oldPrice = knownPrices.put(flight, price);
+    if (oldPrice != null && price < oldPrice) {
+      flush();
+    } else if (oldPrice == null || price > oldPrice || flight.getAvailableSeats() <= 0) {
+      invalidate(flight);
+    }
+  }
+
+  @Override
+  public void onHeldSeatsChanged(Flight flight, int change) {
+    int available = flight.getAvailableSeats();
+    if (change > 0 && available <= 0) {
+      invalidate(flight);
+    } else if (change < 0 && available + change <= 0) {
+      // The release reopens a full flight that no cached route uses
+      flush();
+    }
+  }
+
+  @Override
+  public void onScheduleChanged(Flight flight) {
+    // A new capacity can reopen a full flight that no cached route uses
+    knownPrices.put(flight, flight.calculatePrice());
+    flush();
+  }
+
+  private void watch(Flight flight) {
+    flight.addListener(this);
+    knownPrices.put(flight, flight.calculatePrice());
+  }
+
+  private void invalidate(Flight flight) {
+    lock.writeLock().lock();
+    try {
+      // Counted even with nothing cached, for routes through the flight still being computed
+      invalidations.incrementAndGet();
+      Set<Query> queries = queriesByFlight.remove(flight);
+      if (queries != null) {
+        queries.forEach(cache::remove);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * A route query.
+   */
+  private static final class Query {
+    private final String origin;
+    private final String destination;
+    private final int maxConnections;
+
+    Query(String origin, String destination, int maxConnections) {
+      this.origin = origin;
+      this.destination = destination;
+      this.maxConnections = maxConnections;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Query))
+        return false;
+      Query query = (Query) obj;
+      return maxConnections == query.maxConnections && origin.equals(query.origin)
+          && destination.equals(query.destination);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(origin, destination, maxConnections);
+    }
+  }
+
+  /**
+   * A cached route and the epoch it was computed in.
+   */
+  private static final class Entry {
+    private final List<Flight> route;
+    private final long epoch;
+
+    Entry(List<Flight> route, long epoch) {
+      this.route = route;
+      this.epoch = epoch;
+    }
+  }
+}
@@ -0,0 +1,340 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import models.Flight;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
+
+/**
+ * The changes that turn a live flight graph into a new schedule: flights to
+ * add, reschedule and remove, and connections to add or re-cost and remove.
+ * Flights are matched by origin and destination, as in
+ * {@link Flight#equals(Object)}. A flight in both keeps its object, so its
+ * crew members, held seats and listeners survive, and only a different base
+ * price or capacity is applied to it with {@link Flight#reschedule(int, int)}.
+ * Computing a changeset reads both graphs once, while applying it only
+ * touches the flights and connections that changed, so indexes attached to
+ * the live graph are updated incrementally instead of being rebuilt.
+ */
+public class ScheduleChangeset {
+  private static final LatencyHistogram DIFF_NANOS = Metrics.histogram("schedule.diff.ns");
+  private static final LatencyHistogram APPLY_NANOS = Metrics.histogram("schedule.apply.ns");
+
+  private final List<Flight> addedFlights;
+  private final List<Update> updatedFlights;
+  private final List<Flight> removedFlights;
+  private final List<Connection> addedConnections;
+  private final List<Connection> removedConnections;
+
+  private ScheduleChangeset() {
+    this.addedFlights = new ArrayList<>();
+    this.updatedFlights = new ArrayList<>();
+    this.removedFlights = new ArrayList<>();
+    this.addedConnections = new ArrayList<>();
+    this.removedConnections = new ArrayList<>();
+  }
+
+  /**
+   * Compares a new schedule with a live flight graph.
+   *
+   * @param live     the graph currently in use
+   * @param schedule the graph of the new schedule
+   * @return the changes that turn the live graph into the schedule
+   */
+  public static ScheduleChangeset diff(Graph<Flight> live, Graph<Flight> schedule) {
+    long start = System.nanoTime();
+    ScheduleChangeset changeset = new ScheduleChangeset();
+    Map<Flight, Map<Flight, Integer>> liveVertices = live.getVertices();
+    Map<Flight, Map<Flight, Integer>> scheduleVertices = schedule.getVertices();
+
+    // Graphs have no lookup from a flight to the equal flight they hold
+    Map<Flight, Flight> liveFlights = new HashMap<>(liveVertices.size() * 2);
+    for (Flight flight : liveVertices.keySet()) {
+      liveFlights.put(flight, flight);
+    }
+    Set<Flight> removed = new HashSet<>();
+    for (Flight flight : liveVertices.keySet()) {
+      if (!scheduleVertices.containsKey(flight)) {
+        removed.add(flight);
+        changeset.removedFlights.add(flight);
+      }
+    }
+
+    for (Map.Entry<Flight, Map<Flight, Integer>> entry : scheduleVertices.entrySet()) {
+      Flight flight = entry.getKey();
+      Flight current = liveFlights.get(flight);
+      if (current == null) {
+        changeset.addedFlights.add(flight);
+      } else if (current.getDefaultPrice() != flight.getDefaultPrice()
+          || current.getCapacity() != flight.getCapacity()) {
+        changeset.updatedFlights.add(new Update(current, flight.getDefaultPrice(), flight.getCapacity()));
+      }
+
+      Flight from = current == null ? flight : current;
+      Map<Flight, Integer> liveNeighbors = current == null ? Collections.emptyMap() : liveVertices.get(current);
+      Map<Flight, Integer> neighbors = entry.getValue();
+      for (Map.Entry<Flight, Integer> edge : neighbors.entrySet()) {
+        Integer cost = liveNeighbors.get(edge.getKey());
+        // A target that is only a connection target in the schedule is removed
+        // as a live vertex, taking the connection with it, so it is re-added
+        if (cost == null || !cost.equals(edge.getValue()) || removed.contains(edge.getKey())) {
+          Flight to = liveFlights.getOrDefault(edge.getKey(), edge.getKey());
+          changeset.addedConnections.add(new Connection(from, to, edge.getValue()));
+        }
+      }
+      for (Map.Entry<Flight, Integer> edge : liveNeighbors.entrySet()) {
+        // Connections of removed flights go with the flights
+        if (!neighbors.containsKey(edge.getKey()) && !removed.contains(edge.getKey())) {
+          changeset.removedConnections.add(new Connection(current, edge.getKey(), edge.getValue()));
+        }
+      }
+    }
+    DIFF_NANOS.recordSince(start);
+    return changeset;
+  }
+
+  /**
+   * Applies the changes to the graph they were computed against. Every change
+   * is checked before the first one is made, so either the whole changeset is
+   * applied or the graph is left as it was. Bookings may continue meanwhile:
+   * flights whose capacity shrinks are rescheduled first, and if a booking
+   * made since the check no longer fits, the ones already shrunk get their
+   * old schedule back before anything else changes. Must not run concurrently
+   * with other changes to the graph.
+   *
+   * @param graph the live graph
+   * @throws IllegalStateException if the graph no longer matches the
+   *                               changeset, or a new capacity is below the
+   *                               seats already taken on a flight
+   */
+  public void apply(Graph<Flight> graph) {
+    long start = System.nanoTime();
+    Map<Flight, Map<Flight, Integer>> vertices = graph.getVertices();
+    for (Flight flight : addedFlights) {
+      if (vertices.containsKey(flight)) {
+        throw new IllegalStateException("Flight already in the graph: " + flight);
+      }
+    }
+    for (Flight flight : removedFlights) {
+      if (!vertices.containsKey(flight)) {
+        throw new IllegalStateException("Flight no longer in the graph: " + flight);
+      }
+    }
+    for (Update update : updatedFlights) {
+      Flight flight = update.flight;
+      if (!vertices.containsKey(flight)) {
+        throw new IllegalStateException("Flight no longer in the graph: " + flight);
+      }
+      if (update.capacity < flight.getOccupiedSeats() + flight.getHeldSeats()) {
+        throw new IllegalStateException("Capacity " + update.capacity + " is below the taken seats of " + flight);
+      }
+    }
+
+    // Only a smaller capacity can fail, and growing it back cannot
+    List<Update> shrinking = new ArrayList<>();
+    List<Update> others = new ArrayList<>();
+    for (Update update : updatedFlights) {
+      (update.capacity < update.flight.getCapacity() ? shrinking : others).add(update);
+    }
+    List<Update> undo = new ArrayList<>();
+    for (Update update : shrinking) {
+      Flight flight = update.flight;
+      Update previous = new Update(flight, flight.getDefaultPrice(), flight.getCapacity());
+      try {
+        flight.reschedule(update.defaultPrice, update.capacity);
+      } catch (IllegalArgumentException e) {
+        for (Update restore : undo) {
+          restore.flight.reschedule(restore.defaultPrice, restore.capacity);
+        }
+        throw new IllegalStateException("Capacity " + update.capacity + " is below the taken seats of " + flight, e);
+      }
+      undo.add(previous);
+    }
+    for (Update update : others) {
+      update.flight.reschedule(update.defaultPrice, update.capacity);
+    }
+
+    for (Connection connection : removedConnections) {
+      graph.removeEdge(connection.from, connection.to);
+    }
+    for (Flight flight : removedFlights) {
+      graph.removeVertex(flight);
+    }
+    for (Flight flight : addedFlights) {
+      graph.addVertex(flight);
+    }
+    for (Connection connection : addedConnections) {
+      graph.addEdge(connection.from, connection.to, connection.cost);
+    }
+    APPLY_NANOS.recordSince(start);
+  }
+
+  /**
+   * Gets the flights of the schedule that are not in the live graph.
+   *
+   * @return the flights to add
+   */
+  public List<Flight> getAddedFlights() {
+    return Collections.unmodifiableList(addedFlights);
+  }
+
+  /**
+   * Gets the live flights whose base price or capacity changes.
+   *
+   * @return the flights to reschedule
+   */
+  public List<Update> getUpdatedFlights() {
+    return Collections.unmodifiableList(updatedFlights);
+  }
+
+  /**
+   * Gets the live flights that are not in the schedule.
+   *
+   * @return the flights to remove
+   */
+  public List<Flight> getRemovedFlights() {
+    return Collections.unmodifiableList(removedFlights);
+  }
+
+  /**
+   * Gets the connections of the schedule that are missing from the live graph
+   * or have a different cost there.
+   *
+   * @return the connections to add or re-cost
+   */
+  public List<Connection> getAddedConnections() {
+    return Collections.unmodifiableList(addedConnections);
+  }
+
+  /**
+   * Gets the live connections between flights that stay which are not in the
+   * schedule. Connections of removed flights are not listed.
+   *
+   * @return the connections to remove
+   */
+  public List<Connection> getRemovedConnections() {
+    return Collections.unmodifiableList(removedConnections);
+  }
+
+  /**
+   * Gets the number of changes.
+   *
+   * @return the number of flights and connections that change
+   */
+  public int size() {
+    return addedFlights.size() + updatedFlights.size() + removedFlights.size() + addedConnections.size()
+        + removedConnections.size();
+  }
+
+  /**
+   * Determines whether the schedule matches the live graph.
+   *
+   * @return true if there is nothing to change
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "ScheduleChangeset{" +
+        "added=" + addedFlights.size() +
+        ", updated=" + updatedFlights.size() +
+        ", removed=" + removedFlights.size() +
+        ", addedConnections=" + addedConnections.size() +
+        ", removedConnections=" + removedConnections.size() +
+        '}';
+  }
+
+  /**
+   * A new base price and capacity for a live flight.
+   */
+  public static class Update {
+    private final Flight flight;
+    private final int defaultPrice;
+    private final int capacity;
+
+    Update(Flight flight, int defaultPrice, int capacity) {
+      this.flight = flight;
+      this.defaultPrice = defaultPrice;
+      this.capacity = capacity;
+    }
+
+    /**
+     * Gets the live flight.
+     *
+     * @return the flight
+     */
+    public Flight getFlight() {
+      return flight;
+    }
+
+    /**
+     * Gets the new base price.
+     *
+     * @return the base price
+     */
+    public int getDefaultPrice() {
+      return defaultPrice;
+    }
+
+    /**
+     * Gets the new capacity.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+      return capacity;
+    }
+  }
+
+  /**
+   * A connection between two flights.
+   */
+  public static class Connection {
+    private final Flight from;
+    private final Flight to;
+    private final int cost;
+
+    Connection(Flight from, Flight to, int cost) {
+      this.from = from;
+      this.to = to;
+      this.cost = cost;
+    }
+
+    /**
+     * Gets the flight the connection leaves from.
+     *
+     * @return the flight
+     */
+    public Flight getFrom() {
+      return from;
+    }
+
+    /**
+     * Gets the flight the connection leads to.
+     *
+     * @return the flight
+     */
+    public Flight getTo() {
+      return to;
+    }
+
+    /**
+     * Gets the cost of the connection.
+     *
+     * @return the cost
+     */
+    public int getCost() {
+      return cost;
+    }
+  }
+}
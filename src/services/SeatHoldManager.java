@@ -0,0 +1,179 @@
+package services;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import models.CrewMember;
+import models.Flight;
+import shared.metrics.Metrics;
+import shared.structures.HashedTimerWheel;
+
+/**
+ * Places time-limited seat holds on flights. A hold reserves seats until it
+ * is converted into bookings, released, or expires.
+ * Expiry runs on a {@link HashedTimerWheel}, so outstanding holds cost
+ * nothing until their tick comes round, and the whole manager needs a single
+ * periodic task however many holds exist.
+ */
+public class SeatHoldManager implements AutoCloseable {
+  private static final LongAdder HOLDS_PLACED = Metrics.counter("holds.placed");
+  private static final LongAdder HOLDS_EXPIRED = Metrics.counter("holds.expired");
+  private static final long DEFAULT_TICK_MILLIS = 100;
+  private static final int DEFAULT_WHEEL_SIZE = 1024;
+
+  private final long ttlMillis;
+  private final HashedTimerWheel wheel;
+  private final ScheduledExecutorService ticker;
+  private final AtomicInteger activeHolds;
+
+  /**
+   * Constructs a manager whose holds last a given time, with a timer wheel of
+   * 100 ms ticks advanced by a background thread.
+   *
+   * @param ttlMillis how long a hold lasts, in milliseconds
+   */
+  public SeatHoldManager(long ttlMillis) {
+    this(ttlMillis, new HashedTimerWheel(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE), true);
+  }
+
+  /**
+   * Constructs a manager on a timer wheel that the caller advances.
+   *
+   * @param ttlMillis how long a hold lasts, in milliseconds
+   * @param wheel     the timer wheel that expires holds
+   */
+  public SeatHoldManager(long ttlMillis, HashedTimerWheel wheel) {
+    this(ttlMillis, wheel, false);
+  }
+
+  private SeatHoldManager(long ttlMillis, HashedTimerWheel wheel, boolean ticking) {
+    this.ttlMillis = ttlMillis;
+    this.wheel = wheel;
+    this.activeHolds = new AtomicInteger();
+    if (ticking) {
+      this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "seat-hold-expiry");
+        thread.setDaemon(true);
+        return thread;
+      });
+      ticker.scheduleAtFixedRate(wheel::advance, DEFAULT_TICK_MILLIS, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    } else {
+      this.ticker = null;
+    }
+  }
+
+  /**
+   * Holds seats on a flight.
+   *
+   * @param flight the flight
+   * @param seats  the number of seats to hold
+   * @return the hold, or null if the flight does not have enough free seats
+   */
+  public Hold hold(Flight flight, int seats) {
+    if (!flight.holdSeats(seats)) {
+      return null;
+    }
+    Hold hold = new Hold(flight, seats);
+    hold.timeout = wheel.schedule(hold::expire, ttlMillis);
+    activeHolds.incrementAndGet();
+    HOLDS_PLACED.increment();
+    return hold;
+  }
+
+  /**
+   * Gets the number of holds that still reserve seats.
+   *
+   * @return the number of active holds
+   */
+  public int getActiveHolds() {
+    return activeHolds.get();
+  }
+
+  /**
+   * Stops the background thread, if any. Outstanding holds no longer expire.
+   */
+  @Override
+  public void close() {
+    if (ticker != null) {
+      ticker.shutdownNow();
+    }
+  }
+
+  /**
+   * Seats held on a flight. Every method is safe to call after the hold has
+   * ended, in which case it does nothing.
+   */
+  public class Hold {
+    private final Flight flight;
+    private int remainingSeats;
+    private HashedTimerWheel.Timeout timeout;
+
+    private Hold(Flight flight, int seats) {
+      this.flight = flight;
+      this.remainingSeats = seats;
+    }
+
+    /**
+     * Gets the flight the seats are held on.
+     *
+     * @return the flight
+     */
+    public Flight getFlight() {
+      return flight;
+    }
+
+    /**
+     * Gets the number of seats the hold still reserves.
+     *
+     * @return the number of seats, or 0 once the hold has ended
+     */
+    public synchronized int getRemainingSeats() {
+      return remainingSeats;
+    }
+
+    /**
+     * Books a crew member into one of the held seats. The hold ends when its
+     * last seat is booked.
+     *
+     * @param crewMember the crew member to book
+     * @return true if the crew member was booked, false if the hold has ended
+     */
+    public synchronized boolean confirm(CrewMember crewMember) {
+      if (remainingSeats == 0 || !flight.addHeldCrewMember(crewMember)) {
+        return false;
+      }
+      if (--remainingSeats == 0) {
+        end();
+      }
+      return true;
+    }
+
+    /**
+     * Releases the seats that have not been booked and ends the hold.
+     */
+    public synchronized void release() {
+      if (remainingSeats > 0) {
+        flight.releaseHeldSeats(remainingSeats);
+        remainingSeats = 0;
+        end();
+      }
+    }
+
+    private synchronized void expire() {
+      if (remainingSeats > 0) {
+        flight.releaseHeldSeats(remainingSeats);
+        remainingSeats = 0;
+        activeHolds.decrementAndGet();
+        HOLDS_EXPIRED.increment();
+      }
+    }
+
+    private void end() {
+      timeout.cancel();
+      activeHolds.decrementAndGet();
+    }
+  }
+}
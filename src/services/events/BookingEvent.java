@@ -0,0 +1,177 @@
+package services.events;
+
+import models.CrewMember;
+import models.Flight;
+
+/**
+ * Represents a change to the flight network published on a
+ * {@link BookingEventStream}.
+ */
+public class BookingEvent {
+  /**
+   * The kinds of change an event can describe.
+   */
+  public enum Type {
+    /** A crew member was added to a flight. */
+    CREW_MEMBER_ADDED,
+    /** A flight was added to the graph. */
+    FLIGHT_ADDED,
+    /** A connection between two flights was added to the graph. */
+    CONNECTION_ADDED,
+    /** The base price or capacity of a flight was changed. */
+    FLIGHT_RESCHEDULED,
+    /** A flight was removed from the graph. */
+    FLIGHT_REMOVED,
+    /** A connection between two flights was removed from the graph. */
+    CONNECTION_REMOVED
+  }
+
+  private final Type type;
+  private final Flight flight;
+  private final CrewMember crewMember;
+  private final Flight connection;
+  private final int cost;
+  private final long publishedNanos;
+
+  private BookingEvent(Type type, Flight flight, CrewMember crewMember, Flight connection, int cost) {
+    this.type = type;
+    this.flight = flight;
+    this.crewMember = crewMember;
+    this.connection = connection;
+    this.cost = cost;
+    this.publishedNanos = System.nanoTime();
+  }
+
+  /**
+   * Creates an event for a crew member added to a flight.
+   *
+   * @param flight     the flight
+   * @param crewMember the crew member
+   * @return the event
+   */
+  public static BookingEvent crewMemberAdded(Flight flight, CrewMember crewMember) {
+    return new BookingEvent(Type.CREW_MEMBER_ADDED, flight, crewMember, null, 0);
+  }
+
+  /**
+   * Creates an event for a flight added to the graph.
+   *
+   * @param flight the flight
+   * @return the event
+   */
+  public static BookingEvent flightAdded(Flight flight) {
+    return new BookingEvent(Type.FLIGHT_ADDED, flight, null, null, 0);
+  }
+
+  /**
+   * Creates an event for a connection added to the graph.
+   *
+   * @param from the flight the connection leaves from
+   * @param to   the flight the connection leads to
+   * @param cost the cost of the connection
+   * @return the event
+   */
+  public static BookingEvent connectionAdded(Flight from, Flight to, int cost) {
+    return new BookingEvent(Type.CONNECTION_ADDED, from, null, to, cost);
+  }
+
+  /**
+   * Creates an event for a flight whose base price or capacity changed.
+   *
+   * @param flight the flight
+   * @return the event
+   */
+  public static BookingEvent flightRescheduled(Flight flight) {
+    return new BookingEvent(Type.FLIGHT_RESCHEDULED, flight, null, null, 0);
+  }
+
+  /**
+   * Creates an event for a flight removed from the graph.
+   *
+   * @param flight the flight
+   * @return the event
+   */
+  public static BookingEvent flightRemoved(Flight flight) {
+    return new BookingEvent(Type.FLIGHT_REMOVED, flight, null, null, 0);
+  }
+
+  /**
+   * Creates an event for a connection removed from the graph.
+   *
+   * @param from the flight the connection left from
+   * @param to   the flight the connection led to
+   * @return the event
+   */
+  public static BookingEvent connectionRemoved(Flight from, Flight to) {
+    return new BookingEvent(Type.CONNECTION_REMOVED, from, null, to, 0);
+  }
+
+  /**
+   * Gets the kind of change.
+   *
+   * @return the type of the event
+   */
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Gets the flight that changed, or the flight a connection leaves from.
+   *
+   * @return the flight
+   */
+  public Flight getFlight() {
+    return flight;
+  }
+
+  /**
+   * Gets the crew member that was added.
+   *
+   * @return the crew member, or null for other types of event
+   */
+  public CrewMember getCrewMember() {
+    return crewMember;
+  }
+
+  /**
+   * Gets the flight an added or removed connection leads to.
+   *
+   * @return the flight, or null for other types of event
+   */
+  public Flight getConnection() {
+    return connection;
+  }
+
+  /**
+   * Gets the cost of a new connection.
+   *
+   * @return the cost, or 0 for other types of event
+   */
+  public int getCost() {
+    return cost;
+  }
+
+  /**
+   * Gets the {@link System#nanoTime()} at which the event was created, for
+   * measuring delivery delays.
+   *
+   * @return the creation time in nanoseconds
+   */
+  public long getPublishedNanos() {
+    return publishedNanos;
+  }
+
+  @Override
+  public String toString() {
+    switch (type) {
+      case CREW_MEMBER_ADDED:
+        return type + "{" + flight + ", " + crewMember + "}";
+      case CONNECTION_ADDED:
+        return type + "{" + flight + " -> " + connection + ", cost=" + cost + "}";
+      case CONNECTION_REMOVED:
+        return type + "{" + flight + " -> " + connection + "}";
+      default:
+        return type + "{" + flight + "}";
+    }
+  }
+}
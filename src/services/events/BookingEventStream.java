@@ -0,0 +1,376 @@
+package services.events;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * An in-process stream of changes to a flight graph: flights and connections
+ * added or removed, rescheduled flights and new crew members.
+ * Every subscriber has its own ring buffer. Publishing only copies the event
+ * into each buffer, and events are delivered to subscribers in batches on an
+ * executor, so a slow subscriber never delays bookings unless it subscribed
+ * with {@link OverflowPolicy#BLOCK}. Demand requested through
+ * {@link Flow.Subscription#request(long)} is counted in batches.
+ */
+public class BookingEventStream
+    implements Flow.Publisher<List<BookingEvent>>, GraphListener<Flight>, FlightListener, AutoCloseable {
+  private static final LatencyHistogram PUBLISH_NANOS = Metrics.histogram("events.publish.ns");
+  private static final LongAdder PUBLISHED = Metrics.counter("events.published");
+  private static final LongAdder DROPPED = Metrics.counter("events.dropped");
+  private static final long BLOCK_WAIT_NANOS = 10_000L;
+
+  private final int bufferSize;
+  private final int maxBatchSize;
+  private final OverflowPolicy defaultPolicy;
+  private final Executor executor;
+  private final Object publishLock;
+  private volatile RingSubscription[] subscriptions;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a stream with buffers of 1024 events, batches of up to 64
+   * events, the {@link OverflowPolicy#DROP_OLDEST} policy, and delivery on the
+   * common fork-join pool.
+   */
+  public BookingEventStream() {
+    this(1024, 64, OverflowPolicy.DROP_OLDEST, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a stream.
+   *
+   * @param bufferSize    the number of events buffered per subscriber, rounded
+   *                      up to a power of two
+   * @param maxBatchSize  the largest number of events delivered in one batch
+   * @param defaultPolicy the overflow policy of subscribers that do not choose
+   *                      one
+   * @param executor      the executor that delivers events to subscribers
+   */
+  public BookingEventStream(int bufferSize, int maxBatchSize, OverflowPolicy defaultPolicy, Executor executor) {
+    if (bufferSize < 1 || maxBatchSize < 1) {
+      throw new IllegalArgumentException("Buffer and batch sizes must be positive: " + bufferSize + ", "
+          + maxBatchSize);
+    }
+    int capacity = 1;
+    while (capacity < bufferSize) {
+      capacity <<= 1;
+    }
+    this.bufferSize = capacity;
+    this.maxBatchSize = maxBatchSize;
+    this.defaultPolicy = Objects.requireNonNull(defaultPolicy);
+    this.executor = Objects.requireNonNull(executor);
+    this.publishLock = new Object();
+    this.subscriptions = new RingSubscription[0];
+  }
+
+  /**
+   * Starts publishing the changes of a flight graph.
+   * Flights already in the graph are not announced, but bookings on them are.
+   *
+   * @param flightGraph the graph to publish changes of
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(flight -> flight.addListener(this));
+  }
+
+  /**
+   * Stops publishing the changes of a flight graph.
+   *
+   * @param flightGraph the graph to stop publishing changes of
+   */
+  public void detach(Graph<Flight> flightGraph) {
+    flightGraph.removeListener(this);
+    flightGraph.getVertices().keySet().forEach(flight -> flight.removeListener(this));
+  }
+
+  /**
+   * Subscribes with the default overflow policy of the stream.
+   *
+   * @param subscriber the subscriber
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super List<BookingEvent>> subscriber) {
+    subscribe(subscriber, defaultPolicy);
+  }
+
+  /**
+   * Subscribes with a given overflow policy. The subscriber receives the
+   * events published after this call.
+   *
+   * @param subscriber the subscriber
+   * @param policy     what to do when the subscriber's buffer is full
+   */
+  public void subscribe(Flow.Subscriber<? super List<BookingEvent>> subscriber, OverflowPolicy policy) {
+    RingSubscription subscription = new RingSubscription(Objects.requireNonNull(subscriber),
+        Objects.requireNonNull(policy));
+    subscriber.onSubscribe(subscription);
+    synchronized (this) {
+      if (!closed) {
+        RingSubscription[] current = subscriptions;
+        RingSubscription[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscription;
+        subscriptions = updated;
+        return;
+      }
+    }
+    subscription.complete();
+  }
+
+  /**
+   * Gets the number of active subscribers.
+   *
+   * @return the number of subscribers
+   */
+  public int getSubscriberCount() {
+    return subscriptions.length;
+  }
+
+  /**
+   * Publishes an event to every subscriber.
+   *
+   * @param event the event to publish
+   */
+  public void publish(BookingEvent event) {
+    long start = System.nanoTime();
+    RingSubscription[] current = subscriptions;
+    if (current.length > 0) {
+      synchronized (publishLock) {
+        for (RingSubscription subscription : current) {
+          subscription.offer(event);
+        }
+      }
+    }
+    PUBLISHED.increment();
+    PUBLISH_NANOS.recordSince(start);
+  }
+
+  /**
+   * Stops accepting subscribers and completes every subscription once its
+   * buffered events have been delivered.
+   */
+  @Override
+  public void close() {
+    RingSubscription[] current;
+    synchronized (this) {
+      closed = true;
+      current = subscriptions;
+      subscriptions = new RingSubscription[0];
+    }
+    for (RingSubscription subscription : current) {
+      subscription.complete();
+    }
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    flight.addListener(this);
+    publish(BookingEvent.flightAdded(flight));
+  }
+
+  @Override
+  public void onEdgeAdded(Flight from, Flight to, int cost) {
+    publish(BookingEvent.connectionAdded(from, to, cost));
+  }
+
+  @Override
+  public void onEdgeRemoved(Flight from, Flight to) {
+    publish(BookingEvent.connectionRemoved(from, to));
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    flight.removeListener(this);
+    publish(BookingEvent.flightRemoved(flight));
+  }
+
+  @Override
+  public void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    publish(BookingEvent.crewMemberAdded(flight, crewMember));
+  }
+
+  @Override
+  public void onScheduleChanged(Flight flight) {
+    publish(BookingEvent.flightRescheduled(flight));
+  }
+
+  private synchronized void remove(RingSubscription subscription) {
+    RingSubscription[] current = subscriptions;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == subscription) {
+        RingSubscription[] updated = new RingSubscription[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+        subscriptions = updated;
+        return;
+      }
+    }
+  }
+
+  /**
+   * The ring buffer and delivery state of one subscriber.
+   * Events are written by one publisher at a time and read by one delivery
+   * task at a time. The reader claims a batch by advancing the head with a
+   * compare-and-set, so that a publisher discarding the oldest event never
+   * races with a delivery in progress.
+   */
+  private final class RingSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super List<BookingEvent>> subscriber;
+    private final OverflowPolicy policy;
+    private final BookingEvent[] ring;
+    private final int mask;
+    private final AtomicLong head;
+    private volatile long tail;
+    private final AtomicLong demand;
+    private final AtomicInteger pendingSignals;
+    private volatile boolean cancelled;
+    private volatile boolean completing;
+
+    RingSubscription(Flow.Subscriber<? super List<BookingEvent>> subscriber, OverflowPolicy policy) {
+      this.subscriber = subscriber;
+      this.policy = policy;
+      this.ring = new BookingEvent[bufferSize];
+      this.mask = bufferSize - 1;
+      this.head = new AtomicLong();
+      this.demand = new AtomicLong();
+      this.pendingSignals = new AtomicInteger();
+    }
+
+    void offer(BookingEvent event) {
+      long t = tail;
+      while (t - head.get() >= ring.length) {
+        if (cancelled) {
+          return;
+        }
+        switch (policy) {
+          case DROP_NEWEST:
+            DROPPED.increment();
+            return;
+          case DROP_OLDEST:
+            long h = head.get();
+            if (t - h >= ring.length && head.compareAndSet(h, h + 1)) {
+              DROPPED.increment();
+            }
+            break;
+          default:
+            signal();
+            LockSupport.parkNanos(BLOCK_WAIT_NANOS);
+        }
+      }
+      ring[(int) t & mask] = event;
+      tail = t + 1;
+      // Delivery with no demand would find nothing to do; request() signals
+      if (demand.get() > 0) {
+        signal();
+      }
+    }
+
+    void complete() {
+      completing = true;
+      signal();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("Requested demand must be positive: " + n));
+        return;
+      }
+      long current;
+      long updated;
+      do {
+        current = demand.get();
+        updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+      } while (!demand.compareAndSet(current, updated));
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      remove(this);
+    }
+
+    private void signal() {
+      if (pendingSignals.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    /**
+     * Delivers buffered events while there is demand, then completes the
+     * subscription if the stream was closed and the buffer is empty.
+     */
+    @Override
+    public void run() {
+      int missed = 1;
+      while (true) {
+        long requested = demand.get();
+        long delivered = 0;
+        while (delivered != requested && !cancelled) {
+          List<BookingEvent> batch = poll();
+          if (batch == null) {
+            break;
+          }
+          try {
+            subscriber.onNext(batch);
+          } catch (Throwable e) {
+            cancel();
+            subscriber.onError(e);
+            return;
+          }
+          delivered++;
+        }
+        if (cancelled) {
+          return;
+        }
+        if (delivered > 0 && requested != Long.MAX_VALUE) {
+          demand.addAndGet(-delivered);
+        }
+        if (completing && head.get() == tail) {
+          cancelled = true;
+          subscriber.onComplete();
+          return;
+        }
+        missed = pendingSignals.addAndGet(-missed);
+        if (missed == 0) {
+          return;
+        }
+      }
+    }
+
+    private List<BookingEvent> poll() {
+      while (true) {
+        long h = head.get();
+        int count = (int) Math.min(tail - h, maxBatchSize);
+        if (count <= 0) {
+          return null;
+        }
+        BookingEvent[] batch = new BookingEvent[count];
+        for (int i = 0; i < count; i++) {
+          batch[i] = ring[(int) (h + i) & mask];
+        }
+        if (head.compareAndSet(h, h + count)) {
+          return Arrays.asList(batch);
+        }
+      }
+    }
+  }
+}
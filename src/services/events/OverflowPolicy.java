@@ -0,0 +1,18 @@
+package services.events;
+
+/**
+ * Decides what happens when an event is published while a subscriber's
+ * buffer is full.
+ */
+public enum OverflowPolicy {
+  /** Discard the oldest buffered event to make room for the new one. */
+  DROP_OLDEST,
+  /** Discard the new event. */
+  DROP_NEWEST,
+  /**
+   * Make the publishing thread wait until the subscriber frees space. This
+   * applies back-pressure to bookings, so use it only for subscribers that
+   * must not miss events.
+   */
+  BLOCK
+}
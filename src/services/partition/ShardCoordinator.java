@@ -0,0 +1,552 @@
+package services.partition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import models.CrewMember;
+import models.Flight;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+
+/**
+ * Runs a flight network split across {@link ShardWorker}s by origin city.
+ * Each worker owns the flights departing from its cities, with their crew
+ * trees, so bookings are routed to the single worker that owns the flight and
+ * the network can hold more crew than one JVM heap.
+ * Cheapest routes are found in rounds: the cities whose cost improved in the
+ * last round form the frontier, which is split by owner and sent to every
+ * worker at once as one batch each. The workers relax the departures of their
+ * cities and answer with the cities they reached, and the round ends when
+ * every worker has answered.
+ * A coordinator is safe for use by multiple threads, which share a small pool
+ * of connections to each worker.
+ */
+public class ShardCoordinator implements AutoCloseable {
+  private static final LatencyHistogram BOOK_NANOS = Metrics.histogram("partition.book.ns");
+  private static final LatencyHistogram ROUTE_NANOS = Metrics.histogram("partition.route.ns");
+  private static final LongAdder FRONTIER_BATCHES = Metrics.counter("partition.frontier.batches");
+  private static final int DEFAULT_CONNECTIONS_PER_WORKER = 4;
+  private static final long SHUTDOWN_WAIT_SECONDS = 5;
+
+  private final List<BlockingQueue<Connection>> pools;
+  private final List<Process> processes;
+  private final ExecutorService rounds;
+
+  private ShardCoordinator(List<InetSocketAddress> workers, int connectionsPerWorker, List<Process> processes) {
+    this.pools = new ArrayList<>();
+    for (InetSocketAddress address : workers) {
+      BlockingQueue<Connection> pool = new ArrayBlockingQueue<>(connectionsPerWorker);
+      for (int i = 0; i < connectionsPerWorker; i++) {
+        pool.add(new Connection(address));
+      }
+      pools.add(pool);
+    }
+    this.processes = processes;
+    this.rounds = Executors.newFixedThreadPool(workers.size(), runnable -> {
+      Thread thread = new Thread(runnable, "shard-round");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts worker processes on this machine, running on the class path of
+   * the current JVM, and connects to them.
+   *
+   * @param workers    the number of worker processes
+   * @param jvmOptions options for each worker JVM, such as a heap size
+   * @return the coordinator, which stops the workers when closed
+   * @throws IOException if a worker cannot be started
+   */
+  public static ShardCoordinator launch(int workers, String... jvmOptions) throws IOException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("At least one worker is required");
+    }
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    List<Process> processes = new ArrayList<>();
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    try {
+      for (int i = 0; i < workers; i++) {
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(Arrays.asList(jvmOptions));
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), ShardWorker.class.getName()));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        processes.add(process);
+        addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), awaitPort(process)));
+      }
+    } catch (IOException e) {
+      processes.forEach(Process::destroyForcibly);
+      throw e;
+    }
+    return new ShardCoordinator(addresses, DEFAULT_CONNECTIONS_PER_WORKER, processes);
+  }
+
+  /**
+   * Connects to workers that are already running. Shard i of the network is
+   * owned by the i-th worker, so the same workers must always be given in the
+   * same order.
+   *
+   * @param workers              the worker addresses
+   * @param connectionsPerWorker the number of connections kept open to each
+   *                             worker, bounding its concurrent requests
+   * @return the coordinator
+   */
+  public static ShardCoordinator connect(List<InetSocketAddress> workers, int connectionsPerWorker) {
+    if (workers.isEmpty() || connectionsPerWorker < 1) {
+      throw new IllegalArgumentException("At least one worker and one connection per worker are required");
+    }
+    return new ShardCoordinator(workers, connectionsPerWorker, Collections.emptyList());
+  }
+
+  /**
+   * Gets the number of workers.
+   *
+   * @return the number of workers
+   */
+  public int workerCount() {
+    return pools.size();
+  }
+
+  /**
+   * Gets the worker that owns the flights departing from a city.
+   *
+   * @param city the origin city
+   * @return the index of the worker
+   */
+  public int workerOf(String city) {
+    return ShardProtocol.shardOf(city, pools.size());
+  }
+
+  /**
+   * Adds flights to the workers that own them with their crew members and
+   * occupied seats, sending one batch per worker. Flights a worker already
+   * has are left as they are.
+   *
+   * @param flights the flights to add
+   * @return the number of flights that were not in the network yet
+   * @throws UncheckedIOException if a worker cannot be reached
+   */
+  public int addFlights(Collection<Flight> flights) {
+    List<List<Flight>> batches = new ArrayList<>();
+    for (int i = 0; i < pools.size(); i++) {
+      batches.add(new ArrayList<>());
+    }
+    for (Flight flight : flights) {
+      batches.get(workerOf(flight.getOrigin())).add(flight);
+    }
+
+    List<Future<Integer>> replies = new ArrayList<>();
+    for (int shard = 0; shard < pools.size(); shard++) {
+      List<Flight> batch = batches.get(shard);
+      if (batch.isEmpty()) {
+        continue;
+      }
+      replies.add(submit(shard, (in, out) -> {
+        out.writeByte(ShardProtocol.ADD_FLIGHTS);
+        out.writeInt(batch.size());
+        for (Flight flight : batch) {
+          writeFlight(flight, out);
+        }
+        out.flush();
+        return in.readInt();
+      }));
+    }
+    int added = 0;
+    for (Future<Integer> reply : replies) {
+      added += await(reply);
+    }
+    return added;
+  }
+
+  private static void writeFlight(Flight flight, DataOutputStream out) throws IOException {
+    List<CrewMember> crew = new ArrayList<>();
+    int occupiedSeats;
+    // Read under the flight's lock, so the crew matches the occupied seats
+    synchronized (flight) {
+      flight.getCrewTree().forEach(crew::add);
+      occupiedSeats = flight.getOccupiedSeats();
+    }
+    out.writeUTF(flight.getOrigin());
+    out.writeUTF(flight.getDestination());
+    out.writeInt(flight.getDefaultPrice());
+    out.writeInt(flight.getCapacity());
+    out.writeInt(occupiedSeats - crew.size());
+    out.writeInt(crew.size());
+    for (CrewMember crewMember : crew) {
+      out.writeUTF(crewMember.getName());
+      out.writeInt(crewMember.value);
+    }
+  }
+
+  /**
+   * Books a seat on a flight for a crew member.
+   *
+   * @param origin      the origin city of the flight
+   * @param destination the destination city of the flight
+   * @param crewMember  the crew member to book
+   * @return true if the seat was booked, false if the flight does not exist,
+   *         is full or the seat is taken
+   * @throws UncheckedIOException if the owning worker cannot be reached
+   */
+  public boolean book(String origin, String destination, CrewMember crewMember) {
+    long start = System.nanoTime();
+    int status = call(workerOf(origin), (in, out) -> {
+      out.writeByte(ShardProtocol.BOOK);
+      out.writeUTF(origin);
+      out.writeUTF(destination);
+      out.writeUTF(crewMember.getName());
+      out.writeInt(crewMember.value);
+      out.flush();
+      return in.readUnsignedByte();
+    });
+    BOOK_NANOS.recordSince(start);
+    return status == ShardProtocol.BOOKED;
+  }
+
+  /**
+   * Finds the cheapest sequence of flights between two cities at their
+   * current prices, using only flights with free seats.
+   *
+   * @param origin      the origin city
+   * @param destination the destination city
+   * @return the legs in travel order, or an empty list if the destination
+   *         cannot be reached
+   * @throws UncheckedIOException if a worker cannot be reached
+   */
+  public List<Leg> findCheapestRoute(String origin, String destination) {
+    if (origin.equals(destination)) {
+      return Collections.emptyList();
+    }
+    long start = System.nanoTime();
+    Map<String, Long> costs = new HashMap<>();
+    Map<String, Leg> arrivals = new HashMap<>();
+    costs.put(origin, 0L);
+    Map<String, Long> frontier = new HashMap<>();
+    frontier.put(origin, 0L);
+
+    while (!frontier.isEmpty()) {
+      List<Map<String, Long>> batches = new ArrayList<>();
+      for (int i = 0; i < pools.size(); i++) {
+        batches.add(new HashMap<>());
+      }
+      for (Map.Entry<String, Long> entry : frontier.entrySet()) {
+        batches.get(workerOf(entry.getKey())).put(entry.getKey(), entry.getValue());
+      }
+      // Nothing at or above the best cost to the destination can improve it
+      long bound = costs.getOrDefault(destination, Long.MAX_VALUE);
+
+      List<Future<List<Leg>>> replies = new ArrayList<>();
+      for (int shard = 0; shard < pools.size(); shard++) {
+        Map<String, Long> batch = batches.get(shard);
+        if (!batch.isEmpty()) {
+          replies.add(submit(shard, (in, out) -> relax(in, out, batch, bound)));
+          FRONTIER_BATCHES.increment();
+        }
+      }
+
+      frontier = new HashMap<>();
+      for (Future<List<Leg>> reply : replies) {
+        for (Leg leg : await(reply)) {
+          long cost = leg.cost;
+          if (cost < costs.getOrDefault(leg.destination, Long.MAX_VALUE)) {
+            costs.put(leg.destination, cost);
+            arrivals.put(leg.destination, leg);
+            if (!leg.destination.equals(destination)) {
+              frontier.put(leg.destination, cost);
+            }
+          }
+        }
+      }
+    }
+
+    LinkedList<Leg> route = new LinkedList<>();
+    for (Leg leg = arrivals.get(destination); leg != null; leg = arrivals.get(leg.origin)) {
+      route.addFirst(leg);
+    }
+    ROUTE_NANOS.recordSince(start);
+    return route;
+  }
+
+  /**
+   * Gets the number of flights in the network.
+   *
+   * @return the number of flights across all workers
+   * @throws UncheckedIOException if a worker cannot be reached
+   */
+  public int flightCount() {
+    int flights = 0;
+    for (long[] stats : stats()) {
+      flights += (int) stats[0];
+    }
+    return flights;
+  }
+
+  /**
+   * Gets the number of flights and booked seats on each worker.
+   *
+   * @return for each worker, its number of flights and booked seats
+   * @throws UncheckedIOException if a worker cannot be reached
+   */
+  public List<long[]> stats() {
+    List<Future<long[]>> replies = new ArrayList<>();
+    for (int shard = 0; shard < pools.size(); shard++) {
+      replies.add(submit(shard, (in, out) -> {
+        out.writeByte(ShardProtocol.STATS);
+        out.flush();
+        return new long[] { in.readInt(), in.readLong() };
+      }));
+    }
+    List<long[]> stats = new ArrayList<>();
+    for (Future<long[]> reply : replies) {
+      stats.add(await(reply));
+    }
+    return stats;
+  }
+
+  /**
+   * Closes the connections to the workers, stopping them if they were
+   * started by this coordinator.
+   */
+  @Override
+  public void close() {
+    rounds.shutdownNow();
+    for (BlockingQueue<Connection> pool : pools) {
+      Connection connection = pool.poll();
+      if (connection != null && !processes.isEmpty()) {
+        try {
+          connection.open().out.writeByte(ShardProtocol.SHUTDOWN);
+          connection.out.flush();
+        } catch (IOException e) {
+          // The worker is gone already
+        }
+      }
+      for (; connection != null; connection = pool.poll()) {
+        connection.close();
+      }
+    }
+    for (Process process : processes) {
+      try {
+        process.getOutputStream().close();
+        if (!process.waitFor(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+        }
+      } catch (IOException e) {
+        process.destroyForcibly();
+      } catch (InterruptedException e) {
+        process.destroyForcibly();
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static List<Leg> relax(DataInputStream in, DataOutputStream out, Map<String, Long> batch, long bound)
+      throws IOException {
+    out.writeByte(ShardProtocol.RELAX);
+    out.writeLong(bound);
+    out.writeInt(batch.size());
+    for (Map.Entry<String, Long> entry : batch.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeLong(entry.getValue());
+    }
+    out.flush();
+
+    int count = in.readInt();
+    List<Leg> reached = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String destination = in.readUTF();
+      long cost = in.readLong();
+      String origin = in.readUTF();
+      reached.add(new Leg(origin, destination, in.readInt(), cost));
+    }
+    return reached;
+  }
+
+  /**
+   * Reads the port a worker process reports, then keeps draining its output
+   * so that it never blocks on a full pipe.
+   */
+  private static int awaitPort(Process process) throws IOException {
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    String line = reader.readLine();
+    if (line == null || !line.startsWith(ShardProtocol.READY)) {
+      throw new IOException("Shard worker did not start: " + line);
+    }
+    Thread drain = new Thread(() -> {
+      try {
+        while (reader.readLine() != null) {
+          // Discard output
+        }
+      } catch (IOException e) {
+        // The worker exited
+      }
+    }, "shard-output");
+    drain.setDaemon(true);
+    drain.start();
+    return Integer.parseInt(line.substring(ShardProtocol.READY.length()).trim());
+  }
+
+  private <R> Future<R> submit(int shard, Exchange<R> exchange) {
+    return rounds.submit(() -> call(shard, exchange));
+  }
+
+  private static <R> R await(Future<R> reply) {
+    try {
+      return reply.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a shard worker", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Runs one request and its answer on a pooled connection to a worker. A
+   * connection that fails is closed and reopened by its next request.
+   */
+  private <R> R call(int shard, Exchange<R> exchange) {
+    BlockingQueue<Connection> pool = pools.get(shard);
+    Connection connection;
+    try {
+      connection = pool.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a shard connection", e);
+    }
+    try {
+      connection.open();
+      return exchange.run(connection.in, connection.out);
+    } catch (IOException e) {
+      connection.close();
+      throw new UncheckedIOException("Shard worker " + shard + " failed", e);
+    } finally {
+      pool.add(connection);
+    }
+  }
+
+  /**
+   * A request written to a worker and the reading of its answer.
+   */
+  private interface Exchange<R> {
+    R run(DataInputStream in, DataOutputStream out) throws IOException;
+  }
+
+  /**
+   * A connection to a worker, opened on first use.
+   */
+  private static class Connection {
+    final InetSocketAddress address;
+    Socket socket;
+    DataInputStream in;
+    DataOutputStream out;
+
+    Connection(InetSocketAddress address) {
+      this.address = address;
+    }
+
+    Connection open() throws IOException {
+      if (socket == null) {
+        Socket s = new Socket();
+        s.setTcpNoDelay(true);
+        s.connect(address);
+        socket = s;
+        in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+      }
+      return this;
+    }
+
+    void close() {
+      if (socket != null) {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Nothing left to release
+        }
+        socket = null;
+      }
+    }
+  }
+
+  /**
+   * A flight on a route found across workers, with its price at the time of
+   * the search.
+   */
+  public static class Leg {
+    private final String origin;
+    private final String destination;
+    private final int price;
+    private final long cost;
+
+    Leg(String origin, String destination, int price, long cost) {
+      this.origin = origin;
+      this.destination = destination;
+      this.price = price;
+      this.cost = cost;
+    }
+
+    /**
+     * Gets the origin city of the flight.
+     *
+     * @return the origin city
+     */
+    public String getOrigin() {
+      return origin;
+    }
+
+    /**
+     * Gets the destination city of the flight.
+     *
+     * @return the destination city
+     */
+    public String getDestination() {
+      return destination;
+    }
+
+    /**
+     * Gets the price of the flight when the route was found.
+     *
+     * @return the price
+     */
+    public int getPrice() {
+      return price;
+    }
+
+    @Override
+    public String toString() {
+      return origin + " -> " + destination + " (" + price + ")";
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package services.partition;
+
+/**
+ * The requests exchanged between a {@link ShardCoordinator} and its
+ * {@link ShardWorker}s. Each request is a one-byte code followed by its
+ * fields, written with {@link java.io.DataOutputStream}, and is answered
+ * before the next request on the same connection is sent.
+ */
+class ShardProtocol {
+  /** Line a worker prints once it listens, followed by its port. */
+  static final String READY = "LISTENING ";
+
+  /**
+   * Adds flights: a count, then for each its origin, destination, base price,
+   * capacity, seats occupied without a crew member, and a count of crew
+   * members with each name and seat. Answered with the number of flights
+   * that were new.
+   */
+  static final int ADD_FLIGHTS = 1;
+
+  /**
+   * Books a seat: origin, destination, crew member name and seat number.
+   * Answered with one of the booking statuses.
+   */
+  static final int BOOK = 2;
+
+  /**
+   * Relaxes the departures of a frontier: a cost bound, a count, then each
+   * city with its cost so far. Answered with a count and, for each reached
+   * city, its cost, the origin of the flight that reached it and the
+   * flight's price.
+   */
+  static final int RELAX = 3;
+
+  /** Answered with the number of flights and the number of booked seats. */
+  static final int STATS = 4;
+
+  /** Stops the worker. Not answered. */
+  static final int SHUTDOWN = 5;
+
+  static final int BOOKED = 0;
+  static final int NO_FLIGHT = 1;
+  static final int FULL = 2; // Also answered when the seat is taken
+
+  /**
+   * Gets the shard that owns the flights departing from a city.
+   *
+   * @param city   the origin city
+   * @param shards the number of shards
+   * @return the shard index
+   */
+  static int shardOf(String city, int shards) {
+    return Math.floorMod(city.hashCode(), shards);
+  }
+}
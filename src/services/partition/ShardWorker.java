@@ -0,0 +1,285 @@
+package services.partition;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import models.CrewMember;
+import models.Flight;
+import services.CityGraph;
+import shared.structures.AVLTree;
+import shared.structures.Graph;
+
+/**
+ * Holds one shard of a partitioned flight network: the flights departing
+ * from the cities assigned to it, with their crew trees, in a flight graph of
+ * its own. A worker listens on a loopback port and serves each connection
+ * from a {@link ShardCoordinator} on its own thread, so bookings on different
+ * flights run in parallel.
+ * Run as a process with {@code java services.partition.ShardWorker [port]};
+ * it prints the port it listens on and stops when its standard input closes.
+ */
+public class ShardWorker implements AutoCloseable {
+  private final ServerSocket server;
+  private final Graph<Flight> flightGraph;
+  private final CityGraph cityGraph;
+  private final ReadWriteLock lock;
+  private final CountDownLatch closed;
+
+  /**
+   * Constructs a worker listening on a loopback port.
+   *
+   * @param port the port, or 0 for any free port
+   * @throws IOException if the port cannot be bound
+   */
+  public ShardWorker(int port) throws IOException {
+    this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.flightGraph = new Graph<>();
+    this.cityGraph = new CityGraph();
+    this.lock = new ReentrantReadWriteLock();
+    this.closed = new CountDownLatch(1);
+    cityGraph.attach(flightGraph);
+  }
+
+  /**
+   * Starts a worker process.
+   *
+   * @param args the port to listen on, 0 or none for any free port
+   * @throws Exception if the worker cannot start
+   */
+  public static void main(String[] args) throws Exception {
+    ShardWorker worker = new ShardWorker(args.length > 0 ? Integer.parseInt(args[0]) : 0);
+    worker.start();
+    System.out.println(ShardProtocol.READY + worker.getPort());
+    System.out.flush();
+
+    // The coordinator holds the other end of standard input, so the worker
+    // does not outlive it
+    Thread watcher = new Thread(() -> {
+      try {
+        while (System.in.read() != -1) {
+          // Discard input
+        }
+      } catch (IOException e) {
+        // Treat as closed
+      }
+      worker.close();
+    }, "shard-stdin");
+    watcher.setDaemon(true);
+    watcher.start();
+    worker.awaitClose();
+    System.exit(0);
+  }
+
+  /**
+   * Starts accepting connections on a background thread.
+   */
+  public void start() {
+    Thread acceptor = new Thread(() -> {
+      while (!server.isClosed()) {
+        try {
+          Socket socket = server.accept();
+          Thread handler = new Thread(() -> serve(socket), "shard-connection");
+          handler.setDaemon(true);
+          handler.start();
+        } catch (IOException e) {
+          // The server socket was closed
+        }
+      }
+    }, "shard-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * Gets the port the worker listens on.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Gets the number of flights in the shard.
+   *
+   * @return the number of flights
+   */
+  public int flightCount() {
+    lock.readLock().lock();
+    try {
+      return cityGraph.flightCount();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Waits until the worker is closed.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitClose() throws InterruptedException {
+    closed.await();
+  }
+
+  /**
+   * Stops accepting connections. Connections already open are closed by the
+   * coordinator.
+   */
+  @Override
+  public void close() {
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Nothing left to release
+    }
+    closed.countDown();
+  }
+
+  private void serve(Socket socket) {
+    try (Socket s = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+      s.setTcpNoDelay(true);
+      while (true) {
+        int request = in.read();
+        if (request == -1 || request == ShardProtocol.SHUTDOWN) {
+          if (request == ShardProtocol.SHUTDOWN) {
+            close();
+          }
+          return;
+        }
+        switch (request) {
+          case ShardProtocol.ADD_FLIGHTS:
+            out.writeInt(addFlights(in));
+            break;
+          case ShardProtocol.BOOK:
+            out.writeByte(book(in.readUTF(), in.readUTF(), new CrewMember(in.readUTF(), in.readInt())));
+            break;
+          case ShardProtocol.RELAX:
+            relax(in, out);
+            break;
+          case ShardProtocol.STATS:
+            writeStats(out);
+            break;
+          default:
+            throw new IOException("Unknown request " + request);
+        }
+        out.flush();
+      }
+    } catch (EOFException e) {
+      // The coordinator went away mid-request
+    } catch (IOException e) {
+      System.err.println("Shard connection failed: " + e.getMessage());
+    }
+  }
+
+  private int addFlights(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    int added = 0;
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < count; i++) {
+        Flight flight = new Flight(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(),
+            AVLTree::new);
+        List<CrewMember> crew = new ArrayList<>();
+        for (int crewCount = in.readInt(); crewCount > 0; crewCount--) {
+          crew.add(new CrewMember(in.readUTF(), in.readInt()));
+        }
+        if (!flightGraph.getVertices().containsKey(flight)) {
+          crew.forEach(flight::addCrewMember);
+          flightGraph.addVertex(flight);
+          added++;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return added;
+  }
+
+  private int book(String origin, String destination, CrewMember crewMember) {
+    Flight flight;
+    lock.readLock().lock();
+    try {
+      List<Flight> flights = cityGraph.getFlights(origin, destination);
+      flight = flights.isEmpty() ? null : flights.get(0);
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (flight == null) {
+      return ShardProtocol.NO_FLIGHT;
+    }
+    return flight.addCrewMember(crewMember) ? ShardProtocol.BOOKED : ShardProtocol.FULL;
+  }
+
+  /**
+   * Relaxes the departures of a batch of frontier cities, answering with the
+   * cheapest cost found to each city reached below the bound.
+   */
+  private void relax(DataInputStream in, DataOutputStream out) throws IOException {
+    long bound = in.readLong();
+    int count = in.readInt();
+    Map<String, long[]> reached = new HashMap<>();
+    Map<String, String> via = new HashMap<>();
+    lock.readLock().lock();
+    try {
+      for (int i = 0; i < count; i++) {
+        String city = in.readUTF();
+        long cost = in.readLong();
+        for (Flight flight : cityGraph.getDepartures(city)) {
+          if (flight.getAvailableSeats() <= 0) {
+            continue;
+          }
+          int price = flight.calculatePrice();
+          long next = cost + price;
+          long[] best = reached.get(flight.getDestination());
+          if (next < bound && (best == null || next < best[0])) {
+            reached.put(flight.getDestination(), new long[] { next, price });
+            via.put(flight.getDestination(), city);
+          }
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    out.writeInt(reached.size());
+    for (Map.Entry<String, long[]> entry : reached.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeLong(entry.getValue()[0]);
+      out.writeUTF(via.get(entry.getKey()));
+      out.writeInt((int) entry.getValue()[1]);
+    }
+  }
+
+  private void writeStats(DataOutputStream out) throws IOException {
+    int flights;
+    long seats = 0;
+    lock.readLock().lock();
+    try {
+      flights = cityGraph.flightCount();
+      for (Flight flight : flightGraph.getVertices().keySet()) {
+        seats += flight.getOccupiedSeats();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    out.writeInt(flights);
+    out.writeLong(seats);
+  }
+}
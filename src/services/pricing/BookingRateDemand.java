@@ -0,0 +1,27 @@
+package services.pricing;
+
+/**
+ * Raises the price of routes that are selling quickly. The factor grows
+ * linearly with the recent booking rate, up to a maximum.
+ */
+public class BookingRateDemand implements PricingStrategy {
+  private final double increasePerBooking;
+  private final double maxFactor;
+
+  /**
+   * Constructs a demand strategy.
+   *
+   * @param increasePerBooking the increase of the factor for each booking per
+   *                           hour
+   * @param maxFactor          the highest factor applied
+   */
+  public BookingRateDemand(double increasePerBooking, double maxFactor) {
+    this.increasePerBooking = increasePerBooking;
+    this.maxFactor = maxFactor;
+  }
+
+  @Override
+  public double factor(PricingContext context) {
+    return Math.min(maxFactor, 1.0 + increasePerBooking * context.getBookingsPerHour());
+  }
+}
@@ -0,0 +1,40 @@
+package services.pricing;
+
+/**
+ * A piecewise linear function given by points with ascending x values.
+ * Inputs outside the points are clamped to the first or last factor.
+ */
+class Curve {
+  private final double[] xs;
+  private final double[] factors;
+
+  Curve(double[] xs, double[] factors) {
+    if (xs.length == 0 || xs.length != factors.length) {
+      throw new IllegalArgumentException("A curve needs as many factors as points: " + xs.length + " != "
+          + factors.length);
+    }
+    for (int i = 1; i < xs.length; i++) {
+      if (!(xs[i] > xs[i - 1])) {
+        throw new IllegalArgumentException("Curve points must be ascending: " + xs[i - 1] + ", " + xs[i]);
+      }
+    }
+    this.xs = xs.clone();
+    this.factors = factors.clone();
+  }
+
+  double at(double x) {
+    if (!(x > xs[0])) {
+      return factors[0];
+    }
+    int last = xs.length - 1;
+    if (x >= xs[last]) {
+      return factors[last];
+    }
+    int i = 1;
+    while (xs[i] < x) {
+      i++;
+    }
+    double t = (x - xs[i - 1]) / (xs[i] - xs[i - 1]);
+    return factors[i - 1] + t * (factors[i] - factors[i - 1]);
+  }
+}
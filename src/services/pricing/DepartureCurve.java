@@ -0,0 +1,25 @@
+package services.pricing;
+
+/**
+ * Scales the price by the hours left until departure, interpolating linearly
+ * between the given points. Flights without a departure time are priced with
+ * the factor of the last point.
+ */
+public class DepartureCurve implements PricingStrategy {
+  private final Curve curve;
+
+  /**
+   * Constructs a departure curve.
+   *
+   * @param hours   the hours to departure of the points, ascending
+   * @param factors the factor at each point
+   */
+  public DepartureCurve(double[] hours, double[] factors) {
+    this.curve = new Curve(hours, factors);
+  }
+
+  @Override
+  public double factor(PricingContext context) {
+    return curve.at(context.getHoursToDeparture());
+  }
+}
@@ -0,0 +1,31 @@
+package services.pricing;
+
+/**
+ * Scales the price by how full the flight is, interpolating linearly between
+ * the given points. For example, occupancies {0.0, 0.5, 1.0} with factors
+ * {1.0, 1.1, 1.5} keep the base price on an empty flight and raise it by half
+ * on a full one.
+ */
+public class OccupancyCurve implements PricingStrategy {
+  private final Curve curve;
+
+  /**
+   * Constructs an occupancy curve.
+   *
+   * @param occupancies the occupancies of the points, ascending, from 0.0 to 1.0
+   * @param factors     the factor at each point
+   */
+  public OccupancyCurve(double[] occupancies, double[] factors) {
+    this.curve = new Curve(occupancies, factors);
+  }
+
+  @Override
+  public double factor(PricingContext context) {
+    return curve.at(context.getOccupancy());
+  }
+
+  @Override
+  public boolean isOccupancyOnly() {
+    return true;
+  }
+}
@@ -0,0 +1,73 @@
+package services.pricing;
+
+/**
+ * Represents the state of a flight that pricing strategies may look at.
+ */
+public class PricingContext {
+  private final int occupiedSeats;
+  private final int capacity;
+  private final double hoursToDeparture;
+  private final double bookingsPerHour;
+
+  /**
+   * Constructs a pricing context.
+   *
+   * @param occupiedSeats    the number of occupied seats
+   * @param capacity         the capacity of the flight
+   * @param hoursToDeparture the hours left until departure, or positive
+   *                         infinity if the departure time is unknown
+   * @param bookingsPerHour  the recent booking rate of the flight
+   */
+  public PricingContext(int occupiedSeats, int capacity, double hoursToDeparture, double bookingsPerHour) {
+    this.occupiedSeats = occupiedSeats;
+    this.capacity = capacity;
+    this.hoursToDeparture = hoursToDeparture;
+    this.bookingsPerHour = bookingsPerHour;
+  }
+
+  /**
+   * Gets the number of occupied seats.
+   *
+   * @return the number of occupied seats
+   */
+  public int getOccupiedSeats() {
+    return occupiedSeats;
+  }
+
+  /**
+   * Gets the capacity of the flight.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Gets the fraction of seats that are occupied.
+   *
+   * @return the occupancy, from 0.0 to 1.0
+   */
+  public double getOccupancy() {
+    return capacity == 0 ? 1.0 : (double) occupiedSeats / capacity;
+  }
+
+  /**
+   * Gets the hours left until departure.
+   *
+   * @return the hours to departure, or positive infinity if unknown
+   */
+  public double getHoursToDeparture() {
+    return hoursToDeparture;
+  }
+
+  /**
+   * Gets the recent booking rate of the flight, with older bookings weighing
+   * exponentially less.
+   *
+   * @return the bookings per hour
+   */
+  public double getBookingsPerHour() {
+    return bookingsPerHour;
+  }
+}
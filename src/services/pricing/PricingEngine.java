@@ -0,0 +1,303 @@
+package services.pricing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import models.FlightPricer;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * Prices the flights of a flight graph with a set of pluggable strategies.
+ * Occupancy-only strategies are compiled into a table of prices indexed by
+ * occupied seats, shared by flights with the same base price and capacity.
+ * The remaining strategies are combined into a single factor per flight that
+ * is recomputed when the flight is booked or when {@link #refresh()} is
+ * called, so a price lookup is one table read and one multiplication.
+ */
+public class PricingEngine implements GraphListener<Flight>, FlightListener {
+  private static final LongAdder TABLES_COMPILED = Metrics.counter("pricing.tables.compiled");
+  private static final long MILLIS_PER_HOUR = 3_600_000L;
+  private static final long NO_DEPARTURE = Long.MIN_VALUE;
+
+  private final LongSupplier clock;
+  private final double demandMeanLifetimeHours;
+  private final Map<Flight, FarePlan> plans;
+  private final Map<Long, int[]> tables;
+  private List<PricingStrategy> occupancyStrategies;
+  private List<PricingStrategy> dynamicStrategies;
+
+  /**
+   * Constructs a pricing engine that uses the system clock and weighs
+   * bookings with a half-life of one hour.
+   *
+   * @param strategies the strategies to price with
+   */
+  public PricingEngine(List<PricingStrategy> strategies) {
+    this(strategies, System::currentTimeMillis, 1.0);
+  }
+
+  /**
+   * Constructs a pricing engine.
+   *
+   * @param strategies          the strategies to price with
+   * @param clock               the source of the current time in milliseconds
+   * @param demandHalfLifeHours the age in hours at which a booking counts half
+   *                            towards the booking rate
+   */
+  public PricingEngine(List<PricingStrategy> strategies, LongSupplier clock, double demandHalfLifeHours) {
+    this.clock = clock;
+    this.demandMeanLifetimeHours = demandHalfLifeHours / Math.log(2);
+    this.plans = new HashMap<>();
+    this.tables = new HashMap<>();
+    split(strategies);
+  }
+
+  /**
+   * Starts pricing the flights of a graph.
+   * Flights already in the graph are priced immediately and flights added
+   * later are picked up through listeners. Removed flights go back to their
+   * built-in discounts.
+   *
+   * @param flightGraph the graph to price
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::onVertexAdded);
+  }
+
+  /**
+   * Stops pricing the flights of a graph, restoring their built-in discounts.
+   *
+   * @param flightGraph the graph to stop pricing
+   */
+  public void detach(Graph<Flight> flightGraph) {
+    flightGraph.removeListener(this);
+    onCleared();
+  }
+
+  /**
+   * Replaces the strategies of the engine and reprices every flight.
+   *
+   * @param strategies the new strategies
+   */
+  public void setStrategies(List<PricingStrategy> strategies) {
+    split(strategies);
+    tables.clear();
+    long now = clock.getAsLong();
+    for (FarePlan plan : plans.values()) {
+      plan.table = table(plan.flight);
+      plan.updateFactor(now);
+      plan.flight.priceChanged();
+    }
+  }
+
+  /**
+   * Sets the departure time of a flight, used by strategies that depend on the
+   * time to departure.
+   *
+   * @param flight          the flight
+   * @param departureMillis the departure time in milliseconds since the epoch
+   */
+  public void setDepartureTime(Flight flight, long departureMillis) {
+    FarePlan plan = plans.get(flight);
+    if (plan == null) {
+      return;
+    }
+    plan.departureMillis = departureMillis;
+    updatePrice(plan, clock.getAsLong());
+  }
+
+  /**
+   * Recomputes the time-dependent factor of every flight, notifying the
+   * listeners of flights whose price changed. Meant to be called
+   * periodically, as the time to departure and the booking rates change even
+   * when nothing is booked.
+   */
+  public void refresh() {
+    if (dynamicStrategies.isEmpty()) {
+      return;
+    }
+    long now = clock.getAsLong();
+    for (FarePlan plan : plans.values()) {
+      updatePrice(plan, now);
+    }
+  }
+
+  /**
+   * Gets the recent booking rate of a flight.
+   *
+   * @param flight the flight
+   * @return the bookings per hour, or 0 if the flight is not priced by this
+   *         engine
+   */
+  public double getBookingsPerHour(Flight flight) {
+    FarePlan plan = plans.get(flight);
+    return plan == null ? 0.0 : plan.bookingsPerHour(clock.getAsLong());
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    if (plans.containsKey(flight)) {
+      return;
+    }
+    FarePlan plan = new FarePlan(flight);
+    plan.table = table(flight);
+    plan.updateFactor(clock.getAsLong());
+    plans.put(flight, plan);
+    flight.addListener(this);
+    flight.setPricer(plan);
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    FarePlan plan = plans.remove(flight);
+    if (plan != null) {
+      flight.removeListener(this);
+      flight.setPricer(null);
+    }
+  }
+
+  @Override
+  public void onScheduleChanged(Flight flight) {
+    FarePlan plan = plans.get(flight);
+    if (plan == null) {
+      return;
+    }
+    plan.table = table(flight);
+    plan.updateFactor(clock.getAsLong());
+    // Listeners notified before this one saw the price of the old table
+    flight.priceChanged();
+  }
+
+  @Override
+  public void onCleared() {
+    for (FarePlan plan : plans.values()) {
+      plan.flight.removeListener(this);
+      plan.flight.setPricer(null);
+    }
+    plans.clear();
+    tables.clear();
+  }
+
+  @Override
+  public void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    FarePlan plan = plans.get(flight);
+    if (plan == null) {
+      return;
+    }
+    long now = clock.getAsLong();
+    plan.recordBooking(now);
+    if (!dynamicStrategies.isEmpty()) {
+      plan.updateFactor(now);
+      flight.priceChanged();
+    }
+  }
+
+  private void split(List<PricingStrategy> strategies) {
+    List<PricingStrategy> occupancy = new ArrayList<>();
+    List<PricingStrategy> dynamic = new ArrayList<>();
+    for (PricingStrategy strategy : strategies) {
+      (strategy.isOccupancyOnly() ? occupancy : dynamic).add(strategy);
+    }
+    this.occupancyStrategies = occupancy;
+    this.dynamicStrategies = dynamic;
+  }
+
+  private void updatePrice(FarePlan plan, long now) {
+    int oldPrice = plan.priceOf(plan.flight);
+    plan.updateFactor(now);
+    if (plan.priceOf(plan.flight) != oldPrice) {
+      plan.flight.priceChanged();
+    }
+  }
+
+  /**
+   * Gets the table of prices by occupied seats for a flight, compiling it the
+   * first time a base price and capacity pair is seen.
+   */
+  private int[] table(Flight flight) {
+    int basePrice = flight.getDefaultPrice();
+    int capacity = Math.max(flight.getCapacity(), 0);
+    long key = ((long) basePrice << 32) | capacity;
+    int[] table = tables.get(key);
+    if (table == null) {
+      table = new int[capacity + 1];
+      for (int seats = 0; seats <= capacity; seats++) {
+        PricingContext context = new PricingContext(seats, capacity, Double.POSITIVE_INFINITY, 0.0);
+        double factor = 1.0;
+        for (PricingStrategy strategy : occupancyStrategies) {
+          factor *= strategy.factor(context);
+        }
+        table[seats] = (int) Math.round(basePrice * factor);
+      }
+      tables.put(key, table);
+      TABLES_COMPILED.increment();
+    }
+    return table;
+  }
+
+  /**
+   * The pricing state of one flight, installed as the flight's pricer.
+   */
+  private class FarePlan implements FlightPricer {
+    final Flight flight;
+    int[] table;
+    double factor = 1.0;
+    long departureMillis = NO_DEPARTURE;
+    double weightedBookings;
+    long lastBookingMillis;
+
+    FarePlan(Flight flight) {
+      this.flight = flight;
+    }
+
+    @Override
+    public int priceOf(Flight flight) {
+      int[] prices = table;
+      int price = prices[Math.min(flight.getOccupiedSeats(), prices.length - 1)];
+      return factor == 1.0 ? price : (int) Math.round(price * factor);
+    }
+
+    void recordBooking(long now) {
+      weightedBookings = decayedBookings(now) + 1.0;
+      lastBookingMillis = now;
+    }
+
+    double bookingsPerHour(long now) {
+      return decayedBookings(now) / demandMeanLifetimeHours;
+    }
+
+    void updateFactor(long now) {
+      if (dynamicStrategies.isEmpty()) {
+        factor = 1.0;
+        return;
+      }
+      double hoursToDeparture = departureMillis == NO_DEPARTURE ? Double.POSITIVE_INFINITY
+          : (double) (departureMillis - now) / MILLIS_PER_HOUR;
+      PricingContext context = new PricingContext(flight.getOccupiedSeats(), flight.getCapacity(),
+          hoursToDeparture, bookingsPerHour(now));
+      double product = 1.0;
+      for (PricingStrategy strategy : dynamicStrategies) {
+        product *= strategy.factor(context);
+      }
+      factor = product;
+    }
+
+    private double decayedBookings(long now) {
+      if (weightedBookings == 0.0) {
+        return 0.0;
+      }
+      double ageHours = (double) (now - lastBookingMillis) / MILLIS_PER_HOUR;
+      return weightedBookings * Math.exp(-ageHours / demandMeanLifetimeHours);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package services.pricing;
+
+/**
+ * A rule that scales the base price of a flight.
+ * The pricing engine multiplies the factors of all its strategies together.
+ * Strategies that only look at the occupied seats and capacity should say so
+ * through {@link #isOccupancyOnly()}, so the engine can compile them into a
+ * lookup table per flight instead of evaluating them on every price lookup.
+ */
+public interface PricingStrategy {
+  /**
+   * Computes the factor applied to the base price.
+   *
+   * @param context the state of the flight being priced
+   * @return the factor, where 1.0 leaves the price unchanged
+   */
+  double factor(PricingContext context);
+
+  /**
+   * Determines whether the factor depends only on the occupied seats and
+   * capacity of the flight.
+   *
+   * @return true if the strategy can be precompiled, false otherwise
+   */
+  default boolean isOccupancyOnly() {
+    return false;
+  }
+}
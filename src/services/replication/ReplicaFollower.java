@@ -0,0 +1,467 @@
+package services.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import models.CrewMember;
+import models.Flight;
+import services.CityGraph;
+import services.CrewIndex;
+import services.FlightIndex;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.structures.AVLTree;
+import shared.structures.Graph;
+
+/**
+ * A read-only copy of a flight graph kept up to date from a
+ * {@link ReplicationLeader}, serving route, price and crew queries so they
+ * do not load the leader.
+ * Records are applied in batches under a write lock and queries run under a
+ * read lock, so a query sees either all of a batch or none of it. A snapshot
+ * is loaded into a fresh copy on the side and swapped in once complete, so
+ * queries keep being answered from the old copy while it loads. After a lost
+ * connection the follower reconnects with the run id of its leader and the
+ * last sequence number it applied and resumes from the leader's log, or
+ * loads a snapshot if the leader has restarted since. A record that cannot be
+ * applied leaves the copy in doubt, so the follower counts the failure,
+ * reconnects without state and answers from the old copy until the snapshot
+ * replaces it.
+ * Prices are computed by the flights' built-in discounts; a pricing engine
+ * attached to the leader is not replicated.
+ */
+public class ReplicaFollower implements AutoCloseable {
+  private static final LongAdder RECORDS_APPLIED = Metrics.counter("replication.records.applied");
+  private static final LatencyHistogram LAG_MILLIS = Metrics.histogram("replication.lag.ms");
+  private static final LatencyHistogram SNAPSHOT_NANOS = Metrics.histogram("replication.snapshot.ns");
+  private static final LongAdder FAILURES = Metrics.counter("replication.follower.failures");
+  private static final long RECONNECT_MILLIS = 200;
+
+  private final InetSocketAddress leader;
+  private final ReadWriteLock lock;
+  private Replica replica;
+  private volatile long leaderRunId;
+  private volatile long appliedSequence;
+  private volatile long leaderSequence;
+  private volatile long lagMillis;
+  private volatile boolean closed;
+  private volatile Socket socket;
+
+  /**
+   * Constructs a follower of a leader. Nothing is replicated until
+   * {@link #start()} is called.
+   *
+   * @param leader the address of the leader
+   */
+  public ReplicaFollower(InetSocketAddress leader) {
+    this.leader = leader;
+    this.lock = new ReentrantReadWriteLock();
+    this.replica = new Replica().attachIndexes();
+    this.appliedSequence = -1;
+  }
+
+  /**
+   * Starts replicating on a background thread, reconnecting whenever the
+   * connection to the leader is lost. The lag of the follower is published as
+   * gauges, replacing those of a follower started earlier in the same JVM.
+   */
+  public void start() {
+    Metrics.gauge("replication.follower.lag.records", this::getLagRecords);
+    Metrics.gauge("replication.follower.lag.ms", this::getLagMillis);
+    Thread thread = new Thread(() -> {
+      while (!closed) {
+        try {
+          follow();
+        } catch (IOException e) {
+          // Reconnect below
+        } catch (RuntimeException e) {
+          // A record did not match the copy, so start over from a snapshot
+          FAILURES.increment();
+          resync();
+        }
+        if (!closed) {
+          try {
+            Thread.sleep(RECONNECT_MILLIS);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }
+    }, "replica-follower");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Waits until the follower has applied a sequence number.
+   *
+   * @param sequence      the sequence number
+   * @param timeoutMillis the longest time to wait, in milliseconds
+   * @return true if the sequence number was applied in time
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (appliedSequence < sequence) {
+      if (System.currentTimeMillis() >= deadline) {
+        return false;
+      }
+      Thread.sleep(1);
+    }
+    return true;
+  }
+
+  /**
+   * Gets the sequence number of the last record applied.
+   *
+   * @return the sequence number, or -1 before the first snapshot and after a
+   *         record failed to apply until the next one
+   */
+  public long getAppliedSequence() {
+    return appliedSequence;
+  }
+
+  /**
+   * Gets the number of records the leader has logged that this follower has
+   * not applied yet, as of the last batch or heartbeat received.
+   *
+   * @return the lag in records
+   */
+  public long getLagRecords() {
+    return Math.max(leaderSequence - appliedSequence, 0);
+  }
+
+  /**
+   * Gets the time from the leader logging the newest record of the last
+   * batch to this follower applying it. Heartbeats reset it to 0 once the
+   * follower has caught up.
+   *
+   * @return the lag in milliseconds
+   */
+  public long getLagMillis() {
+    return lagMillis;
+  }
+
+  /**
+   * Finds the cheapest sequence of flights between two cities on the replica.
+   *
+   * @param origin      the origin city
+   * @param destination the destination city
+   * @return the flights in travel order, or an empty list if the destination
+   *         cannot be reached
+   * @see CityGraph#findCheapestRoute(String, String)
+   */
+  public List<Flight> findCheapestRoute(String origin, String destination) {
+    lock.readLock().lock();
+    try {
+      return replica.cityGraph.findCheapestRoute(origin, destination);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the current price of a flight on the replica.
+   *
+   * @param origin      the origin city of the flight
+   * @param destination the destination city of the flight
+   * @return the price, or -1 if there is no such flight
+   */
+  public int getPrice(String origin, String destination) {
+    lock.readLock().lock();
+    try {
+      Flight flight = replica.flightIndex.find(origin, destination);
+      return flight == null ? -1 : flight.calculatePrice();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of seats occupied on a flight on the replica.
+   *
+   * @param origin      the origin city of the flight
+   * @param destination the destination city of the flight
+   * @return the occupied seats, or -1 if there is no such flight
+   */
+  public int getOccupiedSeats(String origin, String destination) {
+    lock.readLock().lock();
+    try {
+      Flight flight = replica.flightIndex.find(origin, destination);
+      return flight == null ? -1 : flight.getOccupiedSeats();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the crew members whose names start with a prefix on the replica.
+   *
+   * @param prefix the start of the names
+   * @return the matching names, in alphabetical order, with their assignments
+   * @see CrewIndex#findByPrefix(String)
+   */
+  public Map<String, List<CrewIndex.Assignment>> findCrew(String prefix) {
+    lock.readLock().lock();
+    try {
+      // Assignment lists change as records are applied
+      Map<String, List<CrewIndex.Assignment>> matches = new LinkedHashMap<>();
+      replica.crewIndex.findByPrefix(prefix).forEach((name, assignments) -> matches.put(name,
+          Collections.unmodifiableList(new ArrayList<>(assignments))));
+      return matches;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the number of flights on the replica.
+   *
+   * @return the number of flights
+   */
+  public int flightCount() {
+    lock.readLock().lock();
+    try {
+      return replica.cityGraph.flightCount();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stops replicating. Queries keep being answered from the last state.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Socket s = socket;
+    if (s != null) {
+      try {
+        s.close();
+      } catch (IOException e) {
+        // Nothing left to release
+      }
+    }
+  }
+
+  private void follow() throws IOException {
+    try (Socket s = new Socket()) {
+      s.setTcpNoDelay(true);
+      s.connect(leader);
+      socket = s;
+      if (closed) {
+        return;
+      }
+      DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+      out.writeLong(leaderRunId);
+      out.writeLong(appliedSequence);
+      out.flush();
+
+      while (!closed) {
+        int frame = in.readUnsignedByte();
+        switch (frame) {
+          case ReplicationProtocol.SNAPSHOT:
+            loadSnapshot(in);
+            break;
+          case ReplicationProtocol.RECORDS:
+            applyRecords(in);
+            break;
+          default:
+            throw new IOException("Unexpected frame " + frame);
+        }
+      }
+    } finally {
+      socket = null;
+    }
+  }
+
+  private void resync() {
+    lock.writeLock().lock();
+    try {
+      leaderRunId = 0;
+      appliedSequence = -1;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void loadSnapshot(DataInputStream in) throws IOException {
+    long start = System.nanoTime();
+    long runId = in.readLong();
+    long at = in.readLong();
+    Replica loading = new Replica();
+    while (true) {
+      int frame = in.readUnsignedByte();
+      if (frame == ReplicationProtocol.SNAPSHOT_END) {
+        break;
+      }
+      switch (frame) {
+        case ReplicationProtocol.SNAPSHOT_FLIGHTS:
+          for (int count = in.readInt(); count > 0; count--) {
+            Flight flight = loading.define(in);
+            if (in.readBoolean()) {
+              loading.graph.addVertex(flight);
+            }
+          }
+          break;
+        case ReplicationProtocol.SNAPSHOT_CREW:
+          Flight flight = loading.flights.get(in.readInt());
+          for (int count = in.readInt(); count > 0; count--) {
+            flight.addCrewMember(new CrewMember(in.readUTF(), in.readInt()));
+          }
+          break;
+        case ReplicationProtocol.SNAPSHOT_CONNECTIONS:
+          for (int count = in.readInt(); count > 0; count--) {
+            loading.graph.addEdge(loading.flights.get(in.readInt()), loading.flights.get(in.readInt()), in.readInt());
+          }
+          break;
+        default:
+          throw new IOException("Unexpected snapshot frame " + frame);
+      }
+    }
+
+    loading.attachIndexes();
+    lock.writeLock().lock();
+    try {
+      replica = loading;
+      leaderRunId = runId;
+      appliedSequence = at;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    SNAPSHOT_NANOS.recordSince(start);
+  }
+
+  private void applyRecords(DataInputStream in) throws IOException {
+    long latest = in.readLong();
+    long newestMillis = in.readLong();
+    int count = in.readInt();
+    leaderSequence = latest;
+    if (count == 0) {
+      if (appliedSequence >= latest) {
+        lagMillis = 0;
+      }
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < count; i++) {
+        replica.apply(in);
+      }
+      appliedSequence += count;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    RECORDS_APPLIED.add(count);
+    lagMillis = Math.max(System.currentTimeMillis() - newestMillis, 0);
+    LAG_MILLIS.record(lagMillis);
+  }
+
+  /**
+   * A copy of the flight graph with the indexes queries run on, and the
+   * flights by the ids the leader gave them.
+   */
+  private static class Replica {
+    final Graph<Flight> graph = new Graph<>();
+    final CityGraph cityGraph = new CityGraph();
+    final FlightIndex flightIndex = new FlightIndex();
+    final CrewIndex crewIndex = new CrewIndex();
+    final Map<Integer, Flight> flights = new HashMap<>();
+
+    /**
+     * Starts maintaining the indexes. A snapshot is loaded before, so each
+     * index is built once from the whole graph instead of one record at a
+     * time.
+     */
+    Replica attachIndexes() {
+      cityGraph.attach(graph);
+      flightIndex.attach(graph);
+      crewIndex.attach(graph);
+      return this;
+    }
+
+    /**
+     * Reads a flight and gets the replica's flight with its id, creating it
+     * the first time.
+     */
+    Flight define(DataInputStream in) throws IOException {
+      int id = in.readInt();
+      String origin = in.readUTF();
+      String destination = in.readUTF();
+      int defaultPrice = in.readInt();
+      int capacity = in.readInt();
+      int base = in.readInt();
+      Flight flight = flights.get(id);
+      if (flight == null) {
+        flight = new Flight(origin, destination, defaultPrice, capacity, base, AVLTree::new);
+        flights.put(id, flight);
+      }
+      return flight;
+    }
+
+    void apply(DataInputStream in) throws IOException {
+      int type = in.readUnsignedByte();
+      switch (type) {
+        case ReplicationProtocol.ADD_FLIGHT:
+          graph.addVertex(define(in));
+          break;
+        case ReplicationProtocol.DEFINE_FLIGHT:
+          define(in);
+          break;
+        case ReplicationProtocol.REMOVE_FLIGHT: {
+          Flight flight = flights.remove(in.readInt());
+          if (flight != null) {
+            graph.removeVertex(flight);
+          }
+          break;
+        }
+        case ReplicationProtocol.ADD_CONNECTION:
+          graph.addEdge(flights.get(in.readInt()), flights.get(in.readInt()), in.readInt());
+          break;
+        case ReplicationProtocol.REMOVE_CONNECTION:
+          graph.removeEdge(flights.get(in.readInt()), flights.get(in.readInt()));
+          break;
+        case ReplicationProtocol.ADD_CREW: {
+          Flight flight = flights.get(in.readInt());
+          int occupiedSeats = in.readInt();
+          CrewMember crewMember = new CrewMember(in.readUTF(), in.readInt());
+          // Already included by the snapshot this follower started from
+          if (flight.getOccupiedSeats() < occupiedSeats) {
+            flight.addCrewMember(crewMember);
+          }
+          break;
+        }
+        case ReplicationProtocol.RESCHEDULE: {
+          Flight flight = flights.get(in.readInt());
+          int defaultPrice = in.readInt();
+          int capacity = in.readInt();
+          if (flight.getDefaultPrice() != defaultPrice || flight.getCapacity() != capacity) {
+            flight.reschedule(defaultPrice, Math.max(capacity, flight.getOccupiedSeats()));
+          }
+          break;
+        }
+        case ReplicationProtocol.CLEAR:
+          graph.clear();
+          flights.clear();
+          break;
+        default:
+          throw new IOException("Unknown record " + type);
+      }
+    }
+  }
+}
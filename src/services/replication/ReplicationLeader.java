@@ -0,0 +1,515 @@
+package services.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import models.CrewMember;
+import models.Flight;
+import models.FlightListener;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
+import shared.structures.GraphListener;
+
+/**
+ * Ships the mutations of a flight graph to {@link ReplicaFollower}s over
+ * loopback sockets. Every added or removed flight and connection, booked
+ * crew member and rescheduled flight is encoded once into a compact record
+ * with a sequence number and kept in a ring of recent records, which each
+ * follower connection streams in batches.
+ * A follower that connects without state, or that has fallen further behind
+ * than the ring reaches, first receives a snapshot of the whole graph in
+ * batches, taken at a sequence number, and then the records after it. So
+ * does a follower whose state came from another leader, or from this one
+ * before a restart, told apart by a run id picked when the leader starts.
+ * The leader keeps the ids and connections of the flights so snapshots do
+ * not read the graph while it changes; crew trees are read under each
+ * flight's lock. Attaching loads the crew of lazily loaded flights.
+ */
+public class ReplicationLeader implements GraphListener<Flight>, FlightListener, AutoCloseable {
+  private static final LongAdder RECORDS_LOGGED = Metrics.counter("replication.records");
+  private static final LongAdder SNAPSHOTS_SENT = Metrics.counter("replication.snapshots");
+  private static final int DEFAULT_LOG_SIZE = 1 << 16;
+  private static final int MAX_BATCH = 4096;
+  private static final int SNAPSHOT_BATCH = 1024;
+  private static final long HEARTBEAT_MILLIS = 200;
+
+  private final ServerSocket server;
+  private final long runId;
+  private final byte[][] log;
+  private final long[] loggedMillis;
+  private final int mask;
+  private final ByteArrayOutputStream buffer;
+  private final DataOutputStream record;
+  private final Map<Flight, Integer> ids;
+  private final List<Flight> flights;
+  private final BitSet vertices;
+  private final Map<Integer, Map<Integer, Integer>> connections;
+  private long sequence;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a leader that keeps the last 65536 records, listening on a
+   * loopback port.
+   *
+   * @param port the port, or 0 for any free port
+   * @throws IOException if the port cannot be bound
+   */
+  public ReplicationLeader(int port) throws IOException {
+    this(port, DEFAULT_LOG_SIZE);
+  }
+
+  /**
+   * Constructs a leader listening on a loopback port.
+   *
+   * @param port    the port, or 0 for any free port
+   * @param logSize the number of recent records kept for followers that
+   *                reconnect, rounded up to a power of two
+   * @throws IOException if the port cannot be bound
+   */
+  public ReplicationLeader(int port, int logSize) throws IOException {
+    if (logSize < 1) {
+      throw new IllegalArgumentException("Log size must be positive");
+    }
+    int size = Integer.highestOneBit(Math.max(logSize - 1, 1)) << 1;
+    this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.runId = ThreadLocalRandom.current().nextLong();
+    this.log = new byte[size][];
+    this.loggedMillis = new long[size];
+    this.mask = size - 1;
+    this.buffer = new ByteArrayOutputStream();
+    this.record = new DataOutputStream(buffer);
+    this.ids = new HashMap<>();
+    this.flights = new ArrayList<>();
+    this.vertices = new BitSet();
+    this.connections = new HashMap<>();
+  }
+
+  /**
+   * Starts shipping the mutations of a flight graph.
+   * Flights and connections already in the graph are logged immediately and
+   * later changes are picked up through listeners.
+   *
+   * @param flightGraph the graph to replicate
+   */
+  public void attach(Graph<Flight> flightGraph) {
+    flightGraph.addListener(this);
+    flightGraph.getVertices().keySet().forEach(this::onVertexAdded);
+    flightGraph.getVertices().forEach((from, neighbors) -> neighbors.forEach((to, cost) -> onEdgeAdded(from, to, cost)));
+  }
+
+  /**
+   * Starts accepting followers on a background thread.
+   */
+  public void start() {
+    Thread acceptor = new Thread(() -> {
+      while (!server.isClosed()) {
+        try {
+          Socket socket = server.accept();
+          Thread sender = new Thread(() -> serve(socket), "replication-sender");
+          sender.setDaemon(true);
+          sender.start();
+        } catch (IOException e) {
+          // The server socket was closed
+        }
+      }
+    }, "replication-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * Gets the port the leader listens on.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  /**
+   * Gets the sequence number of the latest record.
+   *
+   * @return the sequence number, 0 before the first record
+   */
+  public synchronized long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Stops accepting followers and ends the connections of current ones.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Nothing left to release
+    }
+    synchronized (this) {
+      notifyAll();
+    }
+  }
+
+  @Override
+  public void onVertexAdded(Flight flight) {
+    flight.addListener(this);
+    synchronized (flight) {
+      List<CrewMember> crew = crewOf(flight, true);
+      int base = flight.getOccupiedSeats() - crew.size();
+      synchronized (this) {
+        Integer id = ids.get(flight);
+        if (id == null) {
+          id = register(flight);
+        }
+        vertices.set(id);
+        append(ReplicationProtocol.ADD_FLIGHT, id, flight, base);
+        for (int i = 0; i < crew.size(); i++) {
+          appendCrew(id, base + i + 1, crew.get(i));
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void onEdgeAdded(Flight from, Flight to, int cost) {
+    int source = idOf(from);
+    int target = idOf(to);
+    connections.computeIfAbsent(source, k -> new HashMap<>()).put(target, cost);
+    try {
+      record.writeByte(ReplicationProtocol.ADD_CONNECTION);
+      record.writeInt(source);
+      record.writeInt(target);
+      record.writeInt(cost);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    commit();
+  }
+
+  @Override
+  public synchronized void onEdgeRemoved(Flight from, Flight to) {
+    Integer source = ids.get(from);
+    Integer target = ids.get(to);
+    if (source == null || target == null) {
+      return;
+    }
+    Map<Integer, Integer> neighbors = connections.get(source);
+    if (neighbors != null) {
+      neighbors.remove(target);
+    }
+    try {
+      record.writeByte(ReplicationProtocol.REMOVE_CONNECTION);
+      record.writeInt(source);
+      record.writeInt(target);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    commit();
+  }
+
+  @Override
+  public void onVertexRemoved(Flight flight) {
+    flight.removeListener(this);
+    synchronized (this) {
+      Integer id = ids.remove(flight);
+      if (id == null) {
+        return;
+      }
+      flights.set(id, null);
+      vertices.clear(id);
+      connections.remove(id);
+      try {
+        record.writeByte(ReplicationProtocol.REMOVE_FLIGHT);
+        record.writeInt(id);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      commit();
+    }
+  }
+
+  @Override
+  public synchronized void onCleared() {
+    for (Flight flight : flights) {
+      if (flight != null) {
+        flight.removeListener(this);
+      }
+    }
+    ids.clear();
+    flights.clear();
+    vertices.clear();
+    connections.clear();
+    try {
+      record.writeByte(ReplicationProtocol.CLEAR);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    commit();
+  }
+
+  @Override
+  public void onCrewMemberAdded(Flight flight, CrewMember crewMember) {
+    synchronized (this) {
+      Integer id = ids.get(flight);
+      if (id != null) {
+        appendCrew(id, flight.getOccupiedSeats(), crewMember);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void onScheduleChanged(Flight flight) {
+    Integer id = ids.get(flight);
+    if (id == null) {
+      return;
+    }
+    try {
+      record.writeByte(ReplicationProtocol.RESCHEDULE);
+      record.writeInt(id);
+      record.writeInt(flight.getDefaultPrice());
+      record.writeInt(flight.getCapacity());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    commit();
+  }
+
+  /**
+   * Gets the id of a flight, defining it for the followers the first time it
+   * is seen. Must be called holding the leader's lock.
+   */
+  private int idOf(Flight flight) {
+    Integer id = ids.get(flight);
+    if (id == null) {
+      id = register(flight);
+      append(ReplicationProtocol.DEFINE_FLIGHT, id, flight, flight.getOccupiedSeats());
+    }
+    return id;
+  }
+
+  private int register(Flight flight) {
+    int id = flights.size();
+    ids.put(flight, id);
+    flights.add(flight);
+    return id;
+  }
+
+  private void append(int type, int id, Flight flight, int base) {
+    try {
+      record.writeByte(type);
+      writeFlight(record, id, flight, base);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    commit();
+  }
+
+  private void appendCrew(int id, int occupiedSeats, CrewMember crewMember) {
+    try {
+      record.writeByte(ReplicationProtocol.ADD_CREW);
+      record.writeInt(id);
+      record.writeInt(occupiedSeats);
+      record.writeUTF(crewMember.getName());
+      record.writeInt(crewMember.value);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    commit();
+  }
+
+  /**
+   * Moves the encoded record into the ring and wakes the senders. Must be
+   * called holding the leader's lock.
+   */
+  private void commit() {
+    sequence++;
+    int slot = (int) (sequence & mask);
+    log[slot] = buffer.toByteArray();
+    loggedMillis[slot] = System.currentTimeMillis();
+    buffer.reset();
+    RECORDS_LOGGED.increment();
+    notifyAll();
+  }
+
+  private long firstRetained() {
+    return Math.max(sequence - mask, 1);
+  }
+
+  private static void writeFlight(DataOutputStream out, int id, Flight flight, int base) throws IOException {
+    out.writeInt(id);
+    out.writeUTF(flight.getOrigin());
+    out.writeUTF(flight.getDestination());
+    out.writeInt(flight.getDefaultPrice());
+    out.writeInt(flight.getCapacity());
+    out.writeInt(base);
+  }
+
+  /**
+   * Gets the crew members of a flight in seat order. Must be called holding
+   * the flight's lock.
+   */
+  private static List<CrewMember> crewOf(Flight flight, boolean load) {
+    List<CrewMember> crew = new ArrayList<>();
+    if (load || flight.isCrewLoaded()) {
+      flight.getCrewTree().forEach(crew::add);
+    }
+    return crew;
+  }
+
+  private void serve(Socket socket) {
+    try (Socket s = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+      s.setTcpNoDelay(true);
+      long followerRunId = in.readLong();
+      long applied = in.readLong();
+      long next;
+      synchronized (this) {
+        // Sequence numbers of another run may be in range but name other records
+        next = followerRunId == runId && applied >= 0 && applied <= sequence && applied + 1 >= firstRetained()
+            ? applied + 1 : -1;
+      }
+
+      List<byte[]> batch = new ArrayList<>();
+      while (!closed) {
+        if (next < 0) {
+          next = sendSnapshot(out) + 1;
+        }
+        long latest;
+        long newestMillis;
+        synchronized (this) {
+          if (sequence < next && !closed) {
+            wait(HEARTBEAT_MILLIS);
+          }
+          if (next < firstRetained()) {
+            // The follower was lapped by the ring
+            next = -1;
+            continue;
+          }
+          latest = sequence;
+          int count = (int) Math.min(latest - next + 1, MAX_BATCH);
+          for (int i = 0; i < count; i++) {
+            batch.add(log[(int) ((next + i) & mask)]);
+          }
+          newestMillis = count > 0 ? loggedMillis[(int) ((next + count - 1) & mask)] : System.currentTimeMillis();
+        }
+
+        out.writeByte(ReplicationProtocol.RECORDS);
+        out.writeLong(latest);
+        out.writeLong(newestMillis);
+        out.writeInt(batch.size());
+        for (byte[] bytes : batch) {
+          out.write(bytes);
+        }
+        out.flush();
+        next += batch.size();
+        batch.clear();
+      }
+    } catch (IOException e) {
+      // The follower went away; it reconnects with its run id and sequence number
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Sends the flights, crew and connections as of the latest record, in
+   * batches.
+   *
+   * @return the sequence number the snapshot was taken at
+   */
+  private long sendSnapshot(DataOutputStream out) throws IOException {
+    long at;
+    List<Flight> snapshotFlights;
+    BitSet snapshotVertices;
+    List<int[]> snapshotConnections = new ArrayList<>();
+    synchronized (this) {
+      at = sequence;
+      snapshotFlights = new ArrayList<>(flights);
+      snapshotVertices = (BitSet) vertices.clone();
+      connections.forEach((from, neighbors) -> neighbors
+          .forEach((to, cost) -> snapshotConnections.add(new int[] { from, to, cost })));
+    }
+
+    out.writeByte(ReplicationProtocol.SNAPSHOT);
+    out.writeLong(runId);
+    out.writeLong(at);
+    List<Integer> batchIds = new ArrayList<>();
+    for (int id = 0; id <= snapshotFlights.size(); id++) {
+      if (id < snapshotFlights.size() && snapshotFlights.get(id) != null) {
+        batchIds.add(id);
+      }
+      if (batchIds.size() == SNAPSHOT_BATCH || (id == snapshotFlights.size() && !batchIds.isEmpty())) {
+        writeFlights(out, batchIds, snapshotFlights, snapshotVertices);
+        batchIds.clear();
+      }
+    }
+    for (int i = 0; i < snapshotConnections.size(); i += SNAPSHOT_BATCH) {
+      int count = Math.min(SNAPSHOT_BATCH, snapshotConnections.size() - i);
+      out.writeByte(ReplicationProtocol.SNAPSHOT_CONNECTIONS);
+      out.writeInt(count);
+      for (int[] connection : snapshotConnections.subList(i, i + count)) {
+        out.writeInt(connection[0]);
+        out.writeInt(connection[1]);
+        out.writeInt(connection[2]);
+      }
+    }
+    out.writeByte(ReplicationProtocol.SNAPSHOT_END);
+    out.flush();
+    SNAPSHOTS_SENT.increment();
+    return at;
+  }
+
+  /**
+   * Writes a batch of flights followed by their crews. The crews may include
+   * bookings logged after the snapshot, which the follower skips when their
+   * records arrive.
+   */
+  private static void writeFlights(DataOutputStream out, List<Integer> batchIds, List<Flight> snapshotFlights,
+      BitSet snapshotVertices) throws IOException {
+    List<List<CrewMember>> crews = new ArrayList<>();
+    out.writeByte(ReplicationProtocol.SNAPSHOT_FLIGHTS);
+    out.writeInt(batchIds.size());
+    for (int id : batchIds) {
+      Flight flight = snapshotFlights.get(id);
+      List<CrewMember> crew;
+      int base;
+      synchronized (flight) {
+        crew = crewOf(flight, false);
+        base = flight.getOccupiedSeats() - crew.size();
+      }
+      crews.add(crew);
+      writeFlight(out, id, flight, base);
+      out.writeBoolean(snapshotVertices.get(id));
+    }
+    for (int i = 0; i < batchIds.size(); i++) {
+      List<CrewMember> crew = crews.get(i);
+      if (crew.isEmpty()) {
+        continue;
+      }
+      out.writeByte(ReplicationProtocol.SNAPSHOT_CREW);
+      out.writeInt(batchIds.get(i));
+      out.writeInt(crew.size());
+      for (CrewMember crewMember : crew) {
+        out.writeUTF(crewMember.getName());
+        out.writeInt(crewMember.value);
+      }
+    }
+  }
+}
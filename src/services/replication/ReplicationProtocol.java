@@ -0,0 +1,68 @@
+package services.replication;
+
+/**
+ * The frames and mutation records a {@link ReplicationLeader} sends to its
+ * {@link ReplicaFollower}s, written with {@link java.io.DataOutputStream}.
+ * A follower opens the connection by sending the run id of the leader its
+ * state came from and the last sequence number it applied, or 0 and -1 if it
+ * has no state. Every leader picks a random run id when it starts, so a
+ * sequence number is only meaningful to the leader that assigned it. The
+ * leader answers with a snapshot when the run id is not its own or the
+ * follower is too far behind for the log it keeps, then with batches of
+ * records, and with empty batches as heartbeats while nothing changes.
+ * Flights are referred to by ids the leader assigns when it first sees them.
+ */
+class ReplicationProtocol {
+  /** Starts a snapshot: the leader's run id and the sequence number it was taken at. */
+  static final int SNAPSHOT = 1;
+
+  /**
+   * A batch of snapshot flights: a count, then for each its id, origin,
+   * destination, base price, capacity, seats occupied without a crew member
+   * and whether it is a vertex of the graph.
+   */
+  static final int SNAPSHOT_FLIGHTS = 2;
+
+  /** The crew of a snapshot flight: its id, a count and each name and seat. */
+  static final int SNAPSHOT_CREW = 3;
+
+  /** A batch of snapshot connections: a count, then each from, to and cost. */
+  static final int SNAPSHOT_CONNECTIONS = 4;
+
+  /** Ends a snapshot. */
+  static final int SNAPSHOT_END = 5;
+
+  /**
+   * A batch of records: the leader's latest sequence number, the time its
+   * newest record in the batch was logged, a count and the records.
+   */
+  static final int RECORDS = 6;
+
+  /** A flight added to the graph, with the fields of a snapshot flight. */
+  static final int ADD_FLIGHT = 10;
+
+  /** A flight first seen as the target of a connection, not as a vertex. */
+  static final int DEFINE_FLIGHT = 11;
+
+  /** A flight removed from the graph: its id. */
+  static final int REMOVE_FLIGHT = 12;
+
+  /** A connection added or re-costed: from, to and cost. */
+  static final int ADD_CONNECTION = 13;
+
+  /** A connection removed: from and to. */
+  static final int REMOVE_CONNECTION = 14;
+
+  /**
+   * A crew member added: the flight id, its occupied seats after the
+   * booking, the name and the seat. The occupied seats make the record safe
+   * to apply on top of a snapshot that already includes it.
+   */
+  static final int ADD_CREW = 15;
+
+  /** A flight rescheduled: its id, base price and capacity. */
+  static final int RESCHEDULE = 16;
+
+  /** The graph was cleared. */
+  static final int CLEAR = 17;
+}
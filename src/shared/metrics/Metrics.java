@@ -0,0 +1,134 @@
+package shared.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms.
+ * Metrics are created on first use and live for the lifetime of the process.
+ * Hot paths should look their metrics up once, into static fields, and only
+ * touch the returned objects afterwards.
+ */
+public final class Metrics {
+  /**
+   * The JMX object name under which the registry is exposed.
+   */
+  public static final String OBJECT_NAME = "flightmanagement:type=Metrics";
+
+  private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+  private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+  private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+
+  private Metrics() {
+  }
+
+  /**
+   * Gets or creates a striped counter.
+   *
+   * @param name the name of the counter
+   * @return the counter registered under the name
+   */
+  public static LongAdder counter(String name) {
+    return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+  }
+
+  /**
+   * Gets or creates a latency histogram.
+   *
+   * @param name the name of the histogram
+   * @return the histogram registered under the name
+   */
+  public static LatencyHistogram histogram(String name) {
+    return HISTOGRAMS.computeIfAbsent(name, k -> new LatencyHistogram());
+  }
+
+  /**
+   * Registers a gauge whose value is read when the metrics are dumped.
+   * Registering a gauge under an existing name replaces it.
+   *
+   * @param name  the name of the gauge
+   * @param value the supplier of the gauge value
+   */
+  public static void gauge(String name, LongSupplier value) {
+    GAUGES.put(name, value);
+  }
+
+  /**
+   * Writes every metric in a line-oriented text format, sorted by name.
+   * Counters and gauges are written as {@code name value}; histograms are
+   * written as {@code name count=N mean=M p50=X p90=Y p99=Z max=W}.
+   *
+   * @param out the destination of the text
+   */
+  public static void dump(Appendable out) {
+    try {
+      for (Map.Entry<String, LongAdder> counter : COUNTERS.entrySet()) {
+        out.append(counter.getKey()).append(' ').append(Long.toString(counter.getValue().sum())).append('\n');
+      }
+      for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+        out.append(gauge.getKey()).append(' ').append(Long.toString(gauge.getValue().getAsLong())).append('\n');
+      }
+      for (Map.Entry<String, LatencyHistogram> entry : HISTOGRAMS.entrySet()) {
+        LatencyHistogram histogram = entry.getValue();
+        out.append(entry.getKey())
+            .append(" count=").append(Long.toString(histogram.getCount()))
+            .append(" mean=").append(Long.toString(Math.round(histogram.getMean())))
+            .append(" p50=").append(Long.toString(histogram.getPercentile(50)))
+            .append(" p90=").append(Long.toString(histogram.getPercentile(90)))
+            .append(" p99=").append(Long.toString(histogram.getPercentile(99)))
+            .append(" max=").append(Long.toString(histogram.getMax()))
+            .append('\n');
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Writes every metric in the text format of {@link #dump(Appendable)}.
+   *
+   * @return the metrics as text
+   */
+  public static String dump() {
+    StringBuilder text = new StringBuilder();
+    dump(text);
+    return text.toString();
+  }
+
+  /**
+   * Exposes the registry through the platform MBean server under
+   * {@link #OBJECT_NAME}. Calling this more than once has no effect.
+   */
+  public static synchronized void registerMBean() {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MetricsMBean(), name);
+      }
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not register metrics MBean", e);
+    }
+  }
+
+  static Map<String, LongAdder> counters() {
+    return COUNTERS;
+  }
+
+  static Map<String, LongSupplier> gauges() {
+    return GAUGES;
+  }
+
+  static Map<String, LatencyHistogram> histograms() {
+    return HISTOGRAMS;
+  }
+}
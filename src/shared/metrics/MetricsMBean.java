@@ -0,0 +1,94 @@
+package shared.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the {@link Metrics} registry over JMX.
+ * Every counter and gauge becomes a read-only long attribute, and every
+ * histogram contributes {@code .count}, {@code .p50}, {@code .p99} and
+ * {@code .max} attributes. The {@code dump} operation returns the text format.
+ * The attribute set is rebuilt on every request, so metrics created after
+ * registration show up automatically.
+ */
+class MetricsMBean implements DynamicMBean {
+
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    LongSupplier value = attributes().get(attribute);
+    if (value == null) {
+      throw new AttributeNotFoundException(attribute);
+    }
+    return value.getAsLong();
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] names) {
+    Map<String, LongSupplier> attributes = attributes();
+    AttributeList list = new AttributeList();
+    for (String name : names) {
+      LongSupplier value = attributes.get(name);
+      if (value != null) {
+        list.add(new Attribute(name, value.getAsLong()));
+      }
+    }
+    return list;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+    if ("dump".equals(actionName)) {
+      return Metrics.dump();
+    }
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    List<MBeanAttributeInfo> attributes = new ArrayList<>();
+    for (String name : attributes().keySet()) {
+      attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+    }
+    MBeanOperationInfo dump = new MBeanOperationInfo("dump", "Dumps every metric as text",
+        new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO);
+
+    return new MBeanInfo(getClass().getName(), "Flight management metrics",
+        attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] { dump }, null);
+  }
+
+  private static Map<String, LongSupplier> attributes() {
+    Map<String, LongSupplier> attributes = new TreeMap<>();
+    Metrics.counters().forEach((name, counter) -> attributes.put(name, counter::sum));
+    attributes.putAll(Metrics.gauges());
+    Metrics.histograms().forEach((name, histogram) -> {
+      attributes.put(name + ".count", histogram::getCount);
+      attributes.put(name + ".p50", () -> histogram.getPercentile(50));
+      attributes.put(name + ".p99", () -> histogram.getPercentile(99));
+      attributes.put(name + ".max", histogram::getMax);
+    });
+    return attributes;
+  }
+}
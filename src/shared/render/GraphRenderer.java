@@ -0,0 +1,64 @@
+package shared.render;
+
+import java.util.Map;
+
+import shared.structures.Graph;
+
+/**
+ * Renders graphs as text or as JSON lines.
+ * Vertices are streamed one at a time straight from the adjacency list into
+ * the output buffer, so exporting a large graph never materializes the whole
+ * dump in memory.
+ */
+public final class GraphRenderer {
+
+  private GraphRenderer() {
+  }
+
+  /**
+   * Writes one line per vertex in the format
+   * {@code Vertex -> { Destination1 (Cost: X), Destination2 (Cost: Y) }}.
+   *
+   * @param graph the graph to render
+   * @param out   the destination of the text
+   * @param <T>   the type of vertices in the graph
+   */
+  public static <T> void renderText(Graph<T> graph, OutputBuffer out) {
+    for (Map.Entry<T, Map<T, Integer>> vertex : graph.getVertices().entrySet()) {
+      out.append(vertex.getKey()).append(" -> { ");
+      boolean first = true;
+      for (Map.Entry<T, Integer> edge : vertex.getValue().entrySet()) {
+        if (!first) {
+          out.append(", ");
+        }
+        out.append(edge.getKey()).append(" (Cost: ").append((long) edge.getValue()).append(')');
+        first = false;
+      }
+      out.append(" }").newLine();
+    }
+  }
+
+  /**
+   * Writes one JSON object per vertex:
+   * {@code {"vertex":"...","edges":[{"to":"...","cost":X}]}}.
+   *
+   * @param graph the graph to render
+   * @param out   the destination of the text
+   * @param <T>   the type of vertices in the graph
+   */
+  public static <T> void renderJsonLines(Graph<T> graph, OutputBuffer out) {
+    for (Map.Entry<T, Map<T, Integer>> vertex : graph.getVertices().entrySet()) {
+      out.append("{\"vertex\":").appendJsonString(String.valueOf(vertex.getKey())).append(",\"edges\":[");
+      boolean first = true;
+      for (Map.Entry<T, Integer> edge : vertex.getValue().entrySet()) {
+        if (!first) {
+          out.append(',');
+        }
+        out.append("{\"to\":").appendJsonString(String.valueOf(edge.getKey()))
+            .append(",\"cost\":").append((long) edge.getValue()).append('}');
+        first = false;
+      }
+      out.append("]}").newLine();
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package shared.render;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable character buffer in front of an {@link Appendable} or a
+ * {@link WritableByteChannel}.
+ * Text is collected in a single builder and handed to the destination in
+ * large chunks, so renderers can emit many small fragments without creating
+ * intermediate strings or issuing one write per line. Channel output is
+ * encoded as UTF-8 through one reused byte buffer.
+ */
+public class OutputBuffer implements Appendable, Flushable {
+  private static final int DEFAULT_CAPACITY = 8192;
+
+  private final Appendable appendable;
+  private final WritableByteChannel channel;
+  private final StringBuilder chars;
+  private final int capacity;
+  private CharsetEncoder encoder;
+  private ByteBuffer bytes;
+
+  /**
+   * Constructs a buffer that writes to an appendable.
+   *
+   * @param appendable the destination of the text
+   */
+  public OutputBuffer(Appendable appendable) {
+    this(appendable, null, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a buffer that writes UTF-8 encoded text to a channel.
+   *
+   * @param channel the destination of the encoded text
+   */
+  public OutputBuffer(WritableByteChannel channel) {
+    this(null, channel, DEFAULT_CAPACITY);
+  }
+
+  private OutputBuffer(Appendable appendable, WritableByteChannel channel, int capacity) {
+    this.appendable = appendable;
+    this.channel = channel;
+    this.capacity = capacity;
+    this.chars = new StringBuilder(capacity + 256);
+  }
+
+  /**
+   * Creates a buffer that writes to standard output.
+   *
+   * @return a buffer for standard output
+   */
+  public static OutputBuffer stdout() {
+    return new OutputBuffer(System.out);
+  }
+
+  @Override
+  public OutputBuffer append(CharSequence text) {
+    chars.append(text);
+    drainIfFull();
+    return this;
+  }
+
+  @Override
+  public OutputBuffer append(CharSequence text, int start, int end) {
+    chars.append(text, start, end);
+    drainIfFull();
+    return this;
+  }
+
+  @Override
+  public OutputBuffer append(char c) {
+    chars.append(c);
+    drainIfFull();
+    return this;
+  }
+
+  /**
+   * Appends a range of a character array.
+   *
+   * @param text   the characters to append
+   * @param offset the index of the first character
+   * @param length the number of characters
+   * @return this buffer
+   */
+  public OutputBuffer append(char[] text, int offset, int length) {
+    chars.append(text, offset, length);
+    drainIfFull();
+    return this;
+  }
+
+  /**
+   * Appends the decimal representation of a number without creating a string.
+   *
+   * @param value the number to append
+   * @return this buffer
+   */
+  public OutputBuffer append(long value) {
+    chars.append(value);
+    drainIfFull();
+    return this;
+  }
+
+  /**
+   * Appends an object's string representation.
+   *
+   * @param value the object to append
+   * @return this buffer
+   */
+  public OutputBuffer append(Object value) {
+    chars.append(value);
+    drainIfFull();
+    return this;
+  }
+
+  /**
+   * Appends a line separator.
+   *
+   * @return this buffer
+   */
+  public OutputBuffer newLine() {
+    return append('\n');
+  }
+
+  /**
+   * Appends text as a quoted JSON string, escaping it as needed.
+   *
+   * @param text the text to append
+   * @return this buffer
+   */
+  public OutputBuffer appendJsonString(CharSequence text) {
+    chars.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"':
+          chars.append("\\\"");
+          break;
+        case '\\':
+          chars.append("\\\\");
+          break;
+        case '\n':
+          chars.append("\\n");
+          break;
+        case '\r':
+          chars.append("\\r");
+          break;
+        case '\t':
+          chars.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            chars.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+          } else {
+            chars.append(c);
+          }
+      }
+    }
+    chars.append('"');
+    drainIfFull();
+    return this;
+  }
+
+  /**
+   * Writes any buffered text to the destination and flushes it if it supports
+   * flushing.
+   */
+  @Override
+  public void flush() {
+    drain();
+    try {
+      if (appendable instanceof Flushable) {
+        ((Flushable) appendable).flush();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void drainIfFull() {
+    // Never split a surrogate pair across two drains
+    if (chars.length() >= capacity && !Character.isHighSurrogate(chars.charAt(chars.length() - 1))) {
+      drain();
+    }
+  }
+
+  private void drain() {
+    if (chars.length() == 0) {
+      return;
+    }
+    try {
+      if (channel != null) {
+        encode();
+      } else {
+        appendable.append(chars);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    chars.setLength(0);
+  }
+
+  private void encode() throws IOException {
+    if (encoder == null) {
+      encoder = StandardCharsets.UTF_8.newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      bytes = ByteBuffer.allocate(capacity * 3);
+    }
+    CharBuffer input = CharBuffer.wrap(chars);
+    encoder.reset();
+    CoderResult result;
+    do {
+      result = encoder.encode(input, bytes, true);
+      writeBytes();
+    } while (result.isOverflow());
+    while (encoder.flush(bytes).isOverflow()) {
+      writeBytes();
+    }
+    writeBytes();
+  }
+
+  private void writeBytes() throws IOException {
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+}
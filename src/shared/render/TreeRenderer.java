@@ -0,0 +1,66 @@
+package shared.render;
+
+import java.util.Arrays;
+
+import models.TreeEntity;
+import shared.structures.AVLTree;
+
+/**
+ * Renders trees as indented text or as JSON lines.
+ * The indentation prefix is kept in a single character array that is
+ * overwritten level by level, so rendering a node never builds a new prefix
+ * string.
+ */
+public final class TreeRenderer {
+  private static final char[] BRANCH = "├── ".toCharArray();
+  private static final char[] LAST_BRANCH = "└── ".toCharArray();
+  private static final char[] PIPE = "│   ".toCharArray();
+  private static final char[] SPACE = "    ".toCharArray();
+  private static final int SEGMENT = 4;
+
+  private TreeRenderer() {
+  }
+
+  /**
+   * Writes a tree in the same graphical format used by
+   * {@link AVLTree#printTree()}, one node per line.
+   *
+   * @param tree the tree to render
+   * @param out  the destination of the text
+   * @param <T>  the type of entities in the tree
+   */
+  public static <T extends TreeEntity> void renderText(AVLTree<T> tree, OutputBuffer out) {
+    char[][] prefix = { new char[SEGMENT * 16] };
+    tree.walk((entity, depth, isRight) -> {
+      int length = depth * SEGMENT;
+      out.append(prefix[0], 0, length)
+          .append(isRight ? LAST_BRANCH : BRANCH, 0, SEGMENT)
+          .append(entity)
+          .newLine();
+
+      if (length + SEGMENT > prefix[0].length) {
+        prefix[0] = Arrays.copyOf(prefix[0], prefix[0].length * 2);
+      }
+      System.arraycopy(isRight ? SPACE : PIPE, 0, prefix[0], length, SEGMENT);
+    });
+  }
+
+  /**
+   * Writes a tree as JSON lines, one object per node in pre-order:
+   * {@code {"depth":1,"side":"left","value":3,"entity":"..."}}.
+   *
+   * @param tree the tree to render
+   * @param out  the destination of the text
+   * @param <T>  the type of entities in the tree
+   */
+  public static <T extends TreeEntity> void renderJsonLines(AVLTree<T> tree, OutputBuffer out) {
+    tree.walk((entity, depth, isRight) -> {
+      out.append("{\"depth\":").append((long) depth)
+          .append(",\"side\":").append(depth == 0 ? "\"root\"" : isRight ? "\"right\"" : "\"left\"")
+          .append(",\"value\":").append((long) entity.value)
+          .append(",\"entity\":").appendJsonString(String.valueOf(entity))
+          .append('}')
+          .newLine();
+    });
+  }
+}
@@ -1,6 +1,13 @@
 package shared.structures;
 
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
 import models.TreeEntity;
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.render.OutputBuffer;
+import shared.render.TreeRenderer;
 
 /**
  * A generic implementation of an AVL Tree, a self-balancing binary search tree.
@@ -11,7 +18,12 @@ import models.TreeEntity;
  * @param <T> the type of elements stored in the tree, which must extend
  *            TreeEntity
  */
-public class AVLTree<T extends TreeEntity> {
+public class AVLTree<T extends TreeEntity> implements OrderedIndex<T> {
+  private static final LatencyHistogram INSERT_NANOS = Metrics.histogram("avltree.insert.ns");
+  private static final LatencyHistogram HEIGHT = Metrics.histogram("avltree.height");
+  private static final LongAdder LEFT_ROTATIONS = Metrics.counter("avltree.rotations.left");
+  private static final LongAdder RIGHT_ROTATIONS = Metrics.counter("avltree.rotations.right");
+
   /**
    * Represents a node in the AVL Tree.
    *
@@ -20,12 +32,13 @@ public class AVLTree<T extends TreeEntity> {
   @SuppressWarnings("hiding")
   class Node<T> {
     T entity;
-    int key, height;
+    int key, height, size;
     Node<T> left, right;
 
     Node(T entity) {
       this.entity = entity;
       this.height = 1;
+      this.size = 1;
     }
   }
 
@@ -41,6 +54,16 @@ public class AVLTree<T extends TreeEntity> {
     return node == null ? 0 : node.height;
   }
 
+  /**
+   * Returns the number of nodes in the subtree rooted at a given node.
+   *
+   * @param node the root of the subtree
+   * @return the size of the subtree, or 0 if the node is null
+   */
+  int size(Node<T> node) {
+    return node == null ? 0 : node.size;
+  }
+
   /**
    * Calculates the balance factor of a given node.
    * The balance factor is the difference in height between the left and right
@@ -60,6 +83,7 @@ public class AVLTree<T extends TreeEntity> {
    * @return the new root of the rotated subtree
    */
   Node<T> rightRotate(Node<T> y) {
+    RIGHT_ROTATIONS.increment();
     Node<T> x = y.left;
     Node<T> temp = x.right;
 
@@ -68,6 +92,8 @@ public class AVLTree<T extends TreeEntity> {
 
     y.height = Math.max(height(y.left), height(y.right)) + 1;
     x.height = Math.max(height(x.left), height(x.right)) + 1;
+    y.size = size(y.left) + size(y.right) + 1;
+    x.size = size(x.left) + size(x.right) + 1;
 
     return x;
   }
@@ -79,6 +105,7 @@ public class AVLTree<T extends TreeEntity> {
    * @return the new root of the rotated subtree
    */
   Node<T> leftRotate(Node<T> x) {
+    LEFT_ROTATIONS.increment();
     Node<T> y = x.right;
     Node<T> temp = y.left;
 
@@ -87,6 +114,8 @@ public class AVLTree<T extends TreeEntity> {
 
     x.height = Math.max(height(x.left), height(x.right)) + 1;
     y.height = Math.max(height(y.left), height(y.right)) + 1;
+    x.size = size(x.left) + size(x.right) + 1;
+    y.size = size(y.left) + size(y.right) + 1;
 
     return y;
   }
@@ -105,7 +134,7 @@ public class AVLTree<T extends TreeEntity> {
     }
 
     if (entity.value < node.entity.value) {
-      node.left = insert(node.right, entity);
+      node.left = insert(node.left, entity);
     } else if (entity.value > node.entity.value) {
       node.right = insert(node.right, entity);
     } else {
@@ -113,6 +142,7 @@ public class AVLTree<T extends TreeEntity> {
     }
 
     node.height = 1 + Math.max(height(node.left), height(node.right));
+    node.size = 1 + size(node.left) + size(node.right);
     Integer balance = getBalanceFactor(node);
 
     if (balance > 1 && entity.value < node.left.entity.value) {
@@ -137,9 +167,94 @@ public class AVLTree<T extends TreeEntity> {
    * Inserts an entity into the AVL tree.
    *
    * @param entity the entity to be inserted
+   * @return true if the entity was inserted, false if its value was present
    */
-  public void insert(T entity) {
+  @Override
+  public boolean insert(T entity) {
+    long start = System.nanoTime();
+    int before = size(root);
     this.root = insert(this.root, entity);
+    INSERT_NANOS.recordSince(start);
+    HEIGHT.record(height(root));
+    return size(root) > before;
+  }
+
+  /**
+   * Retrieves the entity stored under a value.
+   *
+   * @param key the value to look up
+   * @return the entity, or null if there is none
+   */
+  @Override
+  public T get(int key) {
+    Node<T> node = root;
+    while (node != null) {
+      if (key < node.entity.value) {
+        node = node.left;
+      } else if (key > node.entity.value) {
+        node = node.right;
+      } else {
+        return node.entity;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the number of entities in the tree.
+   *
+   * @return the number of entities
+   */
+  @Override
+  public int size() {
+    return size(root);
+  }
+
+  /**
+   * Counts the entities whose value is lower than a key.
+   * Runs in O(log n) using the subtree sizes kept in each node.
+   *
+   * @param key the key to compare against
+   * @return the number of entities with a smaller value
+   */
+  @Override
+  public int rank(int key) {
+    int rank = 0;
+    Node<T> node = root;
+    while (node != null) {
+      if (key <= node.entity.value) {
+        node = node.left;
+      } else {
+        rank += size(node.left) + 1;
+        node = node.right;
+      }
+    }
+    return rank;
+  }
+
+  /**
+   * Retrieves the entity at a position of the in-order sequence.
+   * Runs in O(log n) using the subtree sizes kept in each node.
+   *
+   * @param index the zero-based position, so 0 selects the smallest value
+   * @return the entity at that position, or null if the index is out of range
+   */
+  @Override
+  public T select(int index) {
+    Node<T> node = root;
+    int remaining = index;
+    while (node != null) {
+      int leftSize = size(node.left);
+      if (remaining < leftSize) {
+        node = node.left;
+      } else if (remaining > leftSize) {
+        remaining -= leftSize + 1;
+        node = node.right;
+      } else {
+        return node.entity;
+      }
+    }
+    return null;
   }
 
   /**
@@ -168,19 +283,79 @@ public class AVLTree<T extends TreeEntity> {
   }
 
   /**
-   * Prints the tree in a graphical format.
+   * Visits every entity in the tree in ascending order of their values.
+   *
+   * @param action the action to perform on each entity
    */
-  public void printTree() {
-    printTreeRecursive(root, "", true);
+  @Override
+  public void forEach(Consumer<? super T> action) {
+    forEach(this.root, action);
+  }
+
+  private void forEach(Node<T> node, Consumer<? super T> action) {
+    if (node == null) {
+      return;
+    }
+
+    forEach(node.left, action);
+    action.accept(node.entity);
+    forEach(node.right, action);
   }
 
-  private void printTreeRecursive(Node<T> node, String prefix, boolean isRight) {
-    if (node != null) {
-      System.out.println(prefix + (isRight ? "└── " : "├── ") + node.entity);
+  /**
+   * Visits every node of the tree in pre-order (node, left subtree, right
+   * subtree), reporting the depth of each node and which side of its parent it
+   * hangs from. The traversal uses an explicit stack bounded by the height of
+   * the tree instead of recursion.
+   *
+   * @param visitor the visitor to receive each node
+   */
+  public void walk(TreeVisitor<? super T> visitor) {
+    int capacity = 2 * height(root) + 1;
+    Node<T>[] nodes = newNodes(capacity);
+    int[] depths = new int[capacity];
+    boolean[] sides = new boolean[capacity];
+    int top = 0;
 
-      printTreeRecursive(node.left, prefix + (isRight ? "    " : "│   "), false);
-      printTreeRecursive(node.right, prefix + (isRight ? "    " : "│   "), true);
+    if (root != null) {
+      nodes[0] = root;
+      sides[0] = true;
+      top = 1;
     }
+    while (top > 0) {
+      top--;
+      Node<T> node = nodes[top];
+      int depth = depths[top];
+      visitor.visit(node.entity, depth, sides[top]);
+
+      if (node.right != null) {
+        nodes[top] = node.right;
+        depths[top] = depth + 1;
+        sides[top] = true;
+        top++;
+      }
+      if (node.left != null) {
+        nodes[top] = node.left;
+        depths[top] = depth + 1;
+        sides[top] = false;
+        top++;
+      }
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private Node<T>[] newNodes(int capacity) {
+    return new Node[capacity];
+  }
+
+  /**
+   * Prints the tree in a graphical format.
+   */
+  @Override
+  public void printTree() {
+    OutputBuffer out = OutputBuffer.stdout();
+    TreeRenderer.renderText(this, out);
+    out.flush();
   }
 
 }
@@ -0,0 +1,337 @@
+package shared.structures;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import models.TreeEntity;
+import shared.render.OutputBuffer;
+
+/**
+ * A B+ tree of tree entities keyed by their value.
+ * Nodes are wide and keep their keys in primitive int arrays, so a lookup
+ * touches a handful of contiguous arrays instead of one object per level, and
+ * leaves are linked so an in-order scan walks arrays sequentially. This makes
+ * it a cache-friendly alternative to {@link AVLTree} for large indexes.
+ *
+ * @param <T> the type of elements stored in the tree, which must extend
+ *            TreeEntity
+ */
+public class BPlusTree<T extends TreeEntity> implements OrderedIndex<T> {
+  private static final int DEFAULT_ORDER = 64;
+
+  /**
+   * A node of the tree. Leaves hold entities, internal nodes hold children
+   * and the number of entities below each child; in both,
+   * {@code keys[0..count)} are sorted.
+   */
+  static final class Node {
+    final int[] keys;
+    final Object[] entities; // leaves only
+    final Node[] children; // internal nodes only, count + 1 entries
+    final int[] childSizes; // internal nodes only, parallel to children
+    Node next; // leaves only
+    int count;
+
+    Node(int order, boolean leaf) {
+      this.keys = new int[order];
+      this.entities = leaf ? new Object[order] : null;
+      this.children = leaf ? null : new Node[order + 1];
+      this.childSizes = leaf ? null : new int[order + 1];
+    }
+
+    boolean isLeaf() {
+      return children == null;
+    }
+  }
+
+  private final int order;
+  private Node root;
+  private int size;
+  private int splitKey;
+
+  /**
+   * Constructs an empty tree with the default node width.
+   */
+  public BPlusTree() {
+    this(DEFAULT_ORDER);
+  }
+
+  /**
+   * Constructs an empty tree whose nodes hold up to the given number of keys.
+   *
+   * @param order the maximum number of keys per node, at least 3
+   */
+  public BPlusTree(int order) {
+    if (order < 3) {
+      throw new IllegalArgumentException("Order must be at least 3: " + order);
+    }
+    this.order = order;
+    this.root = new Node(order, true);
+  }
+
+  @Override
+  public boolean insert(T entity) {
+    int before = size;
+    Node split = insert(root, entity.value, entity);
+    if (split != null) {
+      Node newRoot = new Node(order, false);
+      newRoot.keys[0] = splitKey;
+      newRoot.children[0] = root;
+      newRoot.children[1] = split;
+      newRoot.childSizes[0] = total(root);
+      newRoot.childSizes[1] = total(split);
+      newRoot.count = 1;
+      root = newRoot;
+    }
+    return size > before;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T get(int key) {
+    Node node = root;
+    while (!node.isLeaf()) {
+      node = node.children[childIndex(node, key)];
+    }
+    int index = Arrays.binarySearch(node.keys, 0, node.count, key);
+    return index >= 0 ? (T) node.entities[index] : null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Counts the entities whose value is lower than a key.
+   * Runs in O(log n) using the subtree sizes kept in internal nodes.
+   *
+   * @param key the key to compare against
+   * @return the number of entities with a smaller value
+   */
+  @Override
+  public int rank(int key) {
+    int rank = 0;
+    Node node = root;
+    while (!node.isLeaf()) {
+      int childIndex = childIndex(node, key);
+      for (int i = 0; i < childIndex; i++) {
+        rank += node.childSizes[i];
+      }
+      node = node.children[childIndex];
+    }
+    int index = Arrays.binarySearch(node.keys, 0, node.count, key);
+    return rank + (index >= 0 ? index : -index - 1);
+  }
+
+  /**
+   * Retrieves the entity at a position of the in-order sequence.
+   * Runs in O(log n) using the subtree sizes kept in internal nodes.
+   *
+   * @param index the zero-based position, so 0 selects the smallest value
+   * @return the entity at that position, or null if the index is out of range
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public T select(int index) {
+    if (index < 0 || index >= size) {
+      return null;
+    }
+    Node node = root;
+    int remaining = index;
+    while (!node.isLeaf()) {
+      int child = 0;
+      while (remaining >= node.childSizes[child]) {
+        remaining -= node.childSizes[child];
+        child++;
+      }
+      node = node.children[child];
+    }
+    return (T) node.entities[remaining];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void forEach(Consumer<? super T> action) {
+    for (Node leaf = firstLeaf(); leaf != null; leaf = leaf.next) {
+      for (int i = 0; i < leaf.count; i++) {
+        action.accept((T) leaf.entities[i]);
+      }
+    }
+  }
+
+  /**
+   * Prints the tree level by level, one node per line with its keys.
+   */
+  @Override
+  public void printTree() {
+    OutputBuffer out = OutputBuffer.stdout();
+    printNode(root, 0, out);
+    out.flush();
+  }
+
+  /**
+   * Inserts into the subtree rooted at a node.
+   *
+   * @return the new right sibling if the node was split, otherwise null; the
+   *         key separating the two halves is left in {@code splitKey}
+   */
+  private Node insert(Node node, int key, T entity) {
+    if (node.isLeaf()) {
+      int index = Arrays.binarySearch(node.keys, 0, node.count, key);
+      if (index >= 0) {
+        return null;
+      }
+      size++;
+      int position = -index - 1;
+      return node.count < order ? shiftIn(node, position, key, entity, null)
+          : splitLeaf(node, position, key, entity);
+    }
+
+    int childIndex = childIndex(node, key);
+    Node child = node.children[childIndex];
+    int sizeBefore = size;
+    Node split = insert(child, key, entity);
+    if (split == null) {
+      node.childSizes[childIndex] += size - sizeBefore;
+      return null;
+    }
+    node.childSizes[childIndex] = total(child);
+    int separator = splitKey;
+    return node.count < order ? shiftIn(node, childIndex, separator, null, split)
+        : splitInternal(node, childIndex, separator, split);
+  }
+
+  private Node splitLeaf(Node node, int index, int key, T entity) {
+    int[] keys = new int[order + 1];
+    Object[] entities = new Object[order + 1];
+    System.arraycopy(node.keys, 0, keys, 0, index);
+    System.arraycopy(node.entities, 0, entities, 0, index);
+    keys[index] = key;
+    entities[index] = entity;
+    System.arraycopy(node.keys, index, keys, index + 1, order - index);
+    System.arraycopy(node.entities, index, entities, index + 1, order - index);
+
+    int half = (order + 1) / 2;
+    Node sibling = new Node(order, true);
+    System.arraycopy(keys, 0, node.keys, 0, half);
+    System.arraycopy(entities, 0, node.entities, 0, half);
+    Arrays.fill(node.entities, half, order, null);
+    node.count = half;
+    System.arraycopy(keys, half, sibling.keys, 0, order + 1 - half);
+    System.arraycopy(entities, half, sibling.entities, 0, order + 1 - half);
+    sibling.count = order + 1 - half;
+
+    sibling.next = node.next;
+    node.next = sibling;
+    splitKey = sibling.keys[0];
+    return sibling;
+  }
+
+  private Node splitInternal(Node node, int index, int key, Node child) {
+    int[] keys = new int[order + 1];
+    Node[] children = new Node[order + 2];
+    int[] childSizes = new int[order + 2];
+    System.arraycopy(node.keys, 0, keys, 0, index);
+    keys[index] = key;
+    System.arraycopy(node.keys, index, keys, index + 1, order - index);
+    System.arraycopy(node.children, 0, children, 0, index + 1);
+    System.arraycopy(node.childSizes, 0, childSizes, 0, index + 1);
+    children[index + 1] = child;
+    childSizes[index + 1] = total(child);
+    System.arraycopy(node.children, index + 1, children, index + 2, order - index);
+    System.arraycopy(node.childSizes, index + 1, childSizes, index + 2, order - index);
+
+    // The middle key moves up to the parent and is kept in neither half
+    int middle = (order + 1) / 2;
+    Node sibling = new Node(order, false);
+    System.arraycopy(keys, 0, node.keys, 0, middle);
+    System.arraycopy(children, 0, node.children, 0, middle + 1);
+    System.arraycopy(childSizes, 0, node.childSizes, 0, middle + 1);
+    Arrays.fill(node.children, middle + 1, order + 1, null);
+    Arrays.fill(node.childSizes, middle + 1, order + 1, 0);
+    node.count = middle;
+    int moved = order - middle;
+    System.arraycopy(keys, middle + 1, sibling.keys, 0, moved);
+    System.arraycopy(children, middle + 1, sibling.children, 0, moved + 1);
+    System.arraycopy(childSizes, middle + 1, sibling.childSizes, 0, moved + 1);
+    sibling.count = moved;
+
+    splitKey = keys[middle];
+    return sibling;
+  }
+
+  /**
+   * Inserts a key at a position of a node that has room for it. For internal
+   * nodes the new child goes to the right of the key.
+   *
+   * @return null, since the node was not split
+   */
+  private static Node shiftIn(Node node, int index, int key, Object entity, Node child) {
+    int tail = node.count - index;
+    System.arraycopy(node.keys, index, node.keys, index + 1, tail);
+    node.keys[index] = key;
+    if (node.isLeaf()) {
+      System.arraycopy(node.entities, index, node.entities, index + 1, tail);
+      node.entities[index] = entity;
+    } else {
+      System.arraycopy(node.children, index + 1, node.children, index + 2, tail);
+      System.arraycopy(node.childSizes, index + 1, node.childSizes, index + 2, tail);
+      node.children[index + 1] = child;
+      node.childSizes[index + 1] = total(child);
+    }
+    node.count++;
+    return null;
+  }
+
+  /**
+   * Gets the index of the child of an internal node that covers a key.
+   * Child {@code i} holds keys in {@code [keys[i-1], keys[i])}.
+   */
+  private static int childIndex(Node node, int key) {
+    int index = Arrays.binarySearch(node.keys, 0, node.count, key);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  /**
+   * Gets the number of entities in the subtree rooted at a node.
+   */
+  private static int total(Node node) {
+    if (node.isLeaf()) {
+      return node.count;
+    }
+    int total = 0;
+    for (int i = 0; i <= node.count; i++) {
+      total += node.childSizes[i];
+    }
+    return total;
+  }
+
+  private Node firstLeaf() {
+    Node node = root;
+    while (!node.isLeaf()) {
+      node = node.children[0];
+    }
+    return node;
+  }
+
+  private void printNode(Node node, int depth, OutputBuffer out) {
+    for (int i = 0; i < depth; i++) {
+      out.append("    ");
+    }
+    out.append(node.isLeaf() ? "leaf [" : "node [");
+    for (int i = 0; i < node.count; i++) {
+      if (i > 0) {
+        out.append(" | ");
+      }
+      out.append(node.isLeaf() ? node.entities[i] : (Object) node.keys[i]);
+    }
+    out.append(']').newLine();
+
+    if (!node.isLeaf()) {
+      for (int i = 0; i <= node.count; i++) {
+        printNode(node.children[i], depth + 1, out);
+      }
+    }
+  }
+}
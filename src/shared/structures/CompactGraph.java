@@ -0,0 +1,457 @@
+package shared.structures;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable snapshot of a {@link Graph} in compressed sparse row form.
+ * Vertices are numbered from 0, and the outgoing and incoming edges of every
+ * vertex are stored contiguously in int arrays, which keeps traversals of
+ * graphs with millions of vertices cache-friendly and free of recursion.
+ * Sets of vertices are returned as bitsets indexed by vertex id.
+ *
+ * @param <T> the type of vertices in the graph
+ */
+public class CompactGraph<T> {
+  private static final int SEQUENTIAL_FRONTIER = 1024;
+  // Switching thresholds of the direction-optimizing search (Beamer et al.)
+  private static final int TOP_DOWN_ALPHA = 14;
+  private static final int BOTTOM_UP_BETA = 24;
+
+  private final T[] vertices;
+  // Shared with the compressed graphs built from this one
+  final Map<T, Integer> ids;
+  private final int[] outOffsets;
+  private final int[] outTargets;
+  private final int[] outCosts;
+  private final int[] inOffsets;
+  private final int[] inSources;
+
+  @SuppressWarnings("unchecked")
+  private CompactGraph(Graph<T> graph) {
+    Map<T, Map<T, Integer>> adjacency = graph.getVertices();
+    Map<T, Integer> ids = new HashMap<>(adjacency.size() * 2);
+    int edgeCount = 0;
+    for (Map.Entry<T, Map<T, Integer>> entry : adjacency.entrySet()) {
+      ids.putIfAbsent(entry.getKey(), ids.size());
+      edgeCount += entry.getValue().size();
+    }
+    // Edge targets need not have been added as vertices
+    for (Map<T, Integer> neighbors : adjacency.values()) {
+      for (T target : neighbors.keySet()) {
+        ids.putIfAbsent(target, ids.size());
+      }
+    }
+
+    int n = ids.size();
+    this.vertices = (T[]) new Object[n];
+    ids.forEach((vertex, id) -> vertices[id] = vertex);
+    this.ids = ids;
+
+    this.outOffsets = new int[n + 1];
+    this.outTargets = new int[edgeCount];
+    this.outCosts = new int[edgeCount];
+    int[] inDegrees = new int[n + 1];
+    for (int v = 0; v < n; v++) {
+      int offset = outOffsets[v];
+      Map<T, Integer> neighbors = adjacency.get(vertices[v]);
+      if (neighbors != null) {
+        for (Map.Entry<T, Integer> edge : neighbors.entrySet()) {
+          int target = ids.get(edge.getKey());
+          outTargets[offset] = target;
+          outCosts[offset] = edge.getValue();
+          inDegrees[target + 1]++;
+          offset++;
+        }
+      }
+      outOffsets[v + 1] = offset;
+    }
+
+    this.inOffsets = inDegrees;
+    for (int v = 0; v < n; v++) {
+      inOffsets[v + 1] += inOffsets[v];
+    }
+    this.inSources = new int[edgeCount];
+    int[] next = Arrays.copyOf(inOffsets, n);
+    for (int v = 0; v < n; v++) {
+      for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+        inSources[next[outTargets[e]]++] = v;
+      }
+    }
+  }
+
+  /**
+   * Takes a snapshot of a graph. Later changes to the graph are not reflected
+   * in the snapshot.
+   *
+   * @param <T>   the type of vertices in the graph
+   * @param graph the graph to copy
+   * @return the snapshot
+   */
+  public static <T> CompactGraph<T> of(Graph<T> graph) {
+    return new CompactGraph<>(graph);
+  }
+
+  /**
+   * Gets the number of vertices, including edge targets that were never added
+   * as vertices.
+   *
+   * @return the number of vertices
+   */
+  public int vertexCount() {
+    return vertices.length;
+  }
+
+  /**
+   * Gets the number of edges.
+   *
+   * @return the number of edges
+   */
+  public int edgeCount() {
+    return outTargets.length;
+  }
+
+  /**
+   * Gets the id of a vertex.
+   *
+   * @param vertex the vertex
+   * @return the id, or -1 if the vertex is not in the snapshot
+   */
+  public int idOf(T vertex) {
+    Integer id = ids.get(vertex);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Gets the vertex with an id.
+   *
+   * @param id the id
+   * @return the vertex
+   */
+  public T vertexAt(int id) {
+    return vertices[id];
+  }
+
+  /**
+   * Gets the outgoing edges of a vertex as a range of
+   * {@link #edgeTarget(int)} and {@link #edgeCost(int)} indexes, from
+   * {@code firstEdge(v)} inclusive to {@code firstEdge(v + 1)} exclusive.
+   *
+   * @param id the id of the vertex, or the vertex count for the end of the
+   *           last range
+   * @return the index of the first outgoing edge of the vertex
+   */
+  public int firstEdge(int id) {
+    return outOffsets[id];
+  }
+
+  /**
+   * Gets the target of an edge.
+   *
+   * @param edge the index of the edge
+   * @return the id of the target vertex
+   */
+  public int edgeTarget(int edge) {
+    return outTargets[edge];
+  }
+
+  /**
+   * Gets the cost of an edge.
+   *
+   * @param edge the index of the edge
+   * @return the cost
+   */
+  public int edgeCost(int edge) {
+    return outCosts[edge];
+  }
+
+  /**
+   * Finds the vertices reachable from a set of sources in at most a number of
+   * edges, including the sources themselves.
+   *
+   * @param sources the ids of the source vertices
+   * @param maxHops the largest number of edges to follow, or a negative number
+   *                for no limit
+   * @return the reachable vertices
+   */
+  public BitSet reachable(BitSet sources, int maxHops) {
+    int[] distances = distances(sources, maxHops);
+    BitSet reached = new BitSet(vertices.length);
+    for (int v = 0; v < distances.length; v++) {
+      if (distances[v] >= 0) {
+        reached.set(v);
+      }
+    }
+    return reached;
+  }
+
+  /**
+   * Computes the number of edges on a shortest path from a set of sources to
+   * every vertex, with a direction-optimizing breadth-first search. Large
+   * frontiers are expanded in parallel on the common fork-join pool, either
+   * top-down from the frontier or bottom-up from the unvisited vertices,
+   * whichever touches fewer edges.
+   *
+   * @param sources the ids of the source vertices
+   * @param maxHops the largest number of edges to follow, or a negative number
+   *                for no limit
+   * @return the distance of every vertex, or -1 for unreached vertices
+   */
+  public int[] distances(BitSet sources, int maxHops) {
+    int n = vertices.length;
+    int[] distances = new int[n];
+    Arrays.fill(distances, -1);
+    AtomicLongArray visited = new AtomicLongArray((n + 63) >>> 6);
+    int[] frontier = sources.stream().filter(v -> v < n).toArray();
+    for (int v : frontier) {
+      distances[v] = 0;
+      claim(visited, v);
+    }
+
+    long unexploredEdges = outTargets.length;
+    boolean bottomUp = false;
+    for (int depth = 1; frontier.length > 0 && (maxHops < 0 || depth <= maxHops); depth++) {
+      long frontierEdges = 0;
+      for (int v : frontier) {
+        frontierEdges += outOffsets[v + 1] - outOffsets[v];
+      }
+      unexploredEdges -= frontierEdges;
+      if (!bottomUp && frontierEdges > unexploredEdges / TOP_DOWN_ALPHA) {
+        bottomUp = true;
+      } else if (bottomUp && frontier.length < n / BOTTOM_UP_BETA) {
+        bottomUp = false;
+      }
+      frontier = bottomUp ? stepBottomUp(frontier, visited, distances, depth)
+          : stepTopDown(frontier, visited, distances, depth);
+    }
+    return distances;
+  }
+
+  /**
+   * Groups the vertices into strongly connected components with an iterative
+   * version of Tarjan's algorithm, so deep graphs cannot overflow the stack.
+   * Components are numbered in reverse topological order: every edge between
+   * two components leads to a component with a lower or equal number.
+   *
+   * @return the component number of every vertex
+   */
+  public int[] stronglyConnectedComponents() {
+    int n = vertices.length;
+    int[] index = new int[n];
+    int[] low = new int[n];
+    int[] component = new int[n];
+    Arrays.fill(index, -1);
+    Arrays.fill(component, -1);
+    int[] stack = new int[n];
+    int[] callStack = new int[n];
+    int[] nextEdge = new int[n];
+    int stackTop = 0;
+    int nextIndex = 0;
+    int components = 0;
+
+    for (int root = 0; root < n; root++) {
+      if (index[root] >= 0) {
+        continue;
+      }
+      int callTop = 0;
+      callStack[callTop++] = root;
+      index[root] = low[root] = nextIndex++;
+      nextEdge[root] = outOffsets[root];
+      stack[stackTop++] = root;
+
+      while (callTop > 0) {
+        int v = callStack[callTop - 1];
+        if (nextEdge[v] < outOffsets[v + 1]) {
+          int w = outTargets[nextEdge[v]++];
+          if (index[w] < 0) {
+            index[w] = low[w] = nextIndex++;
+            nextEdge[w] = outOffsets[w];
+            stack[stackTop++] = w;
+            callStack[callTop++] = w;
+          } else if (component[w] < 0) {
+            low[v] = Math.min(low[v], index[w]);
+          }
+          continue;
+        }
+
+        callTop--;
+        if (callTop > 0) {
+          int parent = callStack[callTop - 1];
+          low[parent] = Math.min(low[parent], low[v]);
+        }
+        if (low[v] == index[v]) {
+          int w;
+          do {
+            w = stack[--stackTop];
+            component[w] = components;
+          } while (w != v);
+          components++;
+        }
+      }
+    }
+    return component;
+  }
+
+  /**
+   * Groups the vertices into weakly connected components, the parts of the
+   * graph that are disconnected from each other when edge directions are
+   * ignored. Components are numbered from 0 in order of their lowest vertex
+   * id.
+   *
+   * @return the component number of every vertex
+   */
+  public int[] weaklyConnectedComponents() {
+    int n = vertices.length;
+    int[] parent = new int[n];
+    for (int v = 0; v < n; v++) {
+      parent[v] = v;
+    }
+    for (int v = 0; v < n; v++) {
+      for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+        int a = find(parent, v);
+        int b = find(parent, outTargets[e]);
+        if (a != b) {
+          parent[Math.max(a, b)] = Math.min(a, b);
+        }
+      }
+    }
+
+    int[] component = new int[n];
+    int components = 0;
+    for (int v = 0; v < n; v++) {
+      int root = find(parent, v);
+      component[v] = root == v ? components++ : component[root];
+    }
+    return component;
+  }
+
+  private static int find(int[] parent, int v) {
+    while (parent[v] != v) {
+      parent[v] = parent[parent[v]];
+      v = parent[v];
+    }
+    return v;
+  }
+
+  private int[] stepTopDown(int[] frontier, AtomicLongArray visited, int[] distances, int depth) {
+    int chunks = chunks(frontier.length);
+    int[][] found = parallel(chunks).mapToObj(chunk -> {
+      int from = (int) ((long) frontier.length * chunk / chunks);
+      int to = (int) ((long) frontier.length * (chunk + 1) / chunks);
+      IntBuffer next = new IntBuffer();
+      for (int i = from; i < to; i++) {
+        int v = frontier[i];
+        for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+          int w = outTargets[e];
+          if (claim(visited, w)) {
+            distances[w] = depth;
+            next.add(w);
+          }
+        }
+      }
+      return next.toArray();
+    }).toArray(int[][]::new);
+    return concat(found);
+  }
+
+  private int[] stepBottomUp(int[] frontier, AtomicLongArray visited, int[] distances, int depth) {
+    int n = vertices.length;
+    long[] inFrontier = new long[(n + 63) >>> 6];
+    for (int v : frontier) {
+      inFrontier[v >>> 6] |= 1L << v;
+    }
+    // Chunks cover whole words of the visited set, so each word has one writer
+    int words = visited.length();
+    int chunks = chunks(n);
+    int[][] found = parallel(chunks).mapToObj(chunk -> {
+      int fromWord = (int) ((long) words * chunk / chunks);
+      int toWord = (int) ((long) words * (chunk + 1) / chunks);
+      IntBuffer next = new IntBuffer();
+      for (int word = fromWord; word < toWord; word++) {
+        long unvisited = ~visited.get(word);
+        while (unvisited != 0) {
+          int w = (word << 6) + Long.numberOfTrailingZeros(unvisited);
+          unvisited &= unvisited - 1;
+          if (w >= n) {
+            break;
+          }
+          for (int e = inOffsets[w]; e < inOffsets[w + 1]; e++) {
+            int v = inSources[e];
+            if ((inFrontier[v >>> 6] & 1L << v) != 0) {
+              claim(visited, w);
+              distances[w] = depth;
+              next.add(w);
+              break;
+            }
+          }
+        }
+      }
+      return next.toArray();
+    }).toArray(int[][]::new);
+    return concat(found);
+  }
+
+  private static int chunks(int work) {
+    if (work <= SEQUENTIAL_FRONTIER) {
+      return 1;
+    }
+    return Math.min(work / SEQUENTIAL_FRONTIER, 4 * ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  private static IntStream parallel(int chunks) {
+    IntStream range = IntStream.range(0, chunks);
+    return chunks > 1 ? range.parallel() : range;
+  }
+
+  private static boolean claim(AtomicLongArray visited, int v) {
+    int word = v >>> 6;
+    long bit = 1L << v;
+    while (true) {
+      long current = visited.get(word);
+      if ((current & bit) != 0) {
+        return false;
+      }
+      if (visited.compareAndSet(word, current, current | bit)) {
+        return true;
+      }
+    }
+  }
+
+  private static int[] concat(int[][] parts) {
+    int length = 0;
+    for (int[] part : parts) {
+      length += part.length;
+    }
+    int[] result = new int[length];
+    int offset = 0;
+    for (int[] part : parts) {
+      System.arraycopy(part, 0, result, offset, part.length);
+      offset += part.length;
+    }
+    return result;
+  }
+
+  /**
+   * A growable array of ints.
+   */
+  private static class IntBuffer {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
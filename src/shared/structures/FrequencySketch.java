@@ -0,0 +1,73 @@
+package shared.structures;
+
+/**
+ * A count-min sketch of 4-bit counters that estimates how often keys were
+ * seen recently. Once the number of recorded keys reaches ten times the
+ * cache size, every counter is halved, so the sketch forgets old popularity.
+ * Not thread-safe.
+ */
+class FrequencySketch {
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final int[] SEEDS = { 0x97cb3127, 0x9e3779b9, 0x7f4a7c15, 0x2127599b };
+
+  private final long[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  FrequencySketch(int maximumSize) {
+    int size = 1;
+    while (size < Math.max(maximumSize, 16) / 4) {
+      size <<= 1;
+    }
+    this.table = new long[size];
+    this.mask = size - 1;
+    this.sampleSize = 10 * Math.max(maximumSize, 1);
+  }
+
+  /**
+   * Estimates how often a key was seen, from 0 to 15.
+   */
+  int frequency(int hash) {
+    int frequency = Integer.MAX_VALUE;
+    for (int row = 0; row < SEEDS.length; row++) {
+      frequency = Math.min(frequency, counter(hash, row));
+    }
+    return frequency;
+  }
+
+  /**
+   * Records one occurrence of a key.
+   */
+  void increment(int hash) {
+    boolean added = false;
+    for (int row = 0; row < SEEDS.length; row++) {
+      int index = index(hash, row);
+      int shift = shift(hash, row);
+      if (((table[index] >>> shift) & 0xF) < 15) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions /= 2;
+    }
+  }
+
+  private int counter(int hash, int row) {
+    return (int) ((table[index(hash, row)] >>> shift(hash, row)) & 0xF);
+  }
+
+  private int index(int hash, int row) {
+    int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) & 3];
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  // Each row uses its own group of four counters within a long
+  private static int shift(int hash, int row) {
+    return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+  }
+}
@@ -1,19 +1,36 @@
 package shared.structures;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import shared.metrics.LatencyHistogram;
+import shared.metrics.Metrics;
+import shared.render.GraphRenderer;
+import shared.render.OutputBuffer;
 
 /**
  * A generic implementation of a directed weighted graph.
- * The graph supports adding vertices, edges with costs (weights), retrieving
- * neighbors, and
+ * The graph supports adding and removing vertices and edges with costs
+ * (weights), retrieving neighbors, and
  * printing the graph in a user-friendly format.
  *
  * @param <T> the type of elements stored in the graph (e.g., cities, flights,
  *            etc.)
  */
 public class Graph<T> {
+  private static final LatencyHistogram ADD_VERTEX_NANOS = Metrics.histogram("graph.addVertex.ns");
+  private static final LatencyHistogram ADD_EDGE_NANOS = Metrics.histogram("graph.addEdge.ns");
+  private static final LatencyHistogram GET_NEIGHBORS_NANOS = Metrics.histogram("graph.getNeighbors.ns");
+  private static final LatencyHistogram REMOVE_VERTEX_NANOS = Metrics.histogram("graph.removeVertex.ns");
+
   private final Map<T, Map<T, Integer>> adjacencyList; // Adjacency list representation of the graph
+  private final Map<T, Set<T>> predecessors; // Sources of the incoming edges of every vertex
+  private final List<GraphListener<T>> listeners;
 
   /**
    * Constructs an empty graph.
@@ -21,6 +38,27 @@ public class Graph<T> {
    */
   public Graph() {
     this.adjacencyList = new HashMap<>();
+    this.predecessors = new HashMap<>();
+    this.listeners = new ArrayList<>();
+  }
+
+  /**
+   * Registers a listener that is notified of vertices and edges added to the
+   * graph.
+   *
+   * @param listener the listener to register
+   */
+  public void addListener(GraphListener<T> listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Unregisters a previously registered listener.
+   *
+   * @param listener the listener to remove
+   */
+  public void removeListener(GraphListener<T> listener) {
+    listeners.remove(listener);
   }
 
   /**
@@ -30,7 +68,11 @@ public class Graph<T> {
    * @param vertex the vertex to add to the graph
    */
   public void addVertex(T vertex) {
-    adjacencyList.putIfAbsent(vertex, new HashMap<>());
+    long start = System.nanoTime();
+    if (adjacencyList.putIfAbsent(vertex, new HashMap<>()) == null) {
+      listeners.forEach(listener -> listener.onVertexAdded(vertex));
+    }
+    ADD_VERTEX_NANOS.recordSince(start);
   }
 
   /**
@@ -42,7 +84,87 @@ public class Graph<T> {
    * @param cost the cost (weight) associated with the edge
    */
   public void addEdge(T from, T to, int cost) {
-    adjacencyList.computeIfAbsent(from, k -> new HashMap<>()).put(to, cost);
+    long start = System.nanoTime();
+    addVertex(from);
+    adjacencyList.get(from).put(to, cost);
+    predecessors.computeIfAbsent(to, k -> new HashSet<>()).add(from);
+    listeners.forEach(listener -> listener.onEdgeAdded(from, to, cost));
+    ADD_EDGE_NANOS.recordSince(start);
+  }
+
+  /**
+   * Removes the edge between two vertices, if there is one.
+   *
+   * @param from the starting vertex of the edge
+   * @param to   the ending vertex of the edge
+   * @return true if the edge was removed, false if there was no such edge
+   */
+  public boolean removeEdge(T from, T to) {
+    Map<T, Integer> neighbors = adjacencyList.get(from);
+    if (neighbors == null || !neighbors.containsKey(to)) {
+      return false;
+    }
+    neighbors.remove(to);
+    unlinkPredecessor(to, from);
+    listeners.forEach(listener -> listener.onEdgeRemoved(from, to));
+    return true;
+  }
+
+  /**
+   * Removes a vertex and every edge leading to or from it. Listeners are
+   * notified of each removed edge before the vertex itself.
+   * The cost is proportional to the number of edges of the vertex.
+   *
+   * @param vertex the vertex to remove
+   * @return true if the vertex was removed, false if it was not in the graph
+   */
+  public boolean removeVertex(T vertex) {
+    long start = System.nanoTime();
+    Map<T, Integer> neighbors = adjacencyList.remove(vertex);
+    Set<T> sources = predecessors.remove(vertex);
+    if (neighbors == null && sources == null) {
+      REMOVE_VERTEX_NANOS.recordSince(start);
+      return false;
+    }
+    if (neighbors != null) {
+      for (T to : neighbors.keySet()) {
+        if (!to.equals(vertex)) {
+          unlinkPredecessor(to, vertex);
+        }
+        listeners.forEach(listener -> listener.onEdgeRemoved(vertex, to));
+      }
+    }
+    if (sources != null) {
+      for (T from : sources) {
+        if (!from.equals(vertex)) {
+          adjacencyList.get(from).remove(vertex);
+          listeners.forEach(listener -> listener.onEdgeRemoved(from, vertex));
+        }
+      }
+    }
+    if (neighbors != null) {
+      listeners.forEach(listener -> listener.onVertexRemoved(vertex));
+    }
+    REMOVE_VERTEX_NANOS.recordSince(start);
+    return true;
+  }
+
+  private void unlinkPredecessor(T to, T from) {
+    Set<T> sources = predecessors.get(to);
+    sources.remove(from);
+    if (sources.isEmpty()) {
+      predecessors.remove(to);
+    }
+  }
+
+  /**
+   * Retrieves the vertices that have an edge to a specific vertex.
+   *
+   * @param vertex the vertex whose predecessors are to be retrieved
+   * @return the starting vertices of the edges leading to the vertex
+   */
+  public Set<T> getPredecessors(T vertex) {
+    return Collections.unmodifiableSet(predecessors.getOrDefault(vertex, Collections.emptySet()));
   }
 
   /**
@@ -64,7 +186,10 @@ public class Graph<T> {
    * @return a map of neighboring vertices and their associated edge costs
    */
   public Map<T, Integer> getNeighbors(T vertex) {
-    return adjacencyList.getOrDefault(vertex, new HashMap<>());
+    long start = System.nanoTime();
+    Map<T, Integer> neighbors = adjacencyList.getOrDefault(vertex, new HashMap<>());
+    GET_NEIGHBORS_NANOS.recordSince(start);
+    return neighbors;
   }
 
   /**
@@ -76,6 +201,15 @@ public class Graph<T> {
     return adjacencyList;
   }
 
+  /**
+   * Removes every vertex and edge from the graph.
+   */
+  public void clear() {
+    adjacencyList.clear();
+    predecessors.clear();
+    listeners.forEach(GraphListener::onCleared);
+  }
+
   /**
    * Prints a user-friendly representation of the graph.
    * Each vertex and its outgoing edges are displayed as a group.
@@ -83,21 +217,9 @@ public class Graph<T> {
    * Vertex -> { Destination1 (Cost: X), Destination2 (Cost: Y), ... }
    */
   public void printGraph() {
-    System.out.println("Graph Representation:");
-    adjacencyList.forEach((from, edges) -> {
-      StringBuilder representation = new StringBuilder();
-      representation.append(from).append(" -> { ");
-      edges.forEach((to, cost) -> {
-        representation.append(to).append("), ");
-      });
-
-      // Remove the trailing comma and space, then close the braces
-      if (!edges.isEmpty()) {
-        representation.setLength(representation.length() - 2);
-      }
-      representation.append(" }");
-
-      System.out.println(representation);
-    });
+    OutputBuffer out = OutputBuffer.stdout();
+    out.append("Graph Representation:").newLine();
+    GraphRenderer.renderText(this, out);
+    out.flush();
   }
 }
@@ -0,0 +1,53 @@
+package shared.structures;
+
+/**
+ * Receives notifications about structural changes to a {@link Graph}.
+ * All methods have empty default implementations so listeners only override
+ * the events they care about.
+ *
+ * @param <T> the type of vertices in the graph
+ */
+public interface GraphListener<T> {
+  /**
+   * Called after a new vertex has been added to the graph.
+   *
+   * @param vertex the vertex that was added
+   */
+  default void onVertexAdded(T vertex) {
+  }
+
+  /**
+   * Called after an edge has been added or its cost replaced.
+   *
+   * @param from the starting vertex of the edge
+   * @param to   the ending vertex of the edge
+   * @param cost the cost (weight) of the edge
+   */
+  default void onEdgeAdded(T from, T to, int cost) {
+  }
+
+  /**
+   * Called after an edge has been removed, either on its own or along with
+   * one of its vertices.
+   *
+   * @param from the starting vertex of the edge
+   * @param to   the ending vertex of the edge
+   */
+  default void onEdgeRemoved(T from, T to) {
+  }
+
+  /**
+   * Called after a vertex has been removed from the graph, once its edges
+   * have been removed.
+   *
+   * @param vertex the vertex that was removed
+   */
+  default void onVertexRemoved(T vertex) {
+  }
+
+  /**
+   * Called after every vertex and edge has been removed from the graph.
+   */
+  default void onCleared() {
+  }
+}
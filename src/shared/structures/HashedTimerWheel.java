@@ -0,0 +1,168 @@
+package shared.structures;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * A hashed timer wheel: timeouts are kept in a ring of buckets, one per tick,
+ * and each tick only looks at the timeouts in its own bucket. Scheduling and
+ * cancelling are O(1), and expiry is O(1) per timeout per revolution of the
+ * wheel, however many timeouts are outstanding. Timeouts fire at the first
+ * tick at or after their deadline, so their precision is one tick.
+ * The wheel does not run by itself; call {@link #advance()} periodically, for
+ * example once per tick from a single scheduled task.
+ */
+public class HashedTimerWheel {
+  private final long tickMillis;
+  private final Timeout[] buckets;
+  private final int mask;
+  private final LongSupplier clock;
+  private long currentTick;
+  private int size;
+
+  /**
+   * Constructs a timer wheel on the system clock.
+   *
+   * @param tickMillis the length of a tick in milliseconds
+   * @param wheelSize  the number of buckets, rounded up to a power of two
+   */
+  public HashedTimerWheel(long tickMillis, int wheelSize) {
+    this(tickMillis, wheelSize, System::currentTimeMillis);
+  }
+
+  /**
+   * Constructs a timer wheel.
+   *
+   * @param tickMillis the length of a tick in milliseconds
+   * @param wheelSize  the number of buckets, rounded up to a power of two
+   * @param clock      the source of the current time in milliseconds
+   */
+  public HashedTimerWheel(long tickMillis, int wheelSize, LongSupplier clock) {
+    if (tickMillis < 1 || wheelSize < 1) {
+      throw new IllegalArgumentException("Tick and wheel size must be positive: " + tickMillis + ", " + wheelSize);
+    }
+    int capacity = 1;
+    while (capacity < wheelSize) {
+      capacity <<= 1;
+    }
+    this.tickMillis = tickMillis;
+    this.buckets = new Timeout[capacity];
+    this.mask = capacity - 1;
+    this.clock = clock;
+    this.currentTick = clock.getAsLong() / tickMillis;
+  }
+
+  /**
+   * Schedules a task to run after a delay.
+   *
+   * @param task        the task, run on the thread that calls
+   *                    {@link #advance()}
+   * @param delayMillis the delay in milliseconds
+   * @return a handle to cancel the task
+   */
+  public synchronized Timeout schedule(Runnable task, long delayMillis) {
+    long deadlineTick = Math.max((clock.getAsLong() + Math.max(delayMillis, 0) + tickMillis - 1) / tickMillis,
+        currentTick + 1);
+    Timeout timeout = new Timeout(this, task, deadlineTick);
+    int bucket = (int) deadlineTick & mask;
+    timeout.next = buckets[bucket];
+    if (timeout.next != null) {
+      timeout.next.previous = timeout;
+    }
+    buckets[bucket] = timeout;
+    size++;
+    return timeout;
+  }
+
+  /**
+   * Runs every task whose deadline has passed, up to the current time of the
+   * clock.
+   *
+   * @return the number of tasks run
+   */
+  public int advance() {
+    List<Timeout> expired = new ArrayList<>();
+    synchronized (this) {
+      long targetTick = clock.getAsLong() / tickMillis;
+      // After a long pause, one revolution visits every bucket
+      long firstTick = Math.max(currentTick + 1, targetTick - mask);
+      for (long tick = firstTick; tick <= targetTick; tick++) {
+        Timeout timeout = buckets[(int) tick & mask];
+        while (timeout != null) {
+          Timeout next = timeout.next;
+          if (timeout.deadlineTick <= targetTick) {
+            unlink(timeout);
+            expired.add(timeout);
+          }
+          timeout = next;
+        }
+      }
+      currentTick = Math.max(currentTick, targetTick);
+    }
+    for (Timeout timeout : expired) {
+      timeout.task.run();
+    }
+    return expired.size();
+  }
+
+  /**
+   * Gets the number of scheduled tasks that have not run or been cancelled.
+   *
+   * @return the number of pending tasks
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  private synchronized boolean cancel(Timeout timeout) {
+    if (timeout.done) {
+      return false;
+    }
+    unlink(timeout);
+    return true;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.previous != null) {
+      timeout.previous.next = timeout.next;
+    } else {
+      buckets[(int) timeout.deadlineTick & mask] = timeout.next;
+    }
+    if (timeout.next != null) {
+      timeout.next.previous = timeout.previous;
+    }
+    timeout.previous = null;
+    timeout.next = null;
+    timeout.done = true;
+    size--;
+  }
+
+  /**
+   * A handle to a scheduled task.
+   */
+  public static class Timeout {
+    private final HashedTimerWheel wheel;
+    private final Runnable task;
+    private final long deadlineTick;
+    private Timeout previous;
+    private Timeout next;
+    private boolean done;
+
+    private Timeout(HashedTimerWheel wheel, Runnable task, long deadlineTick) {
+      this.wheel = wheel;
+      this.task = task;
+      this.deadlineTick = deadlineTick;
+    }
+
+    /**
+     * Cancels the task if it has not run yet.
+     *
+     * @return true if the task was cancelled, false if it already ran or was
+     *         cancelled before
+     */
+    public boolean cancel() {
+      return wheel.cancel(this);
+    }
+  }
+}
@@ -0,0 +1,363 @@
+package shared.structures;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import models.CrewMember;
+import models.Flight;
+import shared.render.OutputBuffer;
+
+/**
+ * Stores crew records keyed by flight and seat outside the Java heap.
+ * Records are kept in an open-addressing hash table inside a direct byte
+ * buffer, chained per flight so a single flight can be listed without scanning
+ * the whole table. Names are interned in a shared {@link StringArena}, so the
+ * heap only holds one id per flight instead of one object graph per crew
+ * member.
+ * A flight can keep its crew in the store by being constructed with an index
+ * from {@link #newIndex()}. The store is thread-safe, so flights booked on
+ * different threads can share it.
+ */
+public class OffHeapCrewStore {
+  private static final int SLOT_BYTES = 16; // owner + 1, seat, name offset, next slot + 1
+  private static final int OWNER = 0;
+  private static final int SEAT = 4;
+  private static final int NAME = 8;
+  private static final int NEXT = 12;
+  private static final int INITIAL_SLOTS = 1 << 10;
+
+  private final StringArena names;
+  private final Map<Flight, Integer> flightIds;
+  private int owners;
+  private int[] heads; // first slot + 1 of each owner's chain
+  private int[] counts;
+  private ByteBuffer table;
+  private int slotCount;
+  private int size;
+
+  /**
+   * Constructs an empty store with its own string arena.
+   */
+  public OffHeapCrewStore() {
+    this(new StringArena());
+  }
+
+  /**
+   * Constructs an empty store that interns names into the given arena, which
+   * may be shared with other stores.
+   *
+   * @param names the arena used to store crew names
+   */
+  public OffHeapCrewStore(StringArena names) {
+    this.names = names;
+    this.flightIds = new HashMap<>();
+    this.heads = new int[16];
+    this.counts = new int[16];
+    this.slotCount = INITIAL_SLOTS;
+    this.table = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_BYTES);
+  }
+
+  /**
+   * Creates an empty crew index whose records live in this store, to be
+   * passed to a flight's constructor in place of an AVL tree. Lookups and
+   * inserts are hash lookups; ranks and positional selects scan the flight's
+   * records.
+   *
+   * @return a new crew index backed by the store
+   */
+  public synchronized OrderedIndex<CrewMember> newIndex() {
+    return new StoredIndex(newOwner());
+  }
+
+  /**
+   * Stores a crew member for a flight.
+   * If the seat is already taken on that flight, the store is left unchanged,
+   * matching the behavior of the AVL tree.
+   *
+   * @param flight     the flight the crew member is assigned to
+   * @param crewMember the crew member to store
+   * @return true if the record was stored, false if the seat was already taken
+   */
+  public synchronized boolean put(Flight flight, CrewMember crewMember) {
+    return put(flightId(flight), crewMember);
+  }
+
+  /**
+   * Copies every crew member of a flight's crew tree into the store.
+   *
+   * @param flight the flight whose crew members are copied
+   */
+  public void putAll(Flight flight) {
+    flight.getCrewTree().forEach(crewMember -> put(flight, crewMember));
+  }
+
+  /**
+   * Retrieves the name of the crew member sitting in a seat.
+   *
+   * @param flight     the flight to look up
+   * @param seatNumber the seat number to look up
+   * @return the crew member's name, or null if the seat is free
+   */
+  public synchronized String getName(Flight flight, int seatNumber) {
+    Integer flightId = flightIds.get(flight);
+    return flightId == null ? null : getName(flightId, seatNumber);
+  }
+
+  /**
+   * Retrieves the crew member sitting in a seat as a heap object.
+   *
+   * @param flight     the flight to look up
+   * @param seatNumber the seat number to look up
+   * @return a new crew member instance, or null if the seat is free
+   */
+  public CrewMember get(Flight flight, int seatNumber) {
+    String name = getName(flight, seatNumber);
+    return name == null ? null : new CrewMember(name, seatNumber);
+  }
+
+  /**
+   * Visits the crew members of a flight in ascending seat order.
+   * Each crew member is materialized on the heap only for the duration of the
+   * callback.
+   *
+   * @param flight the flight whose crew members are visited
+   * @param action the action to perform on each crew member
+   */
+  public void forEach(Flight flight, Consumer<? super CrewMember> action) {
+    Integer flightId;
+    synchronized (this) {
+      flightId = flightIds.get(flight);
+    }
+    if (flightId != null) {
+      forEach(flightId, action);
+    }
+  }
+
+  /**
+   * Gets the number of crew members stored for a flight.
+   *
+   * @param flight the flight to count
+   * @return the number of stored crew members
+   */
+  public synchronized int count(Flight flight) {
+    Integer flightId = flightIds.get(flight);
+    return flightId == null ? 0 : counts[flightId];
+  }
+
+  /**
+   * Gets the total number of crew records in the store.
+   *
+   * @return the number of records
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Gets the number of off-heap bytes reserved by the record table and the
+   * name arena.
+   *
+   * @return the reserved off-heap bytes
+   */
+  public synchronized long offHeapBytes() {
+    return (long) table.capacity() + names.offHeapBytes();
+  }
+
+  private int flightId(Flight flight) {
+    Integer id = flightIds.get(flight);
+    if (id == null) {
+      id = newOwner();
+      flightIds.put(flight, id);
+    }
+    return id;
+  }
+
+  private int newOwner() {
+    int owner = owners++;
+    if (owner == heads.length) {
+      heads = Arrays.copyOf(heads, owner * 2);
+      counts = Arrays.copyOf(counts, owner * 2);
+    }
+    return owner;
+  }
+
+  private synchronized boolean put(int owner, CrewMember crewMember) {
+    int seat = crewMember.value;
+    if (find(owner, seat) >= 0) {
+      return false;
+    }
+    if ((size + 1) * 4 > slotCount * 3) {
+      resize();
+    }
+    insert(owner, seat, names.intern(crewMember.getName()));
+    size++;
+    return true;
+  }
+
+  private synchronized String getName(int owner, int seat) {
+    int slot = find(owner, seat);
+    return slot < 0 ? null : names.get(table.getInt(slot * SLOT_BYTES + NAME));
+  }
+
+  /**
+   * Gets the slots of an owner's records ordered by seat, each packed as the
+   * seat in the high half and the slot in the low half.
+   */
+  private synchronized long[] orderedSlots(int owner) {
+    long[] ordered = new long[counts[owner]];
+    int n = 0;
+    for (int slot = heads[owner] - 1; slot >= 0; slot = table.getInt(slot * SLOT_BYTES + NEXT) - 1) {
+      ordered[n++] = ((long) table.getInt(slot * SLOT_BYTES + SEAT) << 32) | slot;
+    }
+    Arrays.sort(ordered);
+    return ordered;
+  }
+
+  private void forEach(int owner, Consumer<? super CrewMember> action) {
+    // Materialize the records first, so the action runs without the lock; the
+    // slots are only valid until the next resize, so both steps share the lock
+    CrewMember[] crew;
+    synchronized (this) {
+      long[] ordered = orderedSlots(owner);
+      crew = new CrewMember[ordered.length];
+      for (int i = 0; i < ordered.length; i++) {
+        crew[i] = materialize((int) ordered[i]);
+      }
+    }
+    for (CrewMember crewMember : crew) {
+      action.accept(crewMember);
+    }
+  }
+
+  private CrewMember materialize(int slot) {
+    int base = slot * SLOT_BYTES;
+    return new CrewMember(names.get(table.getInt(base + NAME)), table.getInt(base + SEAT));
+  }
+
+  private int find(int flightId, int seat) {
+    int mask = slotCount - 1;
+    for (int slot = hash(flightId, seat) & mask;; slot = (slot + 1) & mask) {
+      int base = slot * SLOT_BYTES;
+      int storedFlight = table.getInt(base + OWNER);
+      if (storedFlight == 0) {
+        return -1;
+      }
+      if (storedFlight == flightId + 1 && table.getInt(base + SEAT) == seat) {
+        return slot;
+      }
+    }
+  }
+
+  private void insert(int flightId, int seat, int nameOffset) {
+    int mask = slotCount - 1;
+    int slot = hash(flightId, seat) & mask;
+    while (table.getInt(slot * SLOT_BYTES + OWNER) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    int base = slot * SLOT_BYTES;
+    table.putInt(base + OWNER, flightId + 1);
+    table.putInt(base + SEAT, seat);
+    table.putInt(base + NAME, nameOffset);
+    table.putInt(base + NEXT, heads[flightId]);
+    heads[flightId] = slot + 1;
+    counts[flightId]++;
+  }
+
+  private void resize() {
+    if ((long) slotCount * 2 * SLOT_BYTES > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Off-heap crew store is full");
+    }
+    ByteBuffer old = table;
+    int oldSlots = slotCount;
+    slotCount = oldSlots * 2;
+    table = ByteBuffer.allocateDirect(slotCount * SLOT_BYTES);
+    Arrays.fill(heads, 0);
+    Arrays.fill(counts, 0);
+
+    for (int slot = 0; slot < oldSlots; slot++) {
+      int base = slot * SLOT_BYTES;
+      int storedFlight = old.getInt(base + OWNER);
+      if (storedFlight != 0) {
+        insert(storedFlight - 1, old.getInt(base + SEAT), old.getInt(base + NAME));
+      }
+    }
+  }
+
+  /**
+   * The crew of one flight, kept in the store.
+   */
+  private class StoredIndex implements OrderedIndex<CrewMember> {
+    private final int owner;
+
+    StoredIndex(int owner) {
+      this.owner = owner;
+    }
+
+    @Override
+    public boolean insert(CrewMember entity) {
+      return put(owner, entity);
+    }
+
+    @Override
+    public CrewMember get(int key) {
+      String name = getName(owner, key);
+      return name == null ? null : new CrewMember(name, key);
+    }
+
+    @Override
+    public boolean contains(int key) {
+      synchronized (OffHeapCrewStore.this) {
+        return find(owner, key) >= 0;
+      }
+    }
+
+    @Override
+    public int size() {
+      synchronized (OffHeapCrewStore.this) {
+        return counts[owner];
+      }
+    }
+
+    @Override
+    public int rank(int key) {
+      synchronized (OffHeapCrewStore.this) {
+        int rank = 0;
+        for (int slot = heads[owner] - 1; slot >= 0; slot = table.getInt(slot * SLOT_BYTES + NEXT) - 1) {
+          if (table.getInt(slot * SLOT_BYTES + SEAT) < key) {
+            rank++;
+          }
+        }
+        return rank;
+      }
+    }
+
+    @Override
+    public CrewMember select(int index) {
+      synchronized (OffHeapCrewStore.this) {
+        long[] ordered = orderedSlots(owner);
+        return index < 0 || index >= ordered.length ? null : materialize((int) ordered[index]);
+      }
+    }
+
+    @Override
+    public void forEach(Consumer<? super CrewMember> action) {
+      OffHeapCrewStore.this.forEach(owner, action);
+    }
+
+    @Override
+    public void printTree() {
+      OutputBuffer out = OutputBuffer.stdout();
+      forEach(crewMember -> out.append(crewMember.value).append(": ").append(crewMember.getName()).newLine());
+      out.flush();
+    }
+  }
+
+  private static int hash(int flightId, int seat) {
+    int h = flightId * 0x9E3779B9 + seat;
+    h *= 0x85EBCA6B;
+    return h ^ (h >>> 15);
+  }
+}
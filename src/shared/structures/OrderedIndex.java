@@ -0,0 +1,90 @@
+package shared.structures;
+
+import java.util.function.Consumer;
+
+import models.TreeEntity;
+
+/**
+ * An ordered collection of tree entities keyed by their value.
+ * Implementations ignore inserts whose value is already present.
+ *
+ * @param <T> the type of entities stored in the index
+ */
+public interface OrderedIndex<T extends TreeEntity> {
+  /**
+   * Inserts an entity into the index.
+   * If an entity with the same value already exists, the index is unchanged.
+   *
+   * @param entity the entity to be inserted
+   * @return true if the entity was inserted, false if its value was present
+   */
+  boolean insert(T entity);
+
+  /**
+   * Retrieves the entity stored under a value.
+   *
+   * @param key the value to look up
+   * @return the entity, or null if there is none
+   */
+  T get(int key);
+
+  /**
+   * Determines whether an entity is stored under a value.
+   *
+   * @param key the value to look up
+   * @return true if the value is present, false otherwise
+   */
+  default boolean contains(int key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Gets the number of entities in the index.
+   *
+   * @return the number of entities
+   */
+  int size();
+
+  /**
+   * Counts the entities whose value is lower than a key.
+   *
+   * @param key the key to compare against
+   * @return the number of entities with a smaller value
+   */
+  int rank(int key);
+
+  /**
+   * Retrieves the entity at a position of the in-order sequence.
+   *
+   * @param index the zero-based position, so 0 selects the smallest value
+   * @return the entity at that position, or null if the index is out of range
+   */
+  T select(int index);
+
+  /**
+   * Counts the entities whose value lies within a range.
+   *
+   * @param low  the lowest value, inclusive
+   * @param high the highest value, inclusive
+   * @return the number of entities in the range
+   */
+  default int countInRange(int low, int high) {
+    if (low > high) {
+      return 0;
+    }
+    int upper = high == Integer.MAX_VALUE ? size() : rank(high + 1);
+    return upper - rank(low);
+  }
+
+  /**
+   * Visits every entity in ascending order of their values.
+   *
+   * @param action the action to perform on each entity
+   */
+  void forEach(Consumer<? super T> action);
+
+  /**
+   * Prints the index in a graphical format.
+   */
+  void printTree();
+}
@@ -0,0 +1,150 @@
+package shared.structures;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An append-only arena of interned strings stored outside the Java heap.
+ * Each distinct string is encoded once as UTF-8 in a direct byte buffer and
+ * referenced by its offset, so repeated names cost a single int per use.
+ * The arena is thread-safe, so several crew stores can share it.
+ */
+public class StringArena {
+  private static final int INITIAL_BYTES = 1 << 16;
+  private static final int INITIAL_SLOTS = 1 << 10;
+
+  private ByteBuffer bytes; // [length:int][utf-8 bytes] per entry
+  private int[] slots; // open-addressing table of offset + 1, 0 means empty
+  private int[] hashes;
+  private int count;
+
+  /**
+   * Constructs an empty arena.
+   */
+  public StringArena() {
+    this.bytes = ByteBuffer.allocateDirect(INITIAL_BYTES);
+    this.slots = new int[INITIAL_SLOTS];
+    this.hashes = new int[INITIAL_SLOTS];
+  }
+
+  /**
+   * Stores a string in the arena, reusing the existing copy if the same string
+   * was interned before.
+   *
+   * @param value the string to intern
+   * @return the offset that identifies the string in the arena
+   */
+  public synchronized int intern(String value) {
+    byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+    int hash = Arrays.hashCode(encoded);
+    int mask = slots.length - 1;
+
+    for (int i = mix(hash) & mask;; i = (i + 1) & mask) {
+      if (slots[i] == 0) {
+        int offset = append(encoded);
+        slots[i] = offset + 1;
+        hashes[i] = hash;
+        if (++count * 2 > slots.length) {
+          rehash();
+        }
+        return offset;
+      }
+      if (hashes[i] == hash && matches(slots[i] - 1, encoded)) {
+        return slots[i] - 1;
+      }
+    }
+  }
+
+  /**
+   * Decodes the string stored at the given offset.
+   *
+   * @param offset the offset returned by {@link #intern(String)}
+   * @return the decoded string
+   */
+  public synchronized String get(int offset) {
+    int length = bytes.getInt(offset);
+    byte[] encoded = new byte[length];
+    for (int i = 0; i < length; i++) {
+      encoded[i] = bytes.get(offset + Integer.BYTES + i);
+    }
+    return new String(encoded, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the number of distinct strings in the arena.
+   *
+   * @return the number of interned strings
+   */
+  public synchronized int size() {
+    return count;
+  }
+
+  /**
+   * Gets the number of off-heap bytes reserved by the arena.
+   *
+   * @return the capacity of the backing buffer in bytes
+   */
+  public synchronized long offHeapBytes() {
+    return bytes.capacity();
+  }
+
+  private int append(byte[] encoded) {
+    int offset = bytes.position();
+    ensureCapacity(Integer.BYTES + encoded.length);
+    bytes.putInt(encoded.length);
+    bytes.put(encoded);
+    return offset;
+  }
+
+  private boolean matches(int offset, byte[] encoded) {
+    if (bytes.getInt(offset) != encoded.length) {
+      return false;
+    }
+    for (int i = 0; i < encoded.length; i++) {
+      if (bytes.get(offset + Integer.BYTES + i) != encoded[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (bytes.remaining() >= extra) {
+      return;
+    }
+    long required = (long) bytes.position() + extra;
+    long newCapacity = Math.max(required, (long) bytes.capacity() * 2);
+    if (newCapacity > Integer.MAX_VALUE) {
+      throw new IllegalStateException("String arena is full");
+    }
+    ByteBuffer grown = ByteBuffer.allocateDirect((int) newCapacity);
+    bytes.flip();
+    grown.put(bytes);
+    bytes = grown;
+  }
+
+  private void rehash() {
+    int[] oldSlots = slots;
+    int[] oldHashes = hashes;
+    slots = new int[oldSlots.length * 2];
+    hashes = new int[oldSlots.length * 2];
+    int mask = slots.length - 1;
+
+    for (int j = 0; j < oldSlots.length; j++) {
+      if (oldSlots[j] == 0) {
+        continue;
+      }
+      int i = mix(oldHashes[j]) & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = oldSlots[j];
+      hashes[i] = oldHashes[j];
+    }
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,263 @@
+package shared.structures;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A size-bounded cache with W-TinyLFU eviction.
+ * New entries enter a small LRU window; entries leaving the window are only
+ * admitted to the main space, a segmented LRU, if they have been requested
+ * more often than the entry they would evict. This keeps popular keys cached
+ * even under bursts of one-off requests.
+ * The cache is split into independently locked segments by key hash, so
+ * concurrent callers only contend when they hit the same segment.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class TinyLfuCache<K, V> {
+  private final Segment<K, V>[] segments;
+  private final int segmentMask;
+
+  /**
+   * Constructs a cache.
+   *
+   * @param maximumSize the largest number of entries kept
+   */
+  public TinyLfuCache(int maximumSize) {
+    int count = 1;
+    while (count < 4 * Runtime.getRuntime().availableProcessors() && count * 64 <= maximumSize) {
+      count <<= 1;
+    }
+    this.segments = newSegments(count);
+    this.segmentMask = count - 1;
+    for (int i = 0; i < count; i++) {
+      segments[i] = new Segment<>(Math.max(maximumSize / count, 1));
+    }
+  }
+
+  /**
+   * Looks up a value and records the request for the admission policy.
+   *
+   * @param key the key
+   * @return the value, or null if the key is not cached
+   */
+  public V get(K key) {
+    int hash = spread(key.hashCode());
+    return segmentFor(hash).get(key, hash);
+  }
+
+  /**
+   * Caches a value. The entry may be evicted straight away if the window is
+   * full and the key is less popular than the main space's eviction
+   * candidate.
+   *
+   * @param key   the key
+   * @param value the value
+   */
+  public void put(K key, V value) {
+    int hash = spread(key.hashCode());
+    segmentFor(hash).put(key, value, hash);
+  }
+
+  /**
+   * Removes a key from the cache.
+   *
+   * @param key the key
+   */
+  public void remove(K key) {
+    int hash = spread(key.hashCode());
+    segmentFor(hash).remove(key);
+  }
+
+  /**
+   * Removes every entry whose value matches a condition.
+   *
+   * @param condition the condition
+   */
+  public void removeIf(Predicate<? super V> condition) {
+    for (Segment<K, V> segment : segments) {
+      segment.removeIf(condition);
+    }
+  }
+
+  /**
+   * Removes every entry. Request frequencies are kept.
+   */
+  public void clear() {
+    removeIf(value -> true);
+  }
+
+  /**
+   * Gets the number of cached entries.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  private Segment<K, V> segmentFor(int hash) {
+    return segments[(hash >>> 16) & segmentMask];
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static <K, V> Segment<K, V>[] newSegments(int count) {
+    return new Segment[count];
+  }
+
+  private static int spread(int hash) {
+    hash *= 0x9e3779b9;
+    return hash ^ (hash >>> 15);
+  }
+
+  /**
+   * One independently locked W-TinyLFU cache. The window holds about 1% of
+   * the entries; the main space is split into a probation area for entries
+   * seen once since admission and a protected area, 80% of the main space, for
+   * entries requested again.
+   */
+  private static class Segment<K, V> {
+    private final ReentrantLock lock;
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<K, V> window;
+    private final LinkedHashMap<K, V> probation;
+    private final LinkedHashMap<K, V> protectedArea;
+    private final int windowSize;
+    private final int mainSize;
+    private final int protectedSize;
+
+    Segment(int maximumSize) {
+      this.lock = new ReentrantLock();
+      this.sketch = new FrequencySketch(maximumSize);
+      this.window = new LinkedHashMap<>(16, 0.75f, true);
+      this.probation = new LinkedHashMap<>(16, 0.75f, true);
+      this.protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+      this.windowSize = Math.max(maximumSize / 100, 1);
+      this.mainSize = Math.max(maximumSize - windowSize, 1);
+      this.protectedSize = mainSize * 8 / 10;
+    }
+
+    V get(K key, int hash) {
+      lock.lock();
+      try {
+        sketch.increment(hash);
+        V value = window.get(key);
+        if (value != null) {
+          return value;
+        }
+        value = protectedArea.get(key);
+        if (value != null) {
+          return value;
+        }
+        value = probation.remove(key);
+        if (value != null) {
+          promote(key, value);
+        }
+        return value;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void put(K key, V value, int hash) {
+      lock.lock();
+      try {
+        if (window.containsKey(key)) {
+          window.put(key, value);
+          return;
+        }
+        if (protectedArea.containsKey(key)) {
+          protectedArea.put(key, value);
+          return;
+        }
+        if (probation.remove(key) != null) {
+          promote(key, value);
+          return;
+        }
+        sketch.increment(hash);
+        window.put(key, value);
+        if (window.size() > windowSize) {
+          Map.Entry<K, V> candidate = removeEldest(window);
+          admit(candidate.getKey(), candidate.getValue());
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void remove(K key) {
+      lock.lock();
+      try {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+          protectedArea.remove(key);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    void removeIf(Predicate<? super V> condition) {
+      lock.lock();
+      try {
+        window.values().removeIf(condition);
+        probation.values().removeIf(condition);
+        protectedArea.values().removeIf(condition);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    int size() {
+      lock.lock();
+      try {
+        return window.size() + probation.size() + protectedArea.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Moves an entry leaving the window into the main space if there is room
+     * or if it is more popular than the probation entry it would replace.
+     */
+    private void admit(K key, V value) {
+      if (probation.size() + protectedArea.size() < mainSize) {
+        probation.put(key, value);
+        return;
+      }
+      LinkedHashMap<K, V> victims = probation.isEmpty() ? protectedArea : probation;
+      K victim = victims.keySet().iterator().next();
+      int candidateFrequency = sketch.frequency(spread(key.hashCode()));
+      int victimFrequency = sketch.frequency(spread(victim.hashCode()));
+      if (candidateFrequency > victimFrequency) {
+        victims.remove(victim);
+        probation.put(key, value);
+      }
+    }
+
+    private void promote(K key, V value) {
+      protectedArea.put(key, value);
+      if (protectedArea.size() > protectedSize) {
+        Map.Entry<K, V> demoted = removeEldest(protectedArea);
+        probation.put(demoted.getKey(), demoted.getValue());
+      }
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+      Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+      Map.Entry<K, V> eldest = iterator.next();
+      Map.Entry<K, V> copy = new AbstractMap.SimpleImmutableEntry<>(eldest);
+      iterator.remove();
+      return copy;
+    }
+  }
+}
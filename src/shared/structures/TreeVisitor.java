@@ -0,0 +1,19 @@
+package shared.structures;
+
+/**
+ * Receives the nodes of a tree during a structural traversal.
+ *
+ * @param <T> the type of entities stored in the tree
+ */
+@FunctionalInterface
+public interface TreeVisitor<T> {
+  /**
+   * Visits a node of the tree.
+   *
+   * @param entity  the entity stored in the node
+   * @param depth   the depth of the node, 0 for the root
+   * @param isRight true if the node is the right child of its parent; the root
+   *                is reported as a right child
+   */
+  void visit(T entity, int depth, boolean isRight);
+}
@@ -0,0 +1,163 @@
+package shared.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import models.CrewMember;
+import models.Flight;
+import shared.structures.AVLTree;
+import shared.structures.Graph;
+
+/**
+ * Utility class to persist a flight graph to a directory and load it back.
+ * The flights and their connections are written to a single graph file and
+ * the crew members of each flight to a separate segment file. This lets the
+ * graph be loaded on its own, with each flight reading its crew segment only
+ * the first time its crew tree is needed.
+ */
+public class FlightStore {
+  private static final String GRAPH_FILE = "graph.bin";
+  private static final int MAGIC = 0x464C5431; // "FLT1"
+
+  /**
+   * Writes a flight graph and the crew of every flight to a directory.
+   * The directory is created if it does not exist. Flights may have been
+   * loaded lazily from the same directory: their crew is read before any file
+   * is overwritten, since the new flight ids need not match the old ones.
+   *
+   * @param flightGraph the graph to save
+   * @param directory   the directory to write to
+   * @throws IOException if the files cannot be written
+   */
+  public static void save(Graph<Flight> flightGraph, Path directory) throws IOException {
+    Files.createDirectories(directory);
+    List<Flight> flights = new ArrayList<>(flightGraph.getVertices().keySet());
+    Map<Flight, Integer> ids = new HashMap<>();
+    for (Flight flight : flights) {
+      ids.put(flight, ids.size());
+    }
+    for (Map<Flight, Integer> edges : flightGraph.getVertices().values()) {
+      for (Flight target : edges.keySet()) {
+        if (!ids.containsKey(target)) {
+          ids.put(target, flights.size()); // Edge targets are not always added as vertices
+          flights.add(target);
+        }
+      }
+    }
+
+    for (Flight flight : flights) {
+      flight.getCrewTree();
+    }
+
+    try (DataOutputStream out = open(directory.resolve(GRAPH_FILE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(flights.size());
+      for (int i = 0; i < flights.size(); i++) {
+        Flight flight = flights.get(i);
+        out.writeUTF(flight.getOrigin());
+        out.writeUTF(flight.getDestination());
+        out.writeInt(flight.getDefaultPrice());
+        out.writeInt(flight.getCapacity());
+        out.writeInt(flight.getOccupiedSeats());
+      }
+
+      for (Flight flight : flights) {
+        Map<Flight, Integer> edges = flightGraph.getNeighbors(flight);
+        out.writeInt(edges.size());
+        for (Map.Entry<Flight, Integer> edge : edges.entrySet()) {
+          out.writeInt(ids.get(edge.getKey()));
+          out.writeInt(edge.getValue());
+        }
+      }
+    }
+
+    for (int i = 0; i < flights.size(); i++) {
+      saveCrew(flights.get(i), segment(directory, i));
+    }
+  }
+
+  /**
+   * Loads a flight graph previously written by {@link #save(Graph, Path)}.
+   * In lazy mode only the graph file is read up front; each flight reads its
+   * crew segment on first access to its crew tree.
+   *
+   * @param directory the directory to read from
+   * @param lazy      true to defer reading crew segments, false to read them
+   *                  all immediately
+   * @return the loaded graph
+   * @throws IOException if the graph file cannot be read
+   */
+  public static Graph<Flight> load(Path directory, boolean lazy) throws IOException {
+    Graph<Flight> flightGraph = new Graph<>();
+
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(directory.resolve(GRAPH_FILE))))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a flight store: " + directory);
+      }
+      Flight[] flights = new Flight[in.readInt()];
+      for (int i = 0; i < flights.length; i++) {
+        Path segment = segment(directory, i);
+        flights[i] = new Flight(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(),
+            () -> loadCrew(segment));
+        if (!lazy) {
+          flights[i].getCrewTree();
+        }
+        flightGraph.addVertex(flights[i]);
+      }
+
+      for (Flight flight : flights) {
+        int edgeCount = in.readInt();
+        for (int j = 0; j < edgeCount; j++) {
+          flightGraph.addEdge(flight, flights[in.readInt()], in.readInt());
+        }
+      }
+    }
+    return flightGraph;
+  }
+
+  private static void saveCrew(Flight flight, Path segment) throws IOException {
+    List<CrewMember> crew = new ArrayList<>();
+    flight.getCrewTree().forEach(crew::add);
+
+    try (DataOutputStream out = open(segment)) {
+      out.writeInt(crew.size());
+      for (CrewMember crewMember : crew) {
+        out.writeInt(crewMember.value);
+        out.writeUTF(crewMember.getName());
+      }
+    }
+  }
+
+  private static AVLTree<CrewMember> loadCrew(Path segment) {
+    AVLTree<CrewMember> crewTree = new AVLTree<>();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        int seatNumber = in.readInt();
+        crewTree.insert(new CrewMember(in.readUTF(), seatNumber));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not load crew segment " + segment, e);
+    }
+    return crewTree;
+  }
+
+  private static DataOutputStream open(Path file) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+  }
+
+  private static Path segment(Path directory, int flightId) {
+    return directory.resolve("crew-" + flightId + ".bin");
+  }
+}
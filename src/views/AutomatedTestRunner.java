@@ -2,6 +2,7 @@ package views;
 
 import models.CrewMember;
 import models.Flight;
+import services.FlightIndex;
 import shared.structures.Graph;
 import views.utils.CliUtils;
 
@@ -11,7 +12,6 @@ import views.utils.CliUtils;
  * Each test provides detailed data and explanations for verification.
  */
 public class AutomatedTestRunner {
-
   /**
    * Executes all automated tests and displays the results.
    *
@@ -21,15 +21,19 @@ public class AutomatedTestRunner {
     System.out.println("=== Starting Automated Tests ===\n");
 
     // Clear any existing data
-    flightGraph.getVertices().clear();
+    flightGraph.clear();
+    FlightIndex flightIndex = new FlightIndex();
+    flightIndex.attach(flightGraph);
 
     // Run each test with detailed outputs
     testAddFlights(flightGraph);
-    testAddEdges(flightGraph);
-    testAddCrewMembers(flightGraph);
+    testAddEdges(flightGraph, flightIndex);
+    testAddCrewMembers(flightIndex);
     testGraphPrinting(flightGraph);
-    testCrewTreePrinting(flightGraph);
-    testPricingLogic(flightGraph);
+    testCrewTreePrinting(flightIndex);
+    testPricingLogic(flightIndex);
+
+    flightIndex.detach(flightGraph);
 
     System.out.println("\n=== Automated Tests Completed Successfully ===");
   }
@@ -62,13 +66,14 @@ public class AutomatedTestRunner {
    * Introduces and executes Test 2: Adding Connections (Edges).
    *
    * @param flightGraph the graph to use for testing
+   * @param flightIndex the index to find flights with
    */
-  private static void testAddEdges(Graph<Flight> flightGraph) {
+  private static void testAddEdges(Graph<Flight> flightGraph, FlightIndex flightIndex) {
     printTestIntro(2, "Adding Connections", "This test creates connections between flights with associated costs.");
 
-    Flight flight1 = findFlight(flightGraph, "Cordoba", "Buenos Aires");
-    Flight flight2 = findFlight(flightGraph, "Buenos Aires", "Bariloche");
-    Flight flight3 = findFlight(flightGraph, "Cordoba", "Bariloche");
+    Flight flight1 = findFlight(flightIndex, "Cordoba", "Buenos Aires");
+    Flight flight2 = findFlight(flightIndex, "Buenos Aires", "Bariloche");
+    Flight flight3 = findFlight(flightIndex, "Cordoba", "Bariloche");
 
     flightGraph.addEdge(flight1, flight2, flight1.getDefaultPrice());
     flightGraph.addEdge(flight1, flight3, flight3.getDefaultPrice());
@@ -83,13 +88,13 @@ public class AutomatedTestRunner {
   /**
    * Introduces and executes Test 3: Adding Crew Members to One Flight.
    *
-   * @param flightGraph the graph to use for testing
+   * @param flightIndex the index to find flights with
    */
-  private static void testAddCrewMembers(Graph<Flight> flightGraph) {
+  private static void testAddCrewMembers(FlightIndex flightIndex) {
     printTestIntro(3, "Adding Crew Members to a Flight",
         "This test adds crew members to one flight and displays tree balancing.");
 
-    Flight flight1 = findFlight(flightGraph, "Cordoba", "Buenos Aires");
+    Flight flight1 = findFlight(flightIndex, "Cordoba", "Buenos Aires");
 
     System.out.println("Adding crew members to " + flight1.getOrigin() + " -> " + flight1.getDestination() + ":");
     for (int i = 1; i <= flight1.getCapacity(); i++) {
@@ -119,13 +124,13 @@ public class AutomatedTestRunner {
   /**
    * Introduces and executes Test 5: Printing the Crew AVL Tree for One Flight.
    *
-   * @param flightGraph the graph to use for testing
+   * @param flightIndex the index to find flights with
    */
-  private static void testCrewTreePrinting(Graph<Flight> flightGraph) {
+  private static void testCrewTreePrinting(FlightIndex flightIndex) {
     printTestIntro(5, "Printing Crew AVL Tree",
         "This test prints the crew members as a balanced AVL tree for one flight.");
 
-    Flight flight1 = findFlight(flightGraph, "Cordoba", "Buenos Aires");
+    Flight flight1 = findFlight(flightIndex, "Cordoba", "Buenos Aires");
     System.out.println("Crew tree for flight " + flight1.getOrigin() + " -> " + flight1.getDestination() + ":");
     flight1.getCrewTree().printTree();
     System.out.println();
@@ -136,13 +141,13 @@ public class AutomatedTestRunner {
   /**
    * Introduces and executes Test 6: Validating Pricing Logic.
    *
-   * @param flightGraph the graph to use for testing
+   * @param flightIndex the index to find flights with
    */
-  private static void testPricingLogic(Graph<Flight> flightGraph) {
+  private static void testPricingLogic(FlightIndex flightIndex) {
     printTestIntro(6, "Validating Pricing Logic",
         "This test verifies pricing adjustments based on flight occupancy levels.");
 
-    Flight flight1 = findFlight(flightGraph, "Cordoba", "Buenos Aires");
+    Flight flight1 = findFlight(flightIndex, "Cordoba", "Buenos Aires");
 
     System.out.println("Flight details:");
     System.out.println("Base Price: " + flight1.getDefaultPrice());
@@ -196,16 +201,14 @@ public class AutomatedTestRunner {
   }
 
   /**
-   * Finds a flight in the graph by origin and destination.
+   * Finds a flight by origin and destination.
    *
-   * @param flightGraph the graph containing flights
+   * @param flightIndex the index of the flights under test
    * @param origin      the origin of the flight
    * @param destination the destination of the flight
    * @return the flight if found, or null
    */
-  private static Flight findFlight(Graph<Flight> flightGraph, String origin, String destination) {
-    return flightGraph.getVertices().keySet().stream()
-        .filter(f -> f.getOrigin().equals(origin) && f.getDestination().equals(destination))
-        .findFirst().orElse(null);
+  private static Flight findFlight(FlightIndex flightIndex, String origin, String destination) {
+    return flightIndex.find(origin, destination);
   }
 }
@@ -2,7 +2,7 @@ package views;
 
 import models.CrewMember;
 import models.Flight;
-import shared.structures.AVLTree;
+import shared.structures.OrderedIndex;
 import views.utils.CliUtils;
 
 import java.util.Scanner;
@@ -37,7 +37,8 @@ public class CrewMenu {
           .println("=== Crew Management for Flight " + flight.getOrigin() + " -> " + flight.getDestination() + " ===");
       System.out.println("1. Print Crew Members (Tree Graph)");
       System.out.println("2. Add Crew Member");
-      System.out.println("3. Return to Flight Menu");
+      System.out.println("3. Count Occupied Seats in Range");
+      System.out.println("4. Return to Flight Menu");
       System.out.print("Choose an option: ");
 
       option = scanner.nextInt();
@@ -55,13 +56,17 @@ public class CrewMenu {
           CliUtils.pause();
           break;
         case 3:
+          countSeatsInRange(scanner);
+          CliUtils.pause();
+          break;
+        case 4:
           System.out.println("Returning to Flight Menu...");
           break;
         default:
           System.out.println("Invalid option. Please try again.");
           CliUtils.pause();
       }
-    } while (option != 3);
+    } while (option != 4);
   }
 
   /**
@@ -69,8 +74,8 @@ public class CrewMenu {
    */
   private void printCrewTree() {
     System.out.println("Crew Members (Tree Graph):");
-    AVLTree<CrewMember> crewTree = flight.getCrewTree();
-    crewTree.printTree(); // Assume AVLTree has a printTree() method for graphical representation
+    OrderedIndex<CrewMember> crewTree = flight.getCrewTree();
+    crewTree.printTree();
   }
 
   /**
@@ -92,4 +97,21 @@ public class CrewMenu {
       System.out.println("Failed to add crew member (flight may be full).");
     }
   }
+
+  /**
+   * Counts the occupied seats between two seat numbers using the order
+   * statistics of the crew index.
+   *
+   * @param scanner the scanner for user input
+   */
+  private void countSeatsInRange(Scanner scanner) {
+    System.out.print("Enter First Seat Number: ");
+    int low = scanner.nextInt();
+
+    System.out.print("Enter Last Seat Number: ");
+    int high = scanner.nextInt();
+
+    int occupied = flight.getCrewTree().countInRange(low, high);
+    System.out.println("Occupied seats between " + low + " and " + high + ": " + occupied);
+  }
 }
@@ -1,12 +1,20 @@
 package views;
 
 import models.Flight;
+import services.CityGraph;
+import services.CrewIndex;
+import services.FareBoard;
+import services.FlightIndex;
+import services.NetworkAnalysis;
+import shared.render.OutputBuffer;
 import shared.structures.Graph;
 import views.utils.CliUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * Provides a menu for managing flights in the system.
@@ -15,12 +23,30 @@ import java.util.Scanner;
  */
 public class FlightMenu {
   private final Graph<Flight> flightGraph;
+  private final CrewIndex crewIndex;
+  private final FlightIndex flightIndex;
+  private final CityGraph cityGraph;
 
   /**
    * Constructs a FlightMenu with an empty graph of flights.
    */
   public FlightMenu() {
-    this.flightGraph = new Graph<>();
+    this(new Graph<>());
+  }
+
+  /**
+   * Constructs a FlightMenu that manages an existing graph of flights.
+   *
+   * @param flightGraph the graph of flights to manage
+   */
+  public FlightMenu(Graph<Flight> flightGraph) {
+    this.flightGraph = flightGraph;
+    this.crewIndex = new CrewIndex();
+    this.crewIndex.attach(flightGraph);
+    this.flightIndex = new FlightIndex();
+    this.flightIndex.attach(flightGraph);
+    this.cityGraph = new CityGraph();
+    this.cityGraph.attach(flightGraph);
   }
 
   /**
@@ -45,7 +71,12 @@ public class FlightMenu {
       System.out.println("1. Add Flight");
       System.out.println("2. Select Flight for Crew Management");
       System.out.println("3. Print All Flights");
-      System.out.println("4. Return to Main Menu");
+      System.out.println("4. Find Crew Member");
+      System.out.println("5. Search Flights");
+      System.out.println("6. Show Fare Board");
+      System.out.println("7. Reachable Cities");
+      System.out.println("8. Find Cheapest Route");
+      System.out.println("9. Return to Main Menu");
       System.out.print("Choose an option: ");
 
       option = scanner.nextInt();
@@ -66,13 +97,33 @@ public class FlightMenu {
           CliUtils.pause();
           break;
         case 4:
+          findCrewMember(scanner);
+          CliUtils.pause();
+          break;
+        case 5:
+          searchFlights(scanner);
+          CliUtils.pause();
+          break;
+        case 6:
+          printFareBoard();
+          CliUtils.pause();
+          break;
+        case 7:
+          findReachableCities(scanner);
+          CliUtils.pause();
+          break;
+        case 8:
+          findCheapestRoute(scanner);
+          CliUtils.pause();
+          break;
+        case 9:
           System.out.println("Returning to Main Menu...");
           break;
         default:
           System.out.println("Invalid option. Please try again.");
           CliUtils.pause();
       }
-    } while (option != 4);
+    } while (option != 9);
   }
 
   /**
@@ -100,31 +151,140 @@ public class FlightMenu {
   }
 
   /**
-   * Allows the user to select a flight for crew management.
+   * Allows the user to select a flight for crew management among the flights
+   * leaving an origin, looked up in the flight index.
    *
    * @param scanner the scanner for user input
    */
   private void selectFlight(Scanner scanner) {
+    System.out.print("Enter Origin: ");
+    String origin = scanner.nextLine();
+
+    List<Flight> flights = new ArrayList<>(flightIndex.findByOrigin(origin));
+    if (flights.isEmpty()) {
+      System.out.println("No flights found from " + origin + ". Returning to menu.");
+      CliUtils.pause();
+      return;
+    }
     System.out.println("Available Flights:");
-    List<Flight> flights = new ArrayList<>(flightGraph.getVertices().keySet());
     for (int i = 0; i < flights.size(); i++) {
       System.out.println((i + 1) + ". " + flights.get(i));
     }
 
     System.out.print("Select a flight by number: ");
-    int flightIndex = scanner.nextInt() - 1;
+    int selection = scanner.nextInt() - 1;
 
-    if (flightIndex < 0 || flightIndex >= flights.size()) {
+    if (selection < 0 || selection >= flights.size()) {
       System.out.println("Invalid selection. Returning to menu.");
       CliUtils.pause();
       return;
     }
 
-    Flight selectedFlight = flights.get(flightIndex);
+    Flight selectedFlight = flights.get(selection);
     CrewMenu crewMenu = new CrewMenu(selectedFlight);
     crewMenu.show();
   }
 
+  /**
+   * Finds the flights and seats of every crew member whose name starts with
+   * the given text.
+   *
+   * @param scanner the scanner for user input
+   */
+  private void findCrewMember(Scanner scanner) {
+    System.out.print("Enter Crew Member Name (or prefix): ");
+    String prefix = scanner.nextLine();
+
+    Map<String, List<CrewIndex.Assignment>> matches = crewIndex.findByPrefix(prefix);
+    if (matches.isEmpty()) {
+      System.out.println("No crew members found.");
+      return;
+    }
+    matches.forEach((name, assignments) -> System.out.println(name + ": " + assignments));
+  }
+
+  /**
+   * Searches flights by origin and maximum current price using the flight
+   * index.
+   *
+   * @param scanner the scanner for user input
+   */
+  private void searchFlights(Scanner scanner) {
+    System.out.print("Enter Origin: ");
+    String origin = scanner.nextLine();
+
+    System.out.print("Enter Maximum Price: ");
+    int maxPrice = scanner.nextInt();
+
+    List<Flight> flights = flightIndex.findByOriginAndPriceRange(origin, 0, maxPrice);
+    if (flights.isEmpty()) {
+      System.out.println("No flights found.");
+      return;
+    }
+    for (Flight flight : flights) {
+      System.out.println(flight + " (Current Price: " + flight.calculatePrice() + ")");
+    }
+  }
+
+  /**
+   * Lists the cities that can be reached from a city within a number of
+   * connections, and how many disconnected parts the network has.
+   *
+   * @param scanner the scanner for user input
+   */
+  private void findReachableCities(Scanner scanner) {
+    System.out.print("Enter Origin: ");
+    String origin = scanner.nextLine();
+
+    System.out.print("Enter Maximum Connections: ");
+    int maxConnections = scanner.nextInt();
+
+    NetworkAnalysis analysis = new NetworkAnalysis(flightGraph);
+    Set<String> cities = analysis.reachableCities(origin, maxConnections);
+    if (cities.isEmpty()) {
+      System.out.println("No cities reachable.");
+    } else {
+      System.out.println("Reachable cities: " + cities);
+    }
+    System.out.println("Disconnected parts of the network: " + analysis.disconnectedParts().size());
+  }
+
+  /**
+   * Finds the cheapest sequence of flights with free seats between two cities.
+   *
+   * @param scanner the scanner for user input
+   */
+  private void findCheapestRoute(Scanner scanner) {
+    System.out.print("Enter Origin: ");
+    String origin = scanner.nextLine();
+
+    System.out.print("Enter Destination: ");
+    String destination = scanner.nextLine();
+
+    List<Flight> route = cityGraph.findCheapestRoute(origin, destination);
+    if (route.isEmpty()) {
+      System.out.println("No route found.");
+      return;
+    }
+    int total = 0;
+    for (Flight flight : route) {
+      int price = flight.calculatePrice();
+      total += price;
+      System.out.println(flight.getOrigin() + " -> " + flight.getDestination() + " (Price: " + price + ")");
+    }
+    System.out.println("Total Price: " + total);
+  }
+
+  /**
+   * Prints the current price and occupancy of every flight, grouped by origin
+   * and sorted by price.
+   */
+  private void printFareBoard() {
+    OutputBuffer out = OutputBuffer.stdout();
+    FareBoard.render(new FareBoard().build(flightGraph), out);
+    out.flush();
+  }
+
   /**
    * Prints all flights in the graph.
    */
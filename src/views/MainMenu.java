@@ -1,14 +1,20 @@
 package views;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 
+import models.Flight;
+import shared.metrics.Metrics;
+import shared.structures.Graph;
 import shared.utils.DataLoader;
+import shared.utils.FlightStore;
 import views.utils.CliUtils;
 
 /**
  * The main menu for the application.
- * Users can navigate to flight management, load test data, or run automated
- * tests.
+ * Users can navigate to flight management, load test data, run automated
+ * tests, or inspect runtime metrics.
  */
 public class MainMenu {
   private final FlightMenu flightMenu;
@@ -20,6 +26,15 @@ public class MainMenu {
     this.flightMenu = new FlightMenu();
   }
 
+  /**
+   * Constructs a MainMenu instance whose FlightMenu manages an existing graph.
+   *
+   * @param flightGraph the graph of flights to manage
+   */
+  public MainMenu(Graph<Flight> flightGraph) {
+    this.flightMenu = new FlightMenu(flightGraph);
+  }
+
   /**
    * Displays the main menu and handles user interactions.
    */
@@ -33,7 +48,9 @@ public class MainMenu {
       System.out.println("1. Manage Flights");
       System.out.println("2. Load Test Data");
       System.out.println("3. Run Automated Tests");
-      System.out.println("4. Exit");
+      System.out.println("4. Show Metrics");
+      System.out.println("5. Save Data");
+      System.out.println("6. Exit");
       System.out.print("Choose an option: ");
 
       option = scanner.nextInt();
@@ -53,14 +70,42 @@ public class MainMenu {
           CliUtils.pause();
           break;
         case 4:
+          System.out.println("=== Metrics ===");
+          System.out.print(Metrics.dump());
+          CliUtils.pause();
+          break;
+        case 5:
+          saveData(scanner);
+          CliUtils.pause();
+          break;
+        case 6:
           System.out.println("Exiting application. Goodbye!");
           break;
         default:
           System.out.println("Invalid option. Please try again.");
           CliUtils.pause();
       }
-    } while (option != 4);
+    } while (option != 6);
 
     scanner.close();
   }
+
+  /**
+   * Saves the flight graph and crew members to a directory so they can be
+   * loaded at startup.
+   *
+   * @param scanner the scanner for user input
+   */
+  private void saveData(Scanner scanner) {
+    scanner.nextLine(); // Consume newline
+    System.out.print("Enter Directory: ");
+    String directory = scanner.nextLine();
+
+    try {
+      FlightStore.save(flightMenu.getFlightGraph(), Paths.get(directory));
+      System.out.println("Data saved successfully.");
+    } catch (IOException e) {
+      System.out.println("Failed to save data: " + e.getMessage());
+    }
+  }
 }